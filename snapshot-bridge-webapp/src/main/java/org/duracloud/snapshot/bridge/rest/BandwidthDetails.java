@@ -0,0 +1,42 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.bridge.rest;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A data object describing the bridge bandwidth limit and the share of it
+ * allowed to each running job.
+ */
+@JsonSerialize
+public class BandwidthDetails {
+    private long limit;
+    private Map<String, Long> jobRates;
+
+    public BandwidthDetails() {
+    }
+
+    /**
+     * @param limit    the bytes per second shared by all jobs, 0 for no limit
+     * @param jobRates the bytes per second allowed to each running job
+     */
+    public BandwidthDetails(long limit, Map<String, Long> jobRates) {
+        this.limit = limit;
+        this.jobRates = jobRates;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public Map<String, Long> getJobRates() {
+        return jobRates;
+    }
+}
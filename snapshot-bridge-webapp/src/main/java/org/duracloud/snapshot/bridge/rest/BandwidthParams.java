@@ -0,0 +1,50 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.bridge.rest;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A data object holding changes to the bridge bandwidth limit or to the share
+ * of a job.
+ */
+@JsonSerialize
+@JsonDeserialize
+public class BandwidthParams {
+    private Long limit;
+    private Integer weight;
+
+    /**
+     * @return the bytes per second shared by all jobs, 0 for no limit
+     */
+    public Long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit the bytes per second shared by all jobs, 0 for no limit
+     */
+    public void setLimit(Long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return the weight of a job relative to the other running jobs
+     */
+    public Integer getWeight() {
+        return weight;
+    }
+
+    /**
+     * @param weight the weight of a job relative to the other running jobs
+     */
+    public void setWeight(Integer weight) {
+        this.weight = weight;
+    }
+}
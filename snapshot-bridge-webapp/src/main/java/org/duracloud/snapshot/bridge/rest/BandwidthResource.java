@@ -0,0 +1,73 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.bridge.rest;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.http.HttpStatus;
+import org.duracloud.snapshot.service.impl.BandwidthGovernor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Defines the REST resource layer for viewing and adjusting the bandwidth
+ * limit shared by the jobs running on the bridge.
+ */
+@Component
+@Path("/bandwidth")
+public class BandwidthResource {
+
+    private BandwidthGovernor bandwidthGovernor;
+
+    @Autowired
+    public BandwidthResource(BandwidthGovernor bandwidthGovernor) {
+        this.bandwidthGovernor = bandwidthGovernor;
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response get() {
+        return Response.ok()
+                       .entity(new BandwidthDetails(bandwidthGovernor.getLimit(), bandwidthGovernor.getRates()))
+                       .build();
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response setLimit(BandwidthParams params) {
+        if (params.getLimit() == null || params.getLimit() < 0) {
+            return Response.status(HttpStatus.SC_BAD_REQUEST)
+                           .entity(new ResponseDetails("A limit of 0 or more bytes per second is required."))
+                           .build();
+        }
+        bandwidthGovernor.setLimit(params.getLimit());
+        return get();
+    }
+
+    @Path("jobs/{jobName}")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response setWeight(@PathParam("jobName") String jobName, BandwidthParams params) {
+        if (params.getWeight() == null || params.getWeight() < 1) {
+            return Response.status(HttpStatus.SC_BAD_REQUEST)
+                           .entity(new ResponseDetails("A weight of 1 or more is required."))
+                           .build();
+        }
+        bandwidthGovernor.setWeight(jobName, params.getWeight());
+        return get();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.bridge.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.http.HttpStatus;
+import org.duracloud.snapshot.service.impl.FairShareJobScheduler;
+import org.duracloud.snapshot.service.impl.JobQueueStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Defines the REST resource layer for viewing the queue of snapshot and restore
+ * jobs waiting to run on the bridge.
+ */
+@Component
+@Path("/queue")
+public class JobQueueResource {
+
+    private FairShareJobScheduler jobScheduler;
+
+    @Autowired
+    public JobQueueResource(FairShareJobScheduler jobScheduler) {
+        this.jobScheduler = jobScheduler;
+    }
+
+    /**
+     * Returns the running jobs followed by the queued jobs in the order in which
+     * they are expected to start.
+     *
+     * @return
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response list() {
+        return Response.ok().entity(jobScheduler.getStatuses()).build();
+    }
+
+    /**
+     * Returns the queue position and estimated start time of a job.
+     *
+     * @param jobName the snapshot or restoration id
+     * @return
+     */
+    @Path("{jobName}")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response get(@PathParam("jobName") String jobName) {
+        JobQueueStatus status = jobScheduler.getStatus(jobName);
+        if (status == null) {
+            return Response.status(HttpStatus.SC_NOT_FOUND)
+                           .entity(new ResponseDetails(jobName + " is not queued or running."))
+                           .build();
+        }
+        return Response.ok().entity(status).build();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.ws.rs.core.Response;
+
+import org.apache.http.HttpStatus;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.duracloud.snapshot.service.impl.BandwidthGovernor;
+import org.junit.Test;
+
+public class BandwidthResourceTest extends SnapshotTestBase {
+
+    @Test
+    public void testSetLimitAndWeight() throws Exception {
+        replayAll();
+        BandwidthGovernor governor = new BandwidthGovernor(0);
+        governor.register("snapshot-1");
+        governor.register("restore-1");
+        BandwidthResource resource = new BandwidthResource(governor);
+
+        BandwidthParams params = new BandwidthParams();
+        params.setLimit(3000L);
+        Response response = resource.setLimit(params);
+        assertEquals(HttpStatus.SC_OK, response.getStatus());
+        BandwidthDetails details = (BandwidthDetails) response.getEntity();
+        assertEquals(3000, details.getLimit());
+        assertEquals(Long.valueOf(1500), details.getJobRates().get("snapshot-1"));
+
+        params = new BandwidthParams();
+        params.setWeight(2);
+        details = (BandwidthDetails) resource.setWeight("restore-1", params).getEntity();
+        assertEquals(Long.valueOf(1000), details.getJobRates().get("snapshot-1"));
+        assertEquals(Long.valueOf(2000), details.getJobRates().get("restore-1"));
+    }
+
+    @Test
+    public void testInvalidParams() throws Exception {
+        replayAll();
+        BandwidthResource resource = new BandwidthResource(new BandwidthGovernor(0));
+
+        assertEquals(HttpStatus.SC_BAD_REQUEST, resource.setLimit(new BandwidthParams()).getStatus());
+        BandwidthParams params = new BandwidthParams();
+        params.setWeight(0);
+        assertEquals(HttpStatus.SC_BAD_REQUEST, resource.setWeight("job", params).getStatus());
+    }
+}
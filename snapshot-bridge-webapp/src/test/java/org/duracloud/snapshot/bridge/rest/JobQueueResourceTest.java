@@ -0,0 +1,56 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.bridge.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.Response;
+
+import org.apache.http.HttpStatus;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.duracloud.snapshot.service.impl.FairShareJobScheduler;
+import org.duracloud.snapshot.service.impl.JobQueueStatus;
+import org.junit.Test;
+
+public class JobQueueResourceTest extends SnapshotTestBase {
+
+    @Test
+    public void testGet() throws Exception {
+        replayAll();
+        FairShareJobScheduler scheduler = new FairShareJobScheduler(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            FairShareJobScheduler.setNextJob("snapshot-1", "tenant", FairShareJobScheduler.Priority.SNAPSHOT);
+            scheduler.execute(() -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            FairShareJobScheduler.setNextJob("snapshot-2", "tenant", FairShareJobScheduler.Priority.SNAPSHOT);
+            scheduler.execute(() -> { });
+
+            JobQueueResource resource = new JobQueueResource(scheduler);
+            Response response = resource.get("snapshot-2");
+            assertEquals(HttpStatus.SC_OK, response.getStatus());
+            assertEquals(1, ((JobQueueStatus) response.getEntity()).getPosition());
+
+            List<?> statuses = (List<?>) resource.list().getEntity();
+            assertEquals(2, statuses.size());
+
+            assertEquals(HttpStatus.SC_NOT_FOUND, resource.get("snapshot-3").getStatus());
+        } finally {
+            release.countDown();
+            scheduler.shutdown();
+        }
+    }
+}
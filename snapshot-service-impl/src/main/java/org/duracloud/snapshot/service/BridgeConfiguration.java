@@ -22,6 +22,72 @@ public class BridgeConfiguration {
 
     public static final String DURACLOUD_BRIDGE_ROOT_SYSTEM_PROPERTY = "duracloud.bridge.root.dir";
     public static final String DURACLOUD_BRIDGE_THREADS_PER_JOB = "duracloud.bridge.threads-per-job";
+    public static final String DURACLOUD_BRIDGE_CHUNK_THREADS_PER_ITEM = "duracloud.bridge.chunk-threads-per-item";
+    public static final String DURACLOUD_BRIDGE_CONTENT_ITEM_BATCH_SIZE =
+        "duracloud.bridge.content-item-batch-size";
+    public static final String DURACLOUD_BRIDGE_CONTENT_ITEM_FLUSH_INTERVAL_MS =
+        "duracloud.bridge.content-item-flush-interval-ms";
+    public static final String DURACLOUD_BRIDGE_CACHE_COMMIT_BATCH_SIZE =
+        "duracloud.bridge.cache-commit-batch-size";
+    public static final String DURACLOUD_BRIDGE_CACHE_COMMIT_INTERVAL_MS =
+        "duracloud.bridge.cache-commit-interval-ms";
+    public static final String DURACLOUD_BRIDGE_LISTING_PREFETCH_DEPTH =
+        "duracloud.bridge.listing-prefetch-depth";
+    public static final String DURACLOUD_BRIDGE_LARGE_LANE_THREADS_PER_JOB =
+        "duracloud.bridge.large-lane-threads-per-job";
+    public static final String DURACLOUD_BRIDGE_INCREMENTAL_SNAPSHOTS =
+        "duracloud.bridge.incremental-snapshots";
+    public static final String DURACLOUD_BRIDGE_CONTENT_ADDRESSED_STORE =
+        "duracloud.bridge.content-addressed-store";
+    public static final String DURACLOUD_BRIDGE_RESUMABLE_RETRIEVAL =
+        "duracloud.bridge.resumable-retrieval";
+    public static final String DURACLOUD_BRIDGE_MANIFEST_APPEND_QUEUE_SIZE =
+        "duracloud.bridge.manifest-append-queue-size";
+    public static final String DURACLOUD_BRIDGE_MANIFEST_FLUSH_EVERY =
+        "duracloud.bridge.manifest-flush-every";
+    public static final String DURACLOUD_BRIDGE_MANIFEST_FLUSH_INTERVAL_MS =
+        "duracloud.bridge.manifest-flush-interval-ms";
+    public static final String DURACLOUD_BRIDGE_MANIFEST_SYNC =
+        "duracloud.bridge.manifest-sync";
+    public static final String DURACLOUD_BRIDGE_ADAPTIVE_MAX_THREADS_PER_JOB =
+        "duracloud.bridge.adaptive-max-threads-per-job";
+    public static final String DURACLOUD_BRIDGE_ADAPTIVE_WINDOW_MS =
+        "duracloud.bridge.adaptive-window-ms";
+    public static final String DURACLOUD_BRIDGE_BANDWIDTH_LIMIT_BYTES_PER_SECOND =
+        "duracloud.bridge.bandwidth-limit-bytes-per-second";
+    public static final String DURACLOUD_BRIDGE_JOB_SLOTS = "duracloud.bridge.job-slots";
+    public static final String DURACLOUD_BRIDGE_STORE_CLIENT_CACHE_SIZE =
+        "duracloud.bridge.store-client-cache-size";
+    public static final String DURACLOUD_BRIDGE_STORE_CLIENT_IDLE_MS =
+        "duracloud.bridge.store-client-idle-ms";
+    public static final String DURACLOUD_BRIDGE_INLINE_VERIFICATION =
+        "duracloud.bridge.inline-verification";
+    public static final String DURACLOUD_BRIDGE_STAGING_ADMISSION =
+        "duracloud.bridge.staging-admission";
+    public static final String DURACLOUD_BRIDGE_STAGING_HEADROOM_BYTES =
+        "duracloud.bridge.staging-headroom-bytes";
+    public static final String DURACLOUD_BRIDGE_STAGING_MAX_PASSED_OVER_MS =
+        "duracloud.bridge.staging-max-passed-over-ms";
+    public static final String DURACLOUD_BRIDGE_STREAMING_METADATA_UPLOAD =
+        "duracloud.bridge.streaming-metadata-upload";
+    public static final String DURACLOUD_BRIDGE_FINALIZER_THREADS =
+        "duracloud.bridge.finalizer-threads";
+    public static final String DURACLOUD_BRIDGE_FINALIZER_MAX_BACKOFF_MS =
+        "duracloud.bridge.finalizer-max-backoff-ms";
+    public static final String DURACLOUD_BRIDGE_RESTORE_SCAN_THREADS =
+        "duracloud.bridge.restore-scan-threads";
+    public static final String DURACLOUD_BRIDGE_RESTORE_SCAN_BUFFER_SIZE =
+        "duracloud.bridge.restore-scan-buffer-size";
+    public static final String DURACLOUD_BRIDGE_RESTORE_UPLOAD_LEDGER =
+        "duracloud.bridge.restore-upload-ledger";
+    public static final String DURACLOUD_BRIDGE_RESTORE_LEDGER_RECONCILE =
+        "duracloud.bridge.restore-ledger-reconcile";
+    public static final String DURACLOUD_BRIDGE_RESTORE_CHUNK_SIZE_BYTES =
+        "duracloud.bridge.restore-chunk-size-bytes";
+    public static final String DURACLOUD_BRIDGE_RESTORE_CHUNK_THREADS_PER_FILE =
+        "duracloud.bridge.restore-chunk-threads-per-file";
+    public static final String DURACLOUD_BRIDGE_RESTORE_FUSED =
+        "duracloud.bridge.restore-fused";
 
     private String[] duracloudEmailAddresses;
     private String duracloudUsername;
@@ -141,4 +207,317 @@ public class BridgeConfiguration {
         }
     }
 
+    /**
+     * @return the number of chunks of a single chunked item which may be retrieved
+     * concurrently. A value of 1 (the default) retrieves chunks one at a time.
+     */
+    public static int getBridgeChunkThreadsPerItem() {
+        return getIntProperty(DURACLOUD_BRIDGE_CHUNK_THREADS_PER_ITEM, 1);
+    }
+
+    /**
+     * @return the number of snapshot content items which are added to the database
+     * in a single batch. A value of 1 (the default) adds each item in its own transaction.
+     */
+    public static int getBridgeContentItemBatchSize() {
+        return getIntProperty(DURACLOUD_BRIDGE_CONTENT_ITEM_BATCH_SIZE, 1);
+    }
+
+    /**
+     * @return the longest time in milliseconds that snapshot content items are held
+     * before being added to the database when batching is enabled
+     */
+    public static int getBridgeContentItemFlushIntervalMs() {
+        return getIntProperty(DURACLOUD_BRIDGE_CONTENT_ITEM_FLUSH_INTERVAL_MS, 5000);
+    }
+
+    /**
+     * @return the number of changes to the snapshot resume caches which are grouped
+     * into a single commit. A value of 1 (the default) commits every change.
+     */
+    public static int getBridgeCacheCommitBatchSize() {
+        return getIntProperty(DURACLOUD_BRIDGE_CACHE_COMMIT_BATCH_SIZE, 1);
+    }
+
+    /**
+     * @return the interval in milliseconds at which pending changes to the snapshot
+     * resume caches are committed when commits are grouped, or 0 or less to
+     * commit only when a batch is full
+     */
+    public static int getBridgeCacheCommitIntervalMs() {
+        return getIntProperty(DURACLOUD_BRIDGE_CACHE_COMMIT_INTERVAL_MS, 1000);
+    }
+
+    /**
+     * @return the number of content items which are listed ahead of the snapshot
+     * transfer threads. A value of 0 (the default) lists items as they are read.
+     */
+    public static int getBridgeListingPrefetchDepth() {
+        return getIntProperty(DURACLOUD_BRIDGE_LISTING_PREFETCH_DEPTH, 0);
+    }
+
+    /**
+     * @return the number of large (chunked) content items which may be transferred
+     * at once by a snapshot job, in addition to the threads-per-job used for all
+     * other items. A value of 0 (the default) transfers all items in a single lane.
+     */
+    public static int getBridgeLargeLaneThreadsPerJob() {
+        return getIntProperty(DURACLOUD_BRIDGE_LARGE_LANE_THREADS_PER_JOB, 0);
+    }
+
+    /**
+     * @return true if the content of each snapshot is retained on bridge storage
+     * after cleanup so that unchanged items can be carried forward into the next
+     * snapshot of the same space. Defaults to false.
+     */
+    public static boolean isBridgeIncrementalSnapshots() {
+        return Boolean.parseBoolean(System.getProperty(DURACLOUD_BRIDGE_INCREMENTAL_SNAPSHOTS, "false"));
+    }
+
+    /**
+     * @return true if staged snapshot content is kept in a store keyed by checksum
+     * so that identical content is retrieved and stored only once. Defaults to false.
+     */
+    public static boolean isBridgeContentAddressedStore() {
+        return Boolean.parseBoolean(System.getProperty(DURACLOUD_BRIDGE_CONTENT_ADDRESSED_STORE, "false"));
+    }
+
+    /**
+     * @return true if partially retrieved content is kept so that a retried or
+     * restarted retrieval resumes from the last verified chunk or byte rather than
+     * starting over. Defaults to false.
+     */
+    public static boolean isBridgeResumableRetrieval() {
+        return Boolean.parseBoolean(System.getProperty(DURACLOUD_BRIDGE_RESUMABLE_RETRIEVAL, "false"));
+    }
+
+    /**
+     * @return the number of manifest and content properties entries which may be
+     * queued for the single appender thread. When 0 (the default) each transfer
+     * thread writes its own entries.
+     */
+    public static int getBridgeManifestAppendQueueSize() {
+        return getIntProperty(DURACLOUD_BRIDGE_MANIFEST_APPEND_QUEUE_SIZE, 0);
+    }
+
+    /**
+     * @return the number of appended entries written between flushes. Defaults to 100.
+     */
+    public static int getBridgeManifestFlushEvery() {
+        return getIntProperty(DURACLOUD_BRIDGE_MANIFEST_FLUSH_EVERY, 100);
+    }
+
+    /**
+     * @return the longest time in milliseconds an appended entry waits to be flushed.
+     * Defaults to 1000.
+     */
+    public static int getBridgeManifestFlushIntervalMs() {
+        return getIntProperty(DURACLOUD_BRIDGE_MANIFEST_FLUSH_INTERVAL_MS, 1000);
+    }
+
+    /**
+     * @return true if each flush of appended entries is forced to disk. Defaults to false.
+     */
+    public static boolean isBridgeManifestSync() {
+        return Boolean.parseBoolean(System.getProperty(DURACLOUD_BRIDGE_MANIFEST_SYNC, "false"));
+    }
+
+    /**
+     * @return the largest number of content transfers per job when the number is
+     * adjusted to the observed throughput, error rate and latency, starting from
+     * the threads-per-job setting. When 0 (the default) the threads-per-job setting
+     * is used as a fixed limit.
+     */
+    public static int getBridgeAdaptiveMaxThreadsPerJob() {
+        return getIntProperty(DURACLOUD_BRIDGE_ADAPTIVE_MAX_THREADS_PER_JOB, 0);
+    }
+
+    /**
+     * @return the length in milliseconds of the windows over which transfers are
+     * measured before the number of transfers per job is adjusted. Defaults to 10000.
+     */
+    public static int getBridgeAdaptiveWindowMs() {
+        return getIntProperty(DURACLOUD_BRIDGE_ADAPTIVE_WINDOW_MS, 10000);
+    }
+
+    /**
+     * @return the number of snapshot and restore jobs which may run at once.
+     * Defaults to 4.
+     */
+    public static int getBridgeJobSlots() {
+        return getIntProperty(DURACLOUD_BRIDGE_JOB_SLOTS, 4);
+    }
+
+    /**
+     * @return the initial limit on the bytes per second transferred by all jobs
+     * running on the bridge; it may be changed at runtime. Defaults to 0, which
+     * means no limit.
+     */
+    public static long getBridgeBandwidthLimitBytesPerSecond() {
+        return getLongProperty(DURACLOUD_BRIDGE_BANDWIDTH_LIMIT_BYTES_PER_SECOND, 0);
+    }
+
+    /**
+     * @return the largest number of content store clients kept for reuse.
+     * Defaults to 32; 0 creates a new client for every use.
+     */
+    public static int getBridgeStoreClientCacheSize() {
+        return getIntProperty(DURACLOUD_BRIDGE_STORE_CLIENT_CACHE_SIZE, 32);
+    }
+
+    /**
+     * @return the time in milliseconds after which an unused content store client
+     * is dropped. Defaults to 600000 (10 minutes).
+     */
+    public static int getBridgeStoreClientIdleMs() {
+        return getIntProperty(DURACLOUD_BRIDGE_STORE_CLIENT_IDLE_MS, 600000);
+    }
+
+    /**
+     * @return true if snapshot items are verified against the space manifest as
+     * they are written, so the full space manifest verification runs only when
+     * the inline verification fails. Defaults to false.
+     */
+    public static boolean isBridgeInlineVerification() {
+        return Boolean.parseBoolean(System.getProperty(DURACLOUD_BRIDGE_INLINE_VERIFICATION, "false"));
+    }
+
+    /**
+     * @return true if jobs wait to start until the space they are expected to
+     * stage is free on the staging volume, and jobs which could never fit are
+     * refused. Defaults to false.
+     */
+    public static boolean isBridgeStagingAdmission() {
+        return Boolean.parseBoolean(System.getProperty(DURACLOUD_BRIDGE_STAGING_ADMISSION, "false"));
+    }
+
+    /**
+     * @return the bytes to keep free on the staging volume when admitting jobs.
+     * Defaults to 1073741824 (1 GiB).
+     */
+    public static long getBridgeStagingHeadroomBytes() {
+        return getLongProperty(DURACLOUD_BRIDGE_STAGING_HEADROOM_BYTES, 1024L * 1024 * 1024);
+    }
+
+    /**
+     * @return how long a job which would fit on the staging volume may be passed
+     * over for want of space before smaller jobs are held back until it starts.
+     * Defaults to 3600000 (one hour).
+     */
+    public static long getBridgeStagingMaxPassedOverMs() {
+        return getLongProperty(DURACLOUD_BRIDGE_STAGING_MAX_PASSED_OVER_MS, 3600000L);
+    }
+
+    /**
+     * @return true if the snapshot metadata zip is streamed to DuraCloud as it is
+     * packaged rather than written to the staging volume first. Defaults to false.
+     */
+    public static boolean isBridgeStreamingMetadataUpload() {
+        return Boolean.parseBoolean(System.getProperty(DURACLOUD_BRIDGE_STREAMING_METADATA_UPLOAD, "false"));
+    }
+
+    /**
+     * @return the number of snapshots and restorations which are finalized at once.
+     * Defaults to 0, which finalizes them one after another on each polling period.
+     */
+    public static int getBridgeFinalizerThreads() {
+        return getIntProperty(DURACLOUD_BRIDGE_FINALIZER_THREADS, 0);
+    }
+
+    /**
+     * @return the longest time in milliseconds a snapshot or restoration which is
+     * not yet ready to be finalized waits before it is checked again. Defaults to
+     * 3600000 (1 hour).
+     */
+    public static long getBridgeFinalizerMaxBackoffMs() {
+        return getLongProperty(DURACLOUD_BRIDGE_FINALIZER_MAX_BACKOFF_MS, 3600000);
+    }
+
+    /**
+     * @return the number of directories listed at once when scanning restored
+     * content. Defaults to 4.
+     */
+    public static int getBridgeRestoreScanThreads() {
+        return getIntProperty(DURACLOUD_BRIDGE_RESTORE_SCAN_THREADS, 4);
+    }
+
+    /**
+     * @return the number of scanned files held ready to be transferred when
+     * restoring content. Defaults to 1000.
+     */
+    public static int getBridgeRestoreScanBufferSize() {
+        return getIntProperty(DURACLOUD_BRIDGE_RESTORE_SCAN_BUFFER_SIZE, 1000);
+    }
+
+    /**
+     * @return true if the files uploaded by a restoration are recorded so that a
+     * restarted transfer uploads only the files which were not uploaded before.
+     * Defaults to false.
+     */
+    public static boolean isBridgeRestoreUploadLedger() {
+        return Boolean.parseBoolean(System.getProperty(DURACLOUD_BRIDGE_RESTORE_UPLOAD_LEDGER, "false"));
+    }
+
+    /**
+     * @return true if the record of uploaded files is checked against the manifest
+     * of the destination space each time the transfer starts, rather than by
+     * looking up each recorded file in the space. Defaults to false.
+     */
+    public static boolean isBridgeRestoreLedgerReconcile() {
+        return Boolean.parseBoolean(System.getProperty(DURACLOUD_BRIDGE_RESTORE_LEDGER_RECONCILE, "false"));
+    }
+
+    /**
+     * @return the size in bytes of the chunks in which large files are restored
+     * to DuraCloud. Defaults to 1000000000 (1 GB).
+     */
+    public static long getBridgeRestoreChunkSizeBytes() {
+        return getLongProperty(DURACLOUD_BRIDGE_RESTORE_CHUNK_SIZE_BYTES, 1000L * 1000 * 1000);
+    }
+
+    /**
+     * @return the number of chunks of a single file which are uploaded at once when
+     * restoring to DuraCloud. A value of 1 (the default) uploads chunks one after another.
+     */
+    public static int getBridgeRestoreChunkThreadsPerFile() {
+        return getIntProperty(DURACLOUD_BRIDGE_RESTORE_CHUNK_THREADS_PER_FILE, 1);
+    }
+
+    /**
+     * @return true if restored files are verified against the snapshot manifest and
+     * uploaded with their properties in a single pass, rather than verified, uploaded
+     * and given their properties in separate steps. Defaults to false.
+     */
+    public static boolean isBridgeRestoreFused() {
+        return Boolean.parseBoolean(System.getProperty(DURACLOUD_BRIDGE_RESTORE_FUSED, "false"));
+    }
+
+    private static long getLongProperty(String name, long defaultValue) {
+        String value = System.getProperty(name);
+        if (null != value) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                log.warn("Could not parse system property " + name +
+                         " with value " + value +
+                         " into a long. Proceeding with default value " + defaultValue + ".");
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (null != value) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                log.warn("Could not parse system property " + name +
+                         " with value " + value +
+                         " into an int. Proceeding with default value " + defaultValue + ".");
+            }
+        }
+        return defaultValue;
+    }
+
 }
@@ -24,9 +24,36 @@ public class AbstractJobBuilder {
      * @param stepFactory
      */
     protected void setThrottleLimitForContentTransfers(SimpleStepFactoryBean<?, ?> stepFactory) {
-        int threadsPerJob = BridgeConfiguration.getBridgeThreadsPerJob();
+        int threadsPerJob = getMaxThreadsPerJob();
         log.info("Setting threadsPerJob = {}", threadsPerJob);
         stepFactory.setThrottleLimit(threadsPerJob);
     }
 
+    /**
+     * @return the most threads a content transfer step may use
+     */
+    protected int getMaxThreadsPerJob() {
+        int threadsPerJob = BridgeConfiguration.getBridgeThreadsPerJob();
+        return Math.max(threadsPerJob, BridgeConfiguration.getBridgeAdaptiveMaxThreadsPerJob());
+    }
+
+    /**
+     * @param name the name of the job
+     * @return a limiter which adjusts the number of concurrent content transfers,
+     * or null if the number of threads per job is fixed
+     */
+    protected AdaptiveConcurrencyLimiter createConcurrencyLimiter(String name) {
+        int threadsPerJob = BridgeConfiguration.getBridgeThreadsPerJob();
+        int maxThreadsPerJob = BridgeConfiguration.getBridgeAdaptiveMaxThreadsPerJob();
+        if (maxThreadsPerJob <= threadsPerJob) {
+            return null;
+        }
+        log.info("Adjusting concurrent transfers for {} between 1 and {}", name, maxThreadsPerJob);
+        return new AdaptiveConcurrencyLimiter(name,
+                                              threadsPerJob,
+                                              1,
+                                              maxThreadsPerJob,
+                                              BridgeConfiguration.getBridgeAdaptiveWindowMs());
+    }
+
 }
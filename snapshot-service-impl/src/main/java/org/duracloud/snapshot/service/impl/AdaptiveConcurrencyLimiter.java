@@ -0,0 +1,177 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of content transfers a job runs at once, adjusting the limit
+ * as the job runs (additive increase, multiplicative decrease). The step is given
+ * enough threads for the largest limit and each transfer holds a permit from this
+ * limiter while it runs.
+ * <p>
+ * Completed transfers are grouped into windows. At the end of each window the
+ * limit is halved if the share of failed or retried transfers exceeds the error
+ * threshold or the transfer latency per megabyte has spiked well above its
+ * recent baseline; latency is measured per byte so that a window of larger items
+ * is not taken for a slowdown. Otherwise the limit is raised by one while the throughput of the
+ * window improves on the previous window, and lowered by one when a raise did not
+ * improve it.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    static final double ERROR_THRESHOLD = 0.05;
+    static final double LATENCY_SPIKE_FACTOR = 2.0;
+    static final double IMPROVEMENT_FACTOR = 1.05;
+    private static final double BASELINE_WEIGHT = 0.2;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    private String name;
+    private int minLimit;
+    private int maxLimit;
+    private long windowNanos;
+
+    private ReentrantLock lock = new ReentrantLock();
+    private Condition available = lock.newCondition();
+    private int limit;
+    private int inFlight = 0;
+
+    private long windowStart;
+    private long windowBytes = 0;
+    private long windowLatencyMs = 0;
+    private long windowLatencyBytes = 0;
+    private int windowCompleted = 0;
+    private int windowFailures = 0;
+    private double lastThroughput = -1;
+    private double baselineLatencyMs = -1;
+    private boolean lastRaised = false;
+
+    /**
+     * @param name         the name of the job, for logging
+     * @param initialLimit the limit with which to start
+     * @param minLimit     the smallest limit
+     * @param maxLimit     the largest limit
+     * @param windowMs     the length of each measurement window
+     */
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, long windowMs) {
+        this.name = name;
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.windowStart = System.nanoTime();
+    }
+
+    /**
+     * Waits until fewer transfers are running than the current limit.
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= limit) {
+                available.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the outcome of a transfer and returns its permit.
+     *
+     * @param bytes     the number of bytes transferred
+     * @param latencyMs the time taken by the transfer
+     * @param retries   the number of times the transfer, or any part of it, was retried
+     * @param success   whether the transfer succeeded
+     */
+    public void release(long bytes, long latencyMs, int retries, boolean success) {
+        lock.lock();
+        try {
+            inFlight--;
+            windowBytes += bytes;
+            if (bytes > 0) {
+                windowLatencyMs += latencyMs;
+                windowLatencyBytes += bytes;
+            }
+            windowCompleted++;
+            if (!success || retries > 0) {
+                windowFailures++;
+            }
+
+            long now = System.nanoTime();
+            if (now - windowStart >= windowNanos) {
+                adjust(now - windowStart);
+                windowStart = now;
+                windowBytes = 0;
+                windowLatencyMs = 0;
+                windowLatencyBytes = 0;
+                windowCompleted = 0;
+                windowFailures = 0;
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current limit
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust(long elapsedNanos) {
+        double throughput = windowBytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        double errorRate = (double) windowFailures / windowCompleted;
+        // no latency is measured in a window in which no bytes were moved
+        double latencyMs = windowLatencyBytes > 0 ? windowLatencyMs * BYTES_PER_MB / windowLatencyBytes : -1;
+        int previous = limit;
+
+        if (errorRate > ERROR_THRESHOLD) {
+            limit = Math.max(minLimit, limit / 2);
+            lastRaised = false;
+        } else if (baselineLatencyMs > 0 && latencyMs > baselineLatencyMs * LATENCY_SPIKE_FACTOR) {
+            limit = Math.max(minLimit, limit / 2);
+            lastRaised = false;
+        } else {
+            if (lastThroughput < 0 || throughput >= lastThroughput * IMPROVEMENT_FACTOR || !lastRaised) {
+                limit = Math.min(maxLimit, limit + 1);
+                lastRaised = limit > previous;
+            } else {
+                limit = Math.max(minLimit, limit - 1);
+                lastRaised = false;
+            }
+            if (latencyMs >= 0) {
+                baselineLatencyMs = baselineLatencyMs < 0 ? latencyMs :
+                                    baselineLatencyMs + BASELINE_WEIGHT * (latencyMs - baselineLatencyMs);
+            }
+        }
+        lastThroughput = throughput;
+
+        if (limit != previous) {
+            log.info("{}: concurrency {} -> {} (throughput={} B/s, error rate={}, latency={} ms/MB)",
+                     name, previous, limit, (long) throughput, errorRate, (long) latencyMs);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.duracloud.snapshot.service.BridgeConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits the bytes per second transferred by all jobs running on the bridge.
+ * Each running job is given a share of the limit in proportion to its weight and
+ * draws from its own token bucket refilled at that share, so no job can starve
+ * the others. The limit and the weights may be changed while jobs are running.
+ * A limit of 0 means transfers are not limited.
+ */
+@Component
+public class BandwidthGovernor {
+
+    private static final Logger log = LoggerFactory.getLogger(BandwidthGovernor.class);
+
+    public static final int DEFAULT_WEIGHT = 1;
+
+    private long limit;
+    private Map<String, Integer> weights = new HashMap<>();
+    private Map<String, TokenBucket> buckets = new HashMap<>();
+
+    public BandwidthGovernor() {
+        this(BridgeConfiguration.getBridgeBandwidthLimitBytesPerSecond());
+    }
+
+    /**
+     * @param limit the bytes per second shared by all jobs, or 0 for no limit
+     */
+    public BandwidthGovernor(long limit) {
+        this.limit = Math.max(limit, 0);
+    }
+
+    /**
+     * @return the bytes per second shared by all jobs, or 0 if there is no limit
+     */
+    public synchronized long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit the bytes per second shared by all jobs, or 0 for no limit
+     */
+    public synchronized void setLimit(long limit) {
+        log.info("Setting bridge bandwidth limit to {} bytes/s", limit);
+        this.limit = Math.max(limit, 0);
+        updateRates();
+    }
+
+    /**
+     * @param jobName the name of a running or future job
+     * @return the weight of the job
+     */
+    public synchronized int getWeight(String jobName) {
+        Integer weight = weights.get(jobName);
+        return weight != null ? weight : DEFAULT_WEIGHT;
+    }
+
+    /**
+     * Sets the weight of a job, which may be running or not yet started.
+     *
+     * @param jobName
+     * @param weight  a positive weight
+     */
+    public synchronized void setWeight(String jobName, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be at least 1: " + weight);
+        }
+        log.info("Setting bandwidth weight of {} to {}", jobName, weight);
+        weights.put(jobName, weight);
+        updateRates();
+    }
+
+    /**
+     * Gives a job a share of the limit until it is unregistered.
+     *
+     * @param jobName
+     */
+    public synchronized void register(String jobName) {
+        if (!buckets.containsKey(jobName)) {
+            buckets.put(jobName, new TokenBucket());
+            updateRates();
+        }
+    }
+
+    /**
+     * Returns the share of a job which has finished to the jobs still running.
+     *
+     * @param jobName
+     */
+    public synchronized void unregister(String jobName) {
+        if (buckets.remove(jobName) != null) {
+            weights.remove(jobName);
+            updateRates();
+        }
+    }
+
+    /**
+     * @return the bytes per second currently allowed to each running job
+     */
+    public synchronized Map<String, Long> getRates() {
+        Map<String, Long> rates = new TreeMap<>();
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            rates.put(entry.getKey(), entry.getValue().getRate());
+        }
+        return rates;
+    }
+
+    /**
+     * Waits until a job may transfer the given number of bytes. A job which is
+     * not registered, such as one which has already finished, is not limited;
+     * it is never registered by this call, so that a late transfer cannot leave
+     * behind a share which is never returned.
+     *
+     * @param jobName
+     * @param bytes
+     * @throws InterruptedException
+     */
+    public void acquire(String jobName, long bytes) throws InterruptedException {
+        TokenBucket bucket;
+        synchronized (this) {
+            if (limit == 0) {
+                return;
+            }
+            bucket = buckets.get(jobName);
+        }
+        if (bucket != null) {
+            bucket.take(bytes);
+        }
+    }
+
+    /**
+     * @param jobName
+     * @param in
+     * @return a stream which reads from the given stream no faster than the job's share allows
+     */
+    public InputStream throttle(String jobName, InputStream in) {
+        return new ThrottledInputStream(jobName, in);
+    }
+
+    private void updateRates() {
+        long totalWeight = 0;
+        for (String jobName : buckets.keySet()) {
+            totalWeight += getWeight(jobName);
+        }
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            long rate = limit == 0 ? 0 : Math.max(1, limit * getWeight(entry.getKey()) / totalWeight);
+            entry.getValue().setRate(rate);
+        }
+    }
+
+    /**
+     * Tokens are bytes. Up to one second of tokens may accumulate; a take larger
+     * than the available tokens puts the bucket into debt, and the caller waits
+     * until the debt is repaid.
+     */
+    private static class TokenBucket {
+        private long rate = 0;
+        private double tokens = 0;
+        private long lastRefill = System.nanoTime();
+
+        private synchronized long getRate() {
+            return rate;
+        }
+
+        private synchronized void setRate(long rate) {
+            refill();
+            this.rate = rate;
+            tokens = Math.min(tokens, rate);
+        }
+
+        private void take(long bytes) throws InterruptedException {
+            long waitNanos;
+            synchronized (this) {
+                if (rate == 0) {
+                    return;
+                }
+                refill();
+                tokens -= bytes;
+                waitNanos = tokens < 0 ? (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+            }
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (double) rate * (now - lastRefill) / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+        }
+    }
+
+    private class ThrottledInputStream extends FilterInputStream {
+        private String jobName;
+
+        private ThrottledInputStream(String jobName, InputStream in) {
+            super(in);
+            this.jobName = jobName;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                charge(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                charge(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                charge(skipped);
+            }
+            return skipped;
+        }
+
+        private void charge(long bytes) throws IOException {
+            try {
+                acquire(jobName, bytes);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for bandwidth");
+            }
+        }
+    }
+}
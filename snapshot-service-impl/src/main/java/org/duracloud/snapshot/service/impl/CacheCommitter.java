@@ -0,0 +1,89 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mapdb.DB;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Groups the changes made to the caches of a transactional MapDB database into
+ * a single commit. A commit is made once the configured number of changes is
+ * pending, or on a timer once the configured interval has passed, rather than
+ * after every change. An interval of 0 or less commits on batch size alone.
+ * <p>
+ * Changes which have not been committed are lost if the bridge stops; callers
+ * must be able to derive those entries again on restart.
+ */
+public class CacheCommitter {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheCommitter.class);
+
+    private DB db;
+    private int maxPending;
+    private AtomicInteger pending = new AtomicInteger(0);
+    private Timer timer;
+
+    /**
+     * @param db               the database whose changes are committed
+     * @param maxPending       the number of changes after which a commit is made
+     * @param commitIntervalMs the interval at which pending changes are committed,
+     *                         or 0 or less to commit only when a batch is full
+     */
+    public CacheCommitter(DB db, int maxPending, long commitIntervalMs) {
+        this.db = db;
+        this.maxPending = maxPending;
+        if (maxPending > 1 && commitIntervalMs > 0) {
+            this.timer = new Timer("cache-committer", true);
+            this.timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        commit();
+                    } catch (Exception ex) {
+                        log.error("Failed to commit cache changes: " + ex.getMessage(), ex);
+                    }
+                }
+            }, commitIntervalMs, commitIntervalMs);
+        }
+    }
+
+    /**
+     * Records a change to one of the caches, committing if enough changes are pending.
+     */
+    public void changed() {
+        if (pending.incrementAndGet() >= maxPending) {
+            commit();
+        }
+    }
+
+    /**
+     * Commits all pending changes.
+     */
+    public synchronized void commit() {
+        int count = pending.getAndSet(0);
+        if (count > 0 && !db.isClosed()) {
+            db.commit();
+            log.debug("Committed {} cache changes", count);
+        }
+    }
+
+    /**
+     * Stops the commit timer and commits all pending changes.
+     */
+    public void close() {
+        if (timer != null) {
+            timer.cancel();
+        }
+        commit();
+    }
+}
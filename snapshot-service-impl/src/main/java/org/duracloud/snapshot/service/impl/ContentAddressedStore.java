@@ -0,0 +1,150 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A store of content files on bridge storage keyed by MD5 checksum. Staged
+ * snapshot files are hard links to the blobs in the store, so content which
+ * appears in more than one snapshot or space is stored only once and need only
+ * be retrieved once.
+ * <p>
+ * Only the MD5 and size of content are known before it is retrieved, so a blob
+ * is matched on those alone. Each account therefore has a store of its own, so
+ * that an MD5 collision can never hand one account the content of another.
+ * <p>
+ * The link count of each blob serves as its reference count: a blob whose only
+ * remaining link is the one held by the store is no longer referenced by any
+ * staged or retained snapshot and is removed by {@link #collectGarbage()}.
+ */
+public class ContentAddressedStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentAddressedStore.class);
+
+    private File storeDir;
+
+    /**
+     * Creates a store spanning the blobs of all accounts, for use in collecting
+     * garbage only.
+     *
+     * @param contentRootDir the bridge content root directory, under which blobs are kept
+     */
+    public ContentAddressedStore(File contentRootDir) {
+        this.storeDir = new File(contentRootDir, "cas");
+    }
+
+    /**
+     * @param contentRootDir the bridge content root directory, under which blobs are kept
+     * @param account        the DuraCloud account (host) whose content is stored
+     */
+    public ContentAddressedStore(File contentRootDir, String account) {
+        this.storeDir = new File(contentRootDir, "cas" + File.separator + account);
+    }
+
+    /**
+     * @param md5 the checksum of the content
+     * @return the path at which the blob for the checksum is kept
+     */
+    public File getBlob(String md5) {
+        String key = md5.toLowerCase();
+        return new File(storeDir, key.substring(0, 2) + File.separator + key.substring(2, 4) +
+                                  File.separator + key);
+    }
+
+    /**
+     * Links a local file to the stored blob for a checksum, if there is one.
+     *
+     * @param md5       the checksum of the content
+     * @param size      the expected size of the content
+     * @param localFile the file to create
+     * @return true if the local file was linked to a stored blob
+     * @throws IOException
+     */
+    public boolean link(String md5, long size, File localFile) throws IOException {
+        File blob = getBlob(md5);
+        if (!blob.exists() || blob.length() != size) {
+            return false;
+        }
+
+        Files.deleteIfExists(localFile.toPath());
+        try {
+            RetainedContent.link(localFile.toPath(), blob.toPath());
+        } catch (NoSuchFileException ex) {
+            // removed by garbage collection since it was checked
+            return false;
+        }
+        log.debug("Linked {} to stored content {}", localFile.getAbsolutePath(), md5);
+        return true;
+    }
+
+    /**
+     * Adds a verified local file to the store. If a blob with the same checksum
+     * and the same content was added concurrently the local file is replaced
+     * with a link to it.
+     *
+     * @param md5       the checksum of the local file
+     * @param localFile
+     * @throws IOException
+     */
+    public void add(String md5, File localFile) throws IOException {
+        Path blob = getBlob(md5).toPath();
+        Files.createDirectories(blob.getParent());
+        try {
+            Files.createLink(blob, localFile.toPath());
+        } catch (FileAlreadyExistsException ex) {
+            if (!Files.isSameFile(blob, localFile.toPath()) && FileUtils.contentEquals(blob.toFile(), localFile)) {
+                Path temp = new File(localFile.getPath() + ".link").toPath();
+                Files.deleteIfExists(temp);
+                Files.createLink(temp, blob);
+                Files.move(temp, localFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    /**
+     * Removes the blobs which are no longer linked from any snapshot.
+     *
+     * @return the number of blobs removed
+     * @throws IOException
+     */
+    public int collectGarbage() throws IOException {
+        if (!storeDir.exists()) {
+            return 0;
+        }
+
+        final int[] removed = {0};
+        Files.walkFileTree(storeDir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Integer links = (Integer) Files.getAttribute(file, "unix:nlink");
+                if (links != null && links <= 1) {
+                    Files.deleteIfExists(file);
+                    removed[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        log.info("Removed {} unreferenced blobs from {}", removed[0], storeDir.getAbsolutePath());
+        return removed[0];
+    }
+}
@@ -7,8 +7,12 @@
  */
 package org.duracloud.snapshot.service.impl;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -17,12 +21,21 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.NonTransientResourceException;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.UnexpectedInputException;
 
 /**
+ * Reads the sets of properties in a content properties file. The offsets of
+ * the items read are recorded in a {@link ContentPropertiesOffsetIndex} beside
+ * the file, so that a restarted step seeks close to the first item it has not
+ * read rather than parsing every item before it. The item found at a recorded
+ * offset is checked against the index before reading resumes there; if it is
+ * not the item sought, the index is cleared and the file is read from the start.
+ *
  * @author Daniel Bernstein
  * Date: Jul 16, 2014
  */
@@ -30,12 +43,42 @@ public class ContentPropertiesFileReader extends StepExecutionSupport implements
     private final Logger log =
         LoggerFactory.getLogger(ContentPropertiesFileReader.class);
 
+    /**
+     * The number of items between the offsets recorded in the offset index
+     */
+    public static final int DEFAULT_OFFSET_INDEX_STRIDE = 1000;
+
+    // prepended to the file when resuming part way through it, in place of the
+    // opening brace of the first item, so that the parser sees the items which
+    // follow as the rest of the array
+    private static final byte[] RESUME_PREFIX = "[{".getBytes(StandardCharsets.UTF_8);
+
     private File propertiesFile;
 
     private JsonParser jParser;
 
+    private ContentPropertiesOffsetIndex offsetIndex;
+
+    // the index in the file of the next item to be read
+    private long nextItem = 0;
+
+    // the offset in the file of the start of the parser's input
+    private long baseOffset = 0;
+
     public ContentPropertiesFileReader(File propertiesFile) {
+        this(propertiesFile, DEFAULT_OFFSET_INDEX_STRIDE);
+    }
+
+    /**
+     * @param propertiesFile    the content properties file
+     * @param offsetIndexStride the number of items between the offsets recorded
+     *                          in the offset index, or 0 to keep no offset index
+     */
+    public ContentPropertiesFileReader(File propertiesFile, int offsetIndexStride) {
         this.propertiesFile = propertiesFile;
+        if (offsetIndexStride > 0) {
+            this.offsetIndex = new ContentPropertiesOffsetIndex(propertiesFile, offsetIndexStride);
+        }
     }
 
     /*
@@ -48,20 +91,138 @@ public class ContentPropertiesFileReader extends StepExecutionSupport implements
         throws Exception, UnexpectedInputException, ParseException, NonTransientResourceException {
 
         if (jParser == null) {
-            JsonFactory jfactory = new JsonFactory();
-            jParser = jfactory.createJsonParser(this.propertiesFile);
+            long itemsRead = getItemsRead();
+            openParser(itemsRead);
             jParser.nextToken(); //skips the first [
 
             //skip properties already read.
-            int itemsRead = (int) getItemsRead();
-            for (int i = 0; i < itemsRead; i++) {
-                doRead();
+            while (nextItem < itemsRead) {
+                if (doRead() == null) {
+                    break;
+                }
             }
         }
 
         return doRead();
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.duracloud.snapshot.service.impl.StepExecutionSupport#afterStep(
+     * org.springframework.batch.core.StepExecution)
+     */
+    @Override
+    public synchronized ExitStatus afterStep(StepExecution stepExecution) {
+        closeOffsetIndex();
+        return super.afterStep(stepExecution);
+    }
+
+    /**
+     * Opens the parser at the item nearest to, but not after, the given item
+     * whose offset is known.
+     *
+     * @param item the index of the first item to be read
+     * @throws IOException
+     */
+    private void openParser(long item) throws IOException {
+        JsonFactory jfactory = new JsonFactory();
+        long start = 0;
+        if (offsetIndex != null) {
+            try {
+                offsetIndex.open();
+                start = offsetIndex.getNearestItem(item);
+            } catch (IOException ex) {
+                log.warn("Unable to open offset index of {}, reading from the start: {}",
+                         propertiesFile.getAbsolutePath(), ex.getMessage());
+                closeOffsetIndex();
+            }
+        }
+
+        if (start > 0 && seek(jfactory, start)) {
+            log.info("Resuming content properties file {} at item {} (offset {}) to skip to item {}",
+                     propertiesFile.getAbsolutePath(), start, offsetIndex.getOffset(start), item);
+        } else {
+            jParser = jfactory.createJsonParser(this.propertiesFile);
+            baseOffset = 0;
+            nextItem = 0;
+        }
+    }
+
+    /**
+     * Opens the parser at the recorded offset of an item, once the item found
+     * there has been confirmed to be that item.
+     *
+     * @param jfactory
+     * @param start    an item whose offset is known
+     * @return true if the parser was opened at the item
+     */
+    private boolean seek(JsonFactory jfactory, long start) {
+        long offset = offsetIndex.getOffset(start);
+        try {
+            String contentId;
+            try (JsonParser parser = openParserAt(jfactory, offset)) {
+                parser.nextToken(); // [
+                parser.nextToken(); // {
+                contentId = parseNext(parser).getContentId();
+            }
+            if (!offsetIndex.matches(start, contentId)) {
+                throw new IOException("Found " + contentId + " rather than item " + start);
+            }
+            jParser = openParserAt(jfactory, offset);
+            nextItem = start;
+            return true;
+        } catch (Exception ex) {
+            log.warn("Offset {} in offset index of {} does not lead to item {}, reading from the start: {}",
+                     offset, propertiesFile.getAbsolutePath(), start, ex.getMessage());
+            try {
+                offsetIndex.clear();
+            } catch (IOException e) {
+                closeOffsetIndex();
+            }
+            return false;
+        }
+    }
+
+    private JsonParser openParserAt(JsonFactory jfactory, long offset) throws IOException {
+        FileInputStream stream = new FileInputStream(propertiesFile);
+        stream.getChannel().position(offset);
+
+        // the offset may fall on the separator before the item, depending on
+        // how the parser which recorded it reports token locations
+        long position = offset;
+        int c;
+        while ((c = stream.read()) != '{') {
+            if (c < 0) {
+                stream.close();
+                throw new IOException("No item at offset " + offset + " of " + propertiesFile.getAbsolutePath());
+            }
+            position++;
+        }
+        baseOffset = position - 1;
+        return jfactory.createParser(new SequenceInputStream(new ByteArrayInputStream(RESUME_PREFIX), stream));
+    }
+
+    private void recordOffset(long offset, String contentId) {
+        if (offsetIndex == null) {
+            return;
+        }
+        try {
+            offsetIndex.record(nextItem, offset, contentId);
+        } catch (IOException ex) {
+            log.warn("Unable to record offset in offset index of {}: {}",
+                     propertiesFile.getAbsolutePath(), ex.getMessage());
+            closeOffsetIndex();
+        }
+    }
+
+    private void closeOffsetIndex() {
+        if (offsetIndex != null) {
+            offsetIndex.close();
+            offsetIndex = null;
+        }
+    }
+
     /**
      * @return
      * @throws IOException
@@ -75,7 +236,11 @@ public class ContentPropertiesFileReader extends StepExecutionSupport implements
         try {
             while (jParser.nextToken() != JsonToken.END_ARRAY &&
                    jParser.getText() != null) {
-                return parseNext(jParser);
+                long offset = baseOffset + jParser.getTokenLocation().getByteOffset();
+                ContentProperties props = parseNext(jParser);
+                recordOffset(offset, props.getContentId());
+                nextItem++;
+                return props;
             }
         } catch (Exception e) {
             String message = "Error parsing content properties file: " + e.getMessage();
@@ -84,6 +249,7 @@ public class ContentPropertiesFileReader extends StepExecutionSupport implements
         }
 
         jParser.close();
+        closeOffsetIndex();
         return null;
     }
 
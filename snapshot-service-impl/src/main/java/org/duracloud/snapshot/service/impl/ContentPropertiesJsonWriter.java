@@ -0,0 +1,176 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes the content-properties.json file of a snapshot: a JSON array with one
+ * object per content item, mapping the content id to the item's properties.
+ * Entries may be written concurrently. Each entry is formatted and escaped by the
+ * calling thread into a buffer which is reused for later entries on that thread;
+ * the separator between entries is written in the order entries reach the file,
+ * so the array remains valid however many entries are written. The file is
+ * flushed every {@code flushEvery} entries and when it is finished.
+ */
+public class ContentPropertiesJsonWriter {
+
+    private static final String SEPARATOR = ",\n";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<StringBuilder> BUILDER =
+        ThreadLocal.withInitial(() -> new StringBuilder(512));
+    private static final ThreadLocal<char[][]> CHARS = ThreadLocal.withInitial(() -> new char[1][512]);
+
+    private Writer out;
+    private int flushEvery;
+    private ManifestAppender manifestAppender;
+    private long entries = 0;
+
+    /**
+     * @param out        the writer for the properties file
+     * @param flushEvery the number of entries written between flushes
+     */
+    public ContentPropertiesJsonWriter(Writer out, int flushEvery) {
+        this.out = out;
+        this.flushEvery = Math.max(flushEvery, 1);
+    }
+
+    /**
+     * When set, entries are handed off to the appender, which writes them to the
+     * file and decides when to flush.
+     *
+     * @param manifestAppender an appender through which the underlying writer was opened
+     */
+    public void setManifestAppender(ManifestAppender manifestAppender) {
+        this.manifestAppender = manifestAppender;
+    }
+
+    /**
+     * Writes the start of the array. Must be called before any entry is written.
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        out.write("[\n");
+        out.flush();
+    }
+
+    /**
+     * @param contentId
+     * @param props
+     * @throws IOException
+     */
+    public void write(String contentId, Map<String, String> props) throws IOException {
+        StringBuilder sb = BUILDER.get();
+        sb.setLength(0);
+        sb.append(SEPARATOR);
+        format(contentId, props, sb);
+
+        if (manifestAppender != null) {
+            synchronized (this) {
+                // the separator is decided when the entry is queued, as entries
+                // are written in the order they are queued
+                int start = entries++ == 0 ? SEPARATOR.length() : 0;
+                manifestAppender.append(out, sb.substring(start));
+            }
+            return;
+        }
+
+        char[][] holder = CHARS.get();
+        if (holder[0].length < sb.length()) {
+            holder[0] = new char[sb.length() * 2];
+        }
+        char[] chars = holder[0];
+        sb.getChars(0, sb.length(), chars, 0);
+
+        synchronized (this) {
+            int start = entries++ == 0 ? SEPARATOR.length() : 0;
+            out.write(chars, start, sb.length() - start);
+            if (entries % flushEvery == 0) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the end of the array and flushes the file. Any appender must have
+     * been drained first.
+     *
+     * @throws IOException
+     */
+    public synchronized void finish() throws IOException {
+        out.write(entries > 0 ? "\n]\n" : "]\n");
+        out.flush();
+    }
+
+    /**
+     * Formats a single entry of the properties file.
+     *
+     * @param contentId
+     * @param props
+     * @param sb        the builder to which the entry is appended
+     */
+    public static void format(String contentId, Map<String, String> props, StringBuilder sb) {
+        sb.append("{\n  ");
+        appendQuoted(contentId, sb);
+        sb.append(": {");
+        boolean first = true;
+        for (Map.Entry<String, String> prop : props.entrySet()) {
+            sb.append(first ? "\n    " : ",\n    ");
+            appendQuoted(prop.getKey(), sb);
+            sb.append(": ");
+            appendQuoted(prop.getValue(), sb);
+            first = false;
+        }
+        sb.append(first ? "}\n}" : "\n  }\n}");
+    }
+
+    /**
+     * Appends a value as a JSON string, escaping quotes, backslashes and control
+     * characters. A null value is written as an empty string.
+     *
+     * @param value
+     * @param sb
+     */
+    static void appendQuoted(String value, StringBuilder sb) {
+        sb.append('"');
+        if (value != null) {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    case '\r':
+                        sb.append("\\r");
+                        break;
+                    case '\t':
+                        sb.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
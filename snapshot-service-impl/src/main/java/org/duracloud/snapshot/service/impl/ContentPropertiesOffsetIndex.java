@@ -0,0 +1,186 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A sidecar to a content properties file holding the byte offset at which every
+ * n-th set of properties in the file starts, so that a reader may seek close to
+ * any item rather than parse every item before it.
+ * <p>
+ * Offsets are recorded as the file is read, so the index covers as much of the
+ * file as has ever been read. The index starts with its format, the length of
+ * the content properties file and the stride at which offsets are recorded, and
+ * an index which does not match the file it sits beside is started over, as is
+ * one whose offsets do not increase or lie beyond the end of the file.
+ * <p>
+ * Each offset is stored with a hash of the content id of the item found there,
+ * so that a reader can confirm it has found the item it sought, and is synced
+ * to disk as it is recorded.
+ */
+public class ContentPropertiesOffsetIndex implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentPropertiesOffsetIndex.class);
+
+    public static final String OFFSET_INDEX_SUFFIX = ".offsets";
+
+    private static final int FORMAT = 2;
+
+    // format (int), source file length (long) and stride (int)
+    private static final int HEADER_LENGTH = 16;
+
+    // offset (long) and content id hash (int)
+    private static final int ENTRY_LENGTH = 12;
+
+    private File propertiesFile;
+    private File indexFile;
+    private int stride;
+    private List<Long> offsets = new ArrayList<>();
+    private List<Integer> hashes = new ArrayList<>();
+    private RandomAccessFile index;
+
+    /**
+     * @param propertiesFile the content properties file
+     * @param stride         the number of items between recorded offsets
+     */
+    public ContentPropertiesOffsetIndex(File propertiesFile, int stride) {
+        this.propertiesFile = propertiesFile;
+        this.indexFile = new File(propertiesFile.getPath() + OFFSET_INDEX_SUFFIX);
+        this.stride = Math.max(stride, 1);
+    }
+
+    /**
+     * Opens the index, loading the offsets recorded so far.
+     *
+     * @throws IOException
+     */
+    public synchronized void open() throws IOException {
+        long sourceLength = propertiesFile.length();
+        index = new RandomAccessFile(indexFile, "rw");
+        offsets.clear();
+        hashes.clear();
+        if (index.length() >= HEADER_LENGTH && index.readInt() == FORMAT &&
+            index.readLong() == sourceLength && index.readInt() == stride) {
+            long count = (index.length() - HEADER_LENGTH) / ENTRY_LENGTH;
+            long last = -1;
+            for (long i = 0; i < count; i++) {
+                long offset = index.readLong();
+                if (offset <= last || offset >= sourceLength) {
+                    log.warn("Offset index {} holds an offset out of order or beyond the end of {}; starting over",
+                             indexFile.getAbsolutePath(), propertiesFile.getAbsolutePath());
+                    offsets.clear();
+                    hashes.clear();
+                    break;
+                }
+                offsets.add(offset);
+                hashes.add(index.readInt());
+                last = offset;
+            }
+        }
+        if (offsets.isEmpty()) {
+            index.seek(0);
+            index.writeInt(FORMAT);
+            index.writeLong(sourceLength);
+            index.writeInt(stride);
+        }
+        // drop any offset which was only partly written
+        truncate();
+        log.debug("Opened offset index {} with {} offsets", indexFile.getAbsolutePath(), offsets.size());
+    }
+
+    /**
+     * @param item the index of an item in the file
+     * @return the index of the last item at or before the given item whose offset
+     * is known, or 0 if none is
+     */
+    public synchronized long getNearestItem(long item) {
+        long position = Math.min(item / stride, offsets.size() - 1);
+        return position > 0 ? position * stride : 0;
+    }
+
+    /**
+     * @param item an item returned by {@link #getNearestItem(long)}
+     * @return the byte offset at which the item starts
+     */
+    public synchronized long getOffset(long item) {
+        return offsets.get((int) (item / stride));
+    }
+
+    /**
+     * @param item      an item returned by {@link #getNearestItem(long)}
+     * @param contentId the content id of the item found at its offset
+     * @return true if the content id is that recorded for the item
+     */
+    public synchronized boolean matches(long item, String contentId) {
+        return hashes.get((int) (item / stride)) == hash(contentId);
+    }
+
+    /**
+     * Records the offset of an item if it falls on the stride and follows the
+     * last recorded offset.
+     *
+     * @param item      the index of the item in the file
+     * @param offset    the byte offset at which the item starts
+     * @param contentId the content id of the item
+     * @throws IOException
+     */
+    public synchronized void record(long item, long offset, String contentId) throws IOException {
+        if (index != null && item % stride == 0 && item / stride == offsets.size()) {
+            index.writeLong(offset);
+            index.writeInt(hash(contentId));
+            index.getChannel().force(false);
+            offsets.add(offset);
+            hashes.add(hash(contentId));
+        }
+    }
+
+    /**
+     * Drops all recorded offsets, as when one of them has been found not to
+     * lead to the item recorded with it.
+     *
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        offsets.clear();
+        hashes.clear();
+        if (index != null) {
+            truncate();
+        }
+    }
+
+    private void truncate() throws IOException {
+        index.setLength(HEADER_LENGTH + (long) offsets.size() * ENTRY_LENGTH);
+        index.seek(index.length());
+        index.getChannel().force(false);
+    }
+
+    private static int hash(String contentId) {
+        return contentId != null ? contentId.hashCode() : 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException ex) {
+                log.warn("Failed to close offset index {}: {}", indexFile.getAbsolutePath(), ex.getMessage());
+            }
+            index = null;
+        }
+    }
+}
@@ -7,6 +7,7 @@
  */
 package org.duracloud.snapshot.service.impl;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +17,7 @@ import org.duracloud.client.ContentStore;
 import org.duracloud.common.retry.Retriable;
 import org.duracloud.common.retry.Retrier;
 import org.duracloud.error.ContentStoreException;
+import org.duracloud.snapshot.service.BridgeConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.ExitStatus;
@@ -34,6 +36,9 @@ public class ContentPropertiesWriter extends StepExecutionSupport
     private ContentStore contentStore;
     private String storeId;
     private String storageProviderType;
+    private File contentDir;
+    private long chunkSize;
+    private RestoreContentIndex contentIndex;
 
     /**
      * @param contentStore
@@ -50,6 +55,50 @@ public class ContentPropertiesWriter extends StepExecutionSupport
                   storageProviderType);
     }
 
+    /**
+     * When set, whether an item was uploaded in chunks is decided from the size
+     * of its restored file, as it was when the file was uploaded, and its
+     * properties are set directly on the item or on its chunk manifest.
+     *
+     * @param contentDir the directory holding the restored files
+     * @param chunkSize  the size above which restored files were uploaded in chunks
+     */
+    public void setStagedContent(File contentDir, long chunkSize) {
+        this.contentDir = contentDir;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * When set, items whose properties were applied when they were uploaded are
+     * skipped, and items whose properties are set are recorded in the index.
+     *
+     * @param contentIndex
+     */
+    public void setContentIndex(RestoreContentIndex contentIndex) {
+        this.contentIndex = contentIndex;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.batch.core.StepExecutionListener#beforeStep(org.
+     * springframework.batch.core.StepExecution)
+     */
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        super.beforeStep(stepExecution);
+        if (contentIndex != null) {
+            try {
+                contentIndex.open(BridgeConfiguration.getBridgeCacheCommitBatchSize(),
+                                  BridgeConfiguration.getBridgeCacheCommitIntervalMs());
+                log.info("{} items had their properties applied when uploaded", contentIndex.getAppliedCount());
+            } catch (Exception ex) {
+                addError("failed to open restore index: " + ex.getMessage());
+                stepExecution.addFailureException(ex);
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -58,6 +107,9 @@ public class ContentPropertiesWriter extends StepExecutionSupport
      */
     @Override
     public ExitStatus afterStep(StepExecution stepExecution) {
+        if (contentIndex != null) {
+            contentIndex.close();
+        }
         ExitStatus status = stepExecution.getExitStatus();
         List<String> errors = getErrors();
         if (errors.size() > 0) {
@@ -139,36 +191,80 @@ public class ContentPropertiesWriter extends StepExecutionSupport
     @Override
     public void write(List<? extends ContentProperties> items) throws Exception {
         for (final ContentProperties props : items) {
+            if (contentIndex != null && contentIndex.isApplied(props.getContentId())) {
+                log.debug("skipping content properties of {}: applied on upload", props.getContentId());
+                continue;
+            }
+
+            final Boolean chunked = isChunked(props.getContentId());
             new Retrier().execute(new Retriable() {
 
                 @Override
                 public Object retry() throws Exception {
-                    try {
-                        contentStore.setContentProperties(destinationSpaceId,
-                                                          props.getContentId(),
-                                                          props.getProperties());
-                        log.debug("wrote content properties ({}) to space ({}) on store ({}/{}):",
-                                  props, destinationSpaceId, storeId, storageProviderType);
-                        return null;
-                    } catch (ContentStoreException ex) {
-                        log.warn("failed to update content properties ({}) to space({}); on store({}/{}). " +
-                                 "Trying with chunk manifest extension.",
-                                 props, destinationSpaceId, storeId, storageProviderType);
-
-                        //make sure the chunk manifest's properties are layed on top of the stitched file
-                        //properties to ensure that mutable "system-ish" properties such as content type are not
-                        //overwritten.
-                        String manifestId = props.getContentId() + ChunksManifest.manifestSuffix;
-                        Map<String, String> properties = new HashMap<>(props.getProperties());
-                        Map<String, String> chunkManifestProperties =
-                            contentStore.getContentProperties(destinationSpaceId, manifestId);
-                        properties.putAll(chunkManifestProperties);
-                        contentStore.setContentProperties(destinationSpaceId, manifestId, properties);
-                        return null;
+                    // the local file only suggests how the item was stored, as the
+                    // chunk size may have changed since, so the other way is
+                    // still tried if the first fails
+                    if (chunked != null && chunked) {
+                        try {
+                            setChunkManifestProperties(props);
+                        } catch (ContentStoreException ex) {
+                            log.warn("failed to update content properties ({}) of chunk manifest in space({}); " +
+                                     "on store({}/{}). Trying without chunk manifest extension.",
+                                     props, destinationSpaceId, storeId, storageProviderType);
+                            setProperties(props);
+                        }
+                    } else {
+                        try {
+                            setProperties(props);
+                        } catch (ContentStoreException ex) {
+                            log.warn("failed to update content properties ({}) to space({}); on store({}/{}). " +
+                                     "Trying with chunk manifest extension.",
+                                     props, destinationSpaceId, storeId, storageProviderType);
+                            setChunkManifestProperties(props);
+                        }
                     }
+                    return null;
                 }
             });
+
+            if (contentIndex != null) {
+                contentIndex.recordApplied(props.getContentId());
+            }
         }
     }
 
+    /**
+     * @param contentId
+     * @return whether the item was uploaded in chunks, or null if that is not known
+     */
+    private Boolean isChunked(String contentId) {
+        if (contentDir == null) {
+            return null;
+        }
+        File file = new File(contentDir, contentId);
+        return file.isFile() ? file.length() > chunkSize : null;
+    }
+
+    private void setProperties(ContentProperties props) throws ContentStoreException {
+        contentStore.setContentProperties(destinationSpaceId,
+                                          props.getContentId(),
+                                          props.getProperties());
+        log.debug("wrote content properties ({}) to space ({}) on store ({}/{}):",
+                  props, destinationSpaceId, storeId, storageProviderType);
+    }
+
+    private void setChunkManifestProperties(ContentProperties props) throws ContentStoreException {
+        //make sure the chunk manifest's properties are layed on top of the stitched file
+        //properties to ensure that mutable "system-ish" properties such as content type are not
+        //overwritten.
+        String manifestId = props.getContentId() + ChunksManifest.manifestSuffix;
+        Map<String, String> properties = new HashMap<>(props.getProperties());
+        Map<String, String> chunkManifestProperties =
+            contentStore.getContentProperties(destinationSpaceId, manifestId);
+        properties.putAll(chunkManifestProperties);
+        contentStore.setContentProperties(destinationSpaceId, manifestId, properties);
+        log.debug("wrote content properties ({}) to chunk manifest in space ({}) on store ({}/{}):",
+                  props, destinationSpaceId, storeId, storageProviderType);
+    }
+
 }
@@ -0,0 +1,181 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.duracloud.chunk.manifest.ChunksManifest;
+import org.duracloud.chunk.manifest.ChunksManifestBean;
+import org.duracloud.chunk.manifest.xml.ManifestDocumentBinding;
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.model.ContentItem;
+import org.duracloud.common.retry.Retriable;
+import org.duracloud.common.retry.Retrier;
+import org.duracloud.common.util.ChecksumUtil.Algorithm;
+import org.duracloud.domain.Content;
+import org.duracloud.retrieval.mgmt.RetrievalListener;
+import org.duracloud.retrieval.source.ContentStream;
+import org.duracloud.retrieval.source.DuraStoreStitchingRetrievalSource;
+
+/**
+ * A stitching retrieval source which computes the MD5 and SHA-256 checksums of
+ * each content stream as it is read, so that the retrieved file does not need to
+ * be read back from disk in order to generate its checksums.
+ * <p>
+ * Streams are tracked per thread: the digests of the most recent stream opened by
+ * the calling thread are available through {@link #getDigests(ContentItem)} once
+ * that stream has been read to its end.
+ */
+public class DigestingRetrievalSource extends DuraStoreStitchingRetrievalSource {
+
+    private ContentStore contentStore;
+    private ThreadLocal<Digests> lastDigests = new ThreadLocal<>();
+    private BandwidthGovernor bandwidthGovernor;
+    private String jobName;
+
+    /**
+     * @param contentStore
+     * @param spaces
+     * @param allSpaces
+     */
+    public DigestingRetrievalSource(ContentStore contentStore,
+                                    List<String> spaces,
+                                    boolean allSpaces) {
+        super(contentStore, spaces, allSpaces);
+        this.contentStore = contentStore;
+    }
+
+    /**
+     * When set, content is read no faster than the job's share of the bridge
+     * bandwidth allows.
+     *
+     * @param bandwidthGovernor
+     * @param jobName
+     */
+    public void setBandwidthGovernor(BandwidthGovernor bandwidthGovernor, String jobName) {
+        this.bandwidthGovernor = bandwidthGovernor;
+        this.jobName = jobName;
+    }
+
+    @Override
+    public ContentStream getSourceContent(ContentItem contentItem,
+                                          RetrievalListener listener) {
+        ContentStream contentStream = super.getSourceContent(contentItem, listener);
+        MultiDigestInputStream digestStream =
+            new MultiDigestInputStream(throttle(contentStream.getStream()),
+                                       Algorithm.MD5,
+                                       Algorithm.SHA_256);
+        // a retry within the retrieval worker replaces any previous stream for this item.
+        Digests previous = lastDigests.get();
+        int attempts = previous != null && previous.contentId.equals(contentItem.getContentId()) ?
+                       previous.attempts + 1 : 1;
+        lastDigests.set(new Digests(contentItem.getContentId(), digestStream, attempts));
+        return new ContentStream(digestStream, contentStream.getProperties());
+    }
+
+    /**
+     * Returns the properties of the content to which a content item refers. For a
+     * chunk manifest these are the properties of the stitched content: the
+     * checksum, size and mimetype are taken from the manifest header rather than
+     * describing the manifest document itself.
+     *
+     * @param contentItem
+     * @return the properties of the (stitched) content
+     * @throws IOException if the chunk manifest could not be retrieved
+     */
+    public Map<String, String> getStitchedProperties(final ContentItem contentItem) throws IOException {
+        if (!contentItem.getContentId().endsWith(ChunksManifest.manifestSuffix)) {
+            return getSourceProperties(contentItem);
+        }
+
+        try {
+            return new Retrier().execute(new Retriable() {
+                @Override
+                public Map<String, String> retry() throws Exception {
+                    Content manifestContent =
+                        contentStore.getContent(contentItem.getSpaceId(), contentItem.getContentId());
+                    ChunksManifest manifest;
+                    try (InputStream manifestStream = manifestContent.getStream()) {
+                        manifest = ManifestDocumentBinding.createManifestFrom(manifestStream);
+                    }
+                    ChunksManifestBean.ManifestHeader header = manifest.getHeader();
+                    Map<String, String> props = new HashMap<>(manifestContent.getProperties());
+                    props.put(ContentStore.CONTENT_CHECKSUM, header.getSourceMD5());
+                    props.put(ContentStore.CONTENT_MIMETYPE, header.getSourceMimetype());
+                    props.put(ContentStore.CONTENT_SIZE, String.valueOf(header.getSourceByteSize()));
+                    return props;
+                }
+            });
+        } catch (Exception ex) {
+            throw new IOException("Failed to retrieve chunk manifest " + contentItem.getContentId() +
+                                  " from space " + contentItem.getSpaceId() + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns and clears the digests of the last content stream opened by the
+     * calling thread.
+     *
+     * @param contentItem the item which was retrieved
+     * @return the digests, or null if the item's content was not streamed in full
+     * by this thread (for example because an unchanged local copy was kept)
+     */
+    public Digests getDigests(ContentItem contentItem) {
+        Digests digests = lastDigests.get();
+        lastDigests.remove();
+        if (digests == null ||
+            !digests.contentId.equals(contentItem.getContentId()) ||
+            !digests.stream.isEndOfStream()) {
+            return null;
+        }
+        return digests;
+    }
+
+    private InputStream throttle(InputStream in) {
+        return bandwidthGovernor != null ? bandwidthGovernor.throttle(jobName, in) : in;
+    }
+
+    /**
+     * The checksums computed while streaming a single content item.
+     */
+    public static class Digests {
+        private String contentId;
+        private MultiDigestInputStream stream;
+        private int attempts;
+
+        private Digests(String contentId, MultiDigestInputStream stream, int attempts) {
+            this.contentId = contentId;
+            this.stream = stream;
+            this.attempts = attempts;
+        }
+
+        public String getMd5() {
+            return stream.getChecksum(Algorithm.MD5);
+        }
+
+        public String getSha256() {
+            return stream.getChecksum(Algorithm.SHA_256);
+        }
+
+        public long getByteCount() {
+            return stream.getBytesRead();
+        }
+
+        /**
+         * @return the number of times the item's content was streamed by the
+         * calling thread, including retries
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+}
@@ -0,0 +1,490 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import javax.annotation.PreDestroy;
+
+import org.duracloud.snapshot.service.BridgeConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs batch jobs in a fixed number of slots. Jobs waiting for a slot are queued
+ * by priority, so restores start ahead of snapshots, and within a priority by
+ * tenant: the next job is taken from the tenant with the fewest running jobs,
+ * and tenants with equal numbers of running jobs take turns. One tenant
+ * submitting many jobs therefore delays other tenants by at most one job per
+ * slot.
+ * <p>
+ * When staging admission is enabled, a job starts only once the space it is
+ * expected to stage can be reserved on the staging volume. Jobs which do not
+ * fit yet are passed over in favour of the next job which does. So that a large
+ * job is not passed over for ever, once a job which would fit on the volume
+ * with no other jobs running has been passed over for longer than a set time,
+ * no other job starts until it does.
+ * <p>
+ * The job launcher hands this executor an anonymous task, so callers describe
+ * the job they are about to launch with {@link #setNextJob(String, String, Priority)}
+ * on the launching thread.
+ */
+@Component("jobTaskExecutor")
+public class FairShareJobScheduler implements TaskExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(FairShareJobScheduler.class);
+
+    private static final ThreadLocal<QueuedJob> NEXT_JOB = new ThreadLocal<>();
+
+    // weight given to each completed job when averaging job durations
+    private static final double DURATION_WEIGHT = 0.2;
+
+    // how often waiting jobs are checked against the free staging space
+    private static final long CAPACITY_RECHECK_MS = 30000;
+
+    // how long a slot pauses after an error in scheduling a job
+    private static final long ERROR_PAUSE_MS = 1000;
+
+    /**
+     * Job priorities, highest first.
+     */
+    public enum Priority {
+        RESTORE, SNAPSHOT
+    }
+
+    private int slots;
+    private StagingCapacity capacity;
+    private long maxPassedOverMs;
+    private JobQueue queue = new JobQueue();
+    private Map<String, QueuedJob> running = new LinkedHashMap<>();
+    private long averageDurationMs = -1;
+    private boolean shutdown = false;
+
+    @Autowired
+    public FairShareJobScheduler(StagingCapacity capacity) {
+        this(BridgeConfiguration.getBridgeJobSlots(), capacity,
+             BridgeConfiguration.getBridgeStagingMaxPassedOverMs());
+    }
+
+    /**
+     * @param slots the number of jobs which may run at once
+     */
+    public FairShareJobScheduler(int slots) {
+        this(slots, null);
+    }
+
+    /**
+     * @param slots    the number of jobs which may run at once
+     * @param capacity the staging space to reserve for each job, or null to
+     *                 start jobs regardless of staging space
+     */
+    public FairShareJobScheduler(int slots, StagingCapacity capacity) {
+        this(slots, capacity, BridgeConfiguration.getBridgeStagingMaxPassedOverMs());
+    }
+
+    /**
+     * @param slots           the number of jobs which may run at once
+     * @param capacity        the staging space to reserve for each job, or null
+     *                        to start jobs regardless of staging space
+     * @param maxPassedOverMs how long a job may be passed over for want of
+     *                        staging space before other jobs are held back
+     */
+    public FairShareJobScheduler(int slots, StagingCapacity capacity, long maxPassedOverMs) {
+        this.slots = Math.max(slots, 1);
+        this.capacity = capacity != null && capacity.isEnabled() ? capacity : null;
+        this.maxPassedOverMs = maxPassedOverMs;
+        for (int i = 0; i < this.slots; i++) {
+            Thread worker = new Thread(this::work, "job-slot-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+        }
+        log.info("Running up to {} jobs at once", this.slots);
+    }
+
+    /**
+     * Describes the job the calling thread is about to launch. The description
+     * applies to the next task this executor is given on the calling thread.
+     *
+     * @param name     the snapshot or restoration id
+     * @param tenant   the account which requested the job
+     * @param priority
+     */
+    public static void setNextJob(String name, String tenant, Priority priority) {
+        setNextJob(name, tenant, priority, 0);
+    }
+
+    /**
+     * Describes the job the calling thread is about to launch, including the
+     * space it is expected to stage.
+     *
+     * @param name          the snapshot or restoration id
+     * @param tenant        the account which requested the job
+     * @param priority
+     * @param requiredBytes the bytes the job is expected to stage, or 0 if unknown
+     */
+    public static void setNextJob(String name, String tenant, Priority priority, long requiredBytes) {
+        setNextJob(name, tenant, priority, requiredBytes, null);
+    }
+
+    /**
+     * Describes the job the calling thread is about to launch, including the
+     * space it is expected to stage and the directory in which it stages it.
+     *
+     * @param name          the snapshot or restoration id
+     * @param tenant        the account which requested the job
+     * @param priority
+     * @param requiredBytes the bytes the job is expected to stage, or 0 if unknown
+     * @param stagingDir    the directory in which the job stages its content, or null
+     */
+    public static void setNextJob(String name, String tenant, Priority priority, long requiredBytes,
+                                  File stagingDir) {
+        QueuedJob job = new QueuedJob(name, tenant, priority, null);
+        job.requiredBytes = requiredBytes;
+        job.stagingDir = stagingDir;
+        NEXT_JOB.set(job);
+    }
+
+    /**
+     * Clears any job description set by the calling thread.
+     */
+    public static void clearNextJob() {
+        NEXT_JOB.remove();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        QueuedJob description = NEXT_JOB.get();
+        NEXT_JOB.remove();
+        QueuedJob job = description != null ?
+                        new QueuedJob(description.name, description.tenant, description.priority, task) :
+                        new QueuedJob(null, "unknown", Priority.SNAPSHOT, task);
+        if (description != null) {
+            job.requiredBytes = description.requiredBytes;
+            job.stagingDir = description.stagingDir;
+        }
+
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("The job scheduler has been shut down");
+            }
+            job.queuedAt = System.currentTimeMillis();
+            queue.add(job);
+            log.info("Queued job {} for tenant {} with priority {}", job.name, job.tenant, job.priority);
+            notifyAll();
+        }
+    }
+
+    /**
+     * @param name the snapshot or restoration id
+     * @return the status of the job, or null if it is neither queued nor running
+     */
+    public synchronized JobQueueStatus getStatus(String name) {
+        for (JobQueueStatus status : getStatuses()) {
+            if (name.equals(status.getName())) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the running jobs followed by the queued jobs in the order in
+     * which they are expected to start
+     */
+    public synchronized List<JobQueueStatus> getStatuses() {
+        long now = System.currentTimeMillis();
+        List<JobQueueStatus> statuses = new ArrayList<>();
+
+        // the time at which each slot is expected to become free
+        PriorityQueue<Long> freeAt = new PriorityQueue<>();
+        for (QueuedJob job : running.values()) {
+            statuses.add(new JobQueueStatus(job.name, job.tenant, job.priority.name(), 0,
+                                            new Date(job.startedAt)));
+            freeAt.add(averageDurationMs < 0 ? -1 : Math.max(now, job.startedAt + averageDurationMs));
+        }
+        while (freeAt.size() < slots) {
+            freeAt.add(now);
+        }
+
+        int position = 1;
+        for (QueuedJob job : projectQueue()) {
+            long start = freeAt.poll();
+            Date estimatedStart = start < 0 ? null : new Date(start);
+            statuses.add(new JobQueueStatus(job.name, job.tenant, job.priority.name(), position++,
+                                            estimatedStart));
+            freeAt.add(start < 0 || averageDurationMs < 0 ? -1 : start + averageDurationMs);
+        }
+        return statuses;
+    }
+
+    /**
+     * Stops the slot threads once the running jobs finish. Queued jobs are not started.
+     */
+    @PreDestroy
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            try {
+                if (!runNextJob()) {
+                    return;
+                }
+            } catch (RuntimeException ex) {
+                // keep the slot running whatever goes wrong in scheduling a job
+                log.error("Error in job slot " + Thread.currentThread().getName() + ": " + ex.getMessage(), ex);
+                try {
+                    Thread.sleep(ERROR_PAUSE_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until a job may start and runs it.
+     *
+     * @return false if the scheduler was shut down or the slot thread interrupted
+     */
+    private boolean runNextJob() {
+        QueuedJob job = null;
+        while (job == null) {
+            // staged content is measured outside the lock as it walks the staging directories
+            if (capacity != null) {
+                capacity.measure();
+            }
+            synchronized (this) {
+                if (shutdown) {
+                    return false;
+                }
+                job = nextJob();
+                if (job == null) {
+                    try {
+                        wait(capacity != null ? CAPACITY_RECHECK_MS : 0);
+                    } catch (InterruptedException ex) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (capacity != null) {
+                    capacity.reserve(job.key(), job.requiredBytes, job.stagingDir);
+                }
+                queue.start(job);
+                job.startedAt = System.currentTimeMillis();
+                running.put(job.key(), job);
+            }
+        }
+
+        log.info("Starting job {} for tenant {} after waiting {} ms",
+                 job.name, job.tenant, job.startedAt - job.queuedAt);
+        try {
+            if (capacity != null) {
+                capacity.recordStart(job.key());
+            }
+            job.task.run();
+        } catch (RuntimeException ex) {
+            log.error("Job " + job.name + " failed: " + ex.getMessage(), ex);
+        } finally {
+            synchronized (this) {
+                running.remove(job.key());
+                if (capacity != null) {
+                    capacity.release(job.key());
+                }
+                queue.finish(job);
+                long duration = System.currentTimeMillis() - job.startedAt;
+                averageDurationMs = averageDurationMs < 0 ? duration :
+                                    (long) (averageDurationMs + DURATION_WEIGHT * (duration - averageDurationMs));
+                notifyAll();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the job which should start next, or null if none may start now
+     */
+    private QueuedJob nextJob() {
+        if (capacity != null) {
+            long now = System.currentTimeMillis();
+            QueuedJob starved = null;
+            for (QueuedJob head : queue.heads()) {
+                if (head.passedOverAt > 0 && now - head.passedOverAt >= maxPassedOverMs &&
+                    capacity.couldFit(head.requiredBytes) &&
+                    (starved == null || head.passedOverAt < starved.passedOverAt)) {
+                    starved = head;
+                }
+            }
+            if (starved != null) {
+                // hold back other jobs so that the space freed as running jobs
+                // finish goes to the job which has waited longest for it
+                return fits(starved) ? starved : null;
+            }
+        }
+        return queue.next(this::fits);
+    }
+
+    private boolean fits(QueuedJob job) {
+        if (capacity == null || capacity.fits(job.requiredBytes)) {
+            return true;
+        }
+        if (job.passedOverAt == 0) {
+            job.passedOverAt = System.currentTimeMillis();
+        }
+        return false;
+    }
+
+    /**
+     * @return the queued jobs in the order they would start if no other jobs
+     * were queued and running jobs finished in the order they started
+     */
+    private List<QueuedJob> projectQueue() {
+        JobQueue projected = new JobQueue(queue);
+        List<QueuedJob> finishing = new ArrayList<>(running.values());
+
+        List<QueuedJob> order = new ArrayList<>();
+        QueuedJob job;
+        while ((job = projected.next(j -> true)) != null) {
+            if (finishing.size() >= slots) {
+                projected.finish(finishing.remove(0));
+                continue;
+            }
+            projected.start(job);
+            finishing.add(job);
+            order.add(job);
+        }
+        return order;
+    }
+
+    /**
+     * Queued jobs by priority and tenant, and the number of running jobs of each tenant.
+     */
+    private static class JobQueue {
+        private List<Map<String, Deque<QueuedJob>>> queues = new ArrayList<>();
+        private Map<String, Integer> running = new HashMap<>();
+        private Map<String, Long> lastStarted = new HashMap<>();
+        private long starts = 0;
+
+        private JobQueue() {
+            for (int i = 0; i < Priority.values().length; i++) {
+                queues.add(new LinkedHashMap<>());
+            }
+        }
+
+        private JobQueue(JobQueue other) {
+            for (Map<String, Deque<QueuedJob>> tenants : other.queues) {
+                Map<String, Deque<QueuedJob>> copy = new LinkedHashMap<>();
+                for (Map.Entry<String, Deque<QueuedJob>> entry : tenants.entrySet()) {
+                    copy.put(entry.getKey(), new ArrayDeque<>(entry.getValue()));
+                }
+                queues.add(copy);
+            }
+            running.putAll(other.running);
+            lastStarted.putAll(other.lastStarted);
+            starts = other.starts;
+        }
+
+        private void add(QueuedJob job) {
+            queues.get(job.priority.ordinal())
+                  .computeIfAbsent(job.tenant, t -> new ArrayDeque<>())
+                  .add(job);
+        }
+
+        /**
+         * @param admissible whether a job may start now
+         * @return the job which should start next: the first admissible job of
+         * the highest priority with one, taken from the tenant with the fewest
+         * running jobs and, of those, the tenant which least recently started a job.
+         * Only the first queued job of each tenant is considered.
+         */
+        private QueuedJob next(Predicate<QueuedJob> admissible) {
+            Comparator<String> fairness =
+                Comparator.comparing((String tenant) -> running.getOrDefault(tenant, 0))
+                          .thenComparing(tenant -> lastStarted.getOrDefault(tenant, -1L));
+            for (Map<String, Deque<QueuedJob>> tenants : queues) {
+                List<String> order = new ArrayList<>(tenants.keySet());
+                order.sort(fairness);
+                for (String tenant : order) {
+                    QueuedJob job = tenants.get(tenant).peek();
+                    if (admissible.test(job)) {
+                        return job;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the first queued job of each tenant
+         */
+        private List<QueuedJob> heads() {
+            List<QueuedJob> heads = new ArrayList<>();
+            for (Map<String, Deque<QueuedJob>> tenants : queues) {
+                for (Deque<QueuedJob> tenantQueue : tenants.values()) {
+                    heads.add(tenantQueue.peek());
+                }
+            }
+            return heads;
+        }
+
+        private void start(QueuedJob job) {
+            Map<String, Deque<QueuedJob>> tenants = queues.get(job.priority.ordinal());
+            Deque<QueuedJob> tenantQueue = tenants.get(job.tenant);
+            tenantQueue.remove(job);
+            if (tenantQueue.isEmpty()) {
+                tenants.remove(job.tenant);
+            }
+            running.merge(job.tenant, 1, Integer::sum);
+            lastStarted.put(job.tenant, starts++);
+        }
+
+        private void finish(QueuedJob job) {
+            running.merge(job.tenant, -1, Integer::sum);
+        }
+    }
+
+    private static class QueuedJob {
+        private String name;
+        private String tenant;
+        private Priority priority;
+        private Runnable task;
+        private long requiredBytes;
+        private File stagingDir;
+        private long queuedAt;
+        private long passedOverAt;
+        private long startedAt;
+
+        private QueuedJob(String name, String tenant, Priority priority, Runnable task) {
+            this.name = name;
+            this.tenant = tenant;
+            this.priority = priority;
+            this.task = task;
+        }
+
+        private String key() {
+            return name != null ? name : String.valueOf(System.identityHashCode(this));
+        }
+    }
+}
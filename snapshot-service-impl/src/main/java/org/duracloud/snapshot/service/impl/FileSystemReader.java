@@ -8,28 +8,54 @@
 package org.duracloud.snapshot.service.impl;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.Collection;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.TimeUnit;
-
-import org.apache.commons.io.DirectoryWalker;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.duracloud.snapshot.service.BridgeConfiguration;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.NonTransientResourceException;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.UnexpectedInputException;
 
 /**
+ * Reads the files beneath a directory in the order of a {@link ParallelFileScanner}.
+ * As files are written, the last file before which every file has been written
+ * is recorded in the step execution context, and a restarted step resumes the
+ * scan after that file.
+ *
  * @author Daniel Bernstein
  * Date: Jul 16, 2014
  */
-public class FileSystemReader extends StepExecutionSupport implements ItemReader<File> {
+public class FileSystemReader extends StepExecutionSupport implements ItemReader<File>, ItemWriteListener<File> {
 
-    private SimpleDirectoryWalker walker;
+    private ParallelFileScanner scanner;
     private File rootDirectory = null;
+    private int threads;
+    private int bufferSize;
+
+    // files handed out, in order, and whether each has been written
+    private Map<File, Boolean> pending = new LinkedHashMap<>();
 
     public FileSystemReader(File rootDirectory) {
+        this(rootDirectory,
+             BridgeConfiguration.getBridgeRestoreScanThreads(),
+             BridgeConfiguration.getBridgeRestoreScanBufferSize());
+    }
+
+    /**
+     * @param rootDirectory the directory to read
+     * @param threads       the number of directories listed at once
+     * @param bufferSize    the number of files held ready to be read
+     */
+    public FileSystemReader(File rootDirectory, int threads, int bufferSize) {
         this.rootDirectory = rootDirectory;
+        this.threads = threads;
+        this.bufferSize = bufferSize;
     }
 
     /* (non-Javadoc)
@@ -39,73 +65,74 @@ public class FileSystemReader extends StepExecutionSupport implements ItemReader
     public synchronized File read()
         throws Exception, UnexpectedInputException, ParseException, NonTransientResourceException {
 
-        if (walker == null) {
-            this.walker = new SimpleDirectoryWalker(rootDirectory);
-            this.walker.start();
-            //skip ahead if items have already been processed.
-            long itemsRead = getItemsRead();
-            if (itemsRead > 0) {
-                for (int i = 0; i < itemsRead; i++) {
-                    this.walker.next();
-                }
-            }
+        if (scanner == null) {
+            this.scanner = new ParallelFileScanner(rootDirectory, getCheckpoint(), threads, bufferSize);
+            this.scanner.start();
         }
 
-        return this.walker.next();
+        File file = this.scanner.next();
+        if (file != null) {
+            pending.put(file, false);
+        }
+        return file;
     }
 
-    private class SimpleDirectoryWalker extends DirectoryWalker<File> {
-        private SynchronousQueue<File> queue = new SynchronousQueue<>();
-        private File root;
-
-        public SimpleDirectoryWalker(final File root) {
+    /* (non-Javadoc)
+     * @see org.springframework.batch.core.ItemWriteListener#beforeWrite(java.util.List)
+     */
+    @Override
+    public void beforeWrite(List<? extends File> items) {
+    }
 
-            this.root = root;
+    /* (non-Javadoc)
+     * @see org.springframework.batch.core.ItemWriteListener#afterWrite(java.util.List)
+     */
+    @Override
+    public synchronized void afterWrite(List<? extends File> items) {
+        for (File file : items) {
+            pending.replace(file, true);
         }
 
-        /**
-         *
-         */
-        public void start() {
-            Thread t = new Thread(new Runnable() {
-
-                @Override
-                public void run() {
-                    try {
-                        walk(root, queue);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-
-            t.start();
+        File written = null;
+        Iterator<Map.Entry<File, Boolean>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<File, Boolean> entry = it.next();
+            if (!entry.getValue()) {
+                break;
+            }
+            written = entry.getKey();
+            it.remove();
         }
 
-        /* (non-Javadoc)
-         * @see org.apache.commons.io.DirectoryWalker#handleFile(java.io.File, int, java.util.Collection)
-         */
-        @Override
-        protected void handleFile(File file, int depth, Collection<File> results) throws IOException {
-            try {
-                if (file.isFile()) {
-                    queue.put(file);
-                }
-            } catch (InterruptedException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+        if (written != null) {
+            synchronized (getStepExecution()) {
+                getExecutionContext().putString(CHECKPOINT_KEY, scanner.relativize(written));
             }
         }
+    }
 
-        public File next() {
-            try {
-                return queue.poll(5000, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    /* (non-Javadoc)
+     * @see org.springframework.batch.core.ItemWriteListener#onWriteError(java.lang.Exception, java.util.List)
+     */
+    @Override
+    public void onWriteError(Exception exception, List<? extends File> items) {
+    }
 
-            return null;
+    /* (non-Javadoc)
+     * @see org.duracloud.snapshot.service.impl.StepExecutionSupport#afterStep(
+     * org.springframework.batch.core.StepExecution)
+     */
+    @Override
+    public synchronized ExitStatus afterStep(StepExecution stepExecution) {
+        if (scanner != null) {
+            scanner.close();
         }
+        return super.afterStep(stepExecution);
     }
 
+    private String getCheckpoint() {
+        synchronized (getStepExecution()) {
+            return (String) getExecutionContext().get(CHECKPOINT_KEY);
+        }
+    }
 }
@@ -8,10 +8,20 @@
 package org.duracloud.snapshot.service.impl;
 
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.PreDestroy;
 
+import org.duracloud.snapshot.service.BridgeConfiguration;
 import org.duracloud.snapshot.service.Finalizer;
 import org.duracloud.snapshot.service.RestoreManager;
 import org.duracloud.snapshot.service.SnapshotManager;
@@ -21,6 +31,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
+ * By default all snapshots and restorations are finalized one after another on
+ * each polling period. When finalizer threads are configured, each polling period
+ * instead lists the snapshots and restorations waiting to be finalized and hands
+ * each one to a bounded pool of threads, so a slow DuraCloud host holds up only
+ * its own entities. An entity which is not yet ready is checked again after a
+ * delay which doubles with each attempt, starting at the polling period and
+ * capped at the maximum backoff; an entity still being checked is not handed out
+ * again.
+ *
  * @author Daniel Bernstein
  * Date: Aug 18, 2014
  */
@@ -29,12 +48,37 @@ public class FinalizerImpl implements Finalizer {
     private static Logger log = LoggerFactory.getLogger(FinalizerImpl.class);
     private Timer timer;
 
+    private int threads;
+    private long maxBackoffMs;
+    private long pollingPeriodMs = DEFAULT_POLLING_PERIOD_MS;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService workers;
+    private Map<String, EntityState> states = new ConcurrentHashMap<>();
+    private Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile long lastCycleDurationMs = -1;
+    private volatile int backlog = 0;
+
     @Autowired
     private SnapshotManager snapshotManager;
 
     @Autowired
     private RestoreManager restoreManager;
 
+    public FinalizerImpl() {
+        this(BridgeConfiguration.getBridgeFinalizerThreads(),
+             BridgeConfiguration.getBridgeFinalizerMaxBackoffMs());
+    }
+
+    /**
+     * @param threads      the number of entities finalized at once, or 0 to
+     *                     finalize them one after another
+     * @param maxBackoffMs the longest time an entity waits to be checked again
+     */
+    public FinalizerImpl(int threads, long maxBackoffMs) {
+        this.threads = Math.max(threads, 0);
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
     /**
      * @param snapshotManager the snapshotManager to set
      */
@@ -54,6 +98,11 @@ public class FinalizerImpl implements Finalizer {
      */
     @Override
     public void initialize(Integer pollingPeriodMs) {
+        if (threads > 0) {
+            initializeEngine(pollingPeriodMs);
+            return;
+        }
+
         if (timer == null) {
             timer = new Timer();
             TimerTask task = new TimerTask() {
@@ -92,5 +141,137 @@ public class FinalizerImpl implements Finalizer {
             timer.cancel();
             timer = null;
         }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+    }
+
+    /**
+     * @return the time in milliseconds taken by the last polling cycle to list
+     * and hand out the entities waiting to be finalized, or -1 before the first cycle
+     */
+    public long getLastCycleDurationMs() {
+        return lastCycleDurationMs;
+    }
+
+    /**
+     * @return the number of snapshots and restorations waiting to be finalized
+     * as of the last polling cycle
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * @return the number of snapshots and restorations being checked now
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    private synchronized void initializeEngine(Integer pollingPeriodMs) {
+        if (scheduler == null) {
+            if (pollingPeriodMs == null || pollingPeriodMs < 1) {
+                pollingPeriodMs = DEFAULT_POLLING_PERIOD_MS;
+            }
+            this.pollingPeriodMs = pollingPeriodMs;
+
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    runCycle();
+                } catch (Exception ex) {
+                    log.error("Finalization cycle failed: " + ex.getMessage(), ex);
+                }
+            }, 0, pollingPeriodMs, TimeUnit.MILLISECONDS);
+            log.info("Finalization scheduled to run every " + pollingPeriodMs +
+                     " milliseconds on " + threads + " threads.");
+        }
+    }
+
+    /**
+     * Lists the snapshots and restorations waiting to be finalized and hands
+     * those which are due to be checked to the worker threads.
+     */
+    void runCycle() {
+        long start = System.currentTimeMillis();
+        Set<String> listed = new HashSet<>();
+        int dispatched = 0;
+
+        for (String snapshotId : snapshotManager.getSnapshotsToFinalize()) {
+            String key = "snapshot:" + snapshotId;
+            listed.add(key);
+            if (dispatch(key, () -> snapshotManager.finalizeSnapshot(snapshotId))) {
+                dispatched++;
+            }
+        }
+        for (String restorationId : restoreManager.getRestoresToFinalize()) {
+            String key = "restore:" + restorationId;
+            listed.add(key);
+            if (dispatch(key, () -> restoreManager.finalizeRestore(restorationId))) {
+                dispatched++;
+            }
+        }
+
+        // forget entities which were finalized or otherwise left their waiting state
+        states.keySet().removeIf(key -> !listed.contains(key) && !inFlight.contains(key));
+
+        backlog = listed.size();
+        lastCycleDurationMs = System.currentTimeMillis() - start;
+        log.info("Finalization cycle took {} ms: {} waiting, {} checked, {} in flight",
+                 lastCycleDurationMs, backlog, dispatched, inFlight.size());
+    }
+
+    private boolean dispatch(String key, Callable<Boolean> finalize) {
+        EntityState state = states.computeIfAbsent(key, k -> new EntityState());
+        if (state.nextCheck > System.currentTimeMillis() || !inFlight.add(key)) {
+            return false;
+        }
+
+        try {
+            getWorkers().execute(() -> {
+                boolean finalized = false;
+                try {
+                    finalized = finalize.call();
+                } catch (Exception ex) {
+                    log.error("Failed to finalize " + key + ": " + ex.getMessage(), ex);
+                } finally {
+                    if (finalized) {
+                        states.remove(key);
+                    } else {
+                        state.backOff();
+                    }
+                    inFlight.remove(key);
+                }
+            });
+            return true;
+        } catch (RuntimeException ex) {
+            inFlight.remove(key);
+            throw ex;
+        }
+    }
+
+    private synchronized ExecutorService getWorkers() {
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(Math.max(threads, 1));
+        }
+        return workers;
+    }
+
+    private class EntityState {
+        private volatile long nextCheck = 0;
+        private int failures = 0;
+
+        private void backOff() {
+            failures++;
+            long delay = pollingPeriodMs << Math.min(failures - 1, 20);
+            nextCheck = System.currentTimeMillis() + Math.min(delay, maxBackoffMs);
+            log.debug("Not yet finalized; checking again in {} ms", Math.min(delay, maxBackoffMs));
+        }
     }
 }
@@ -0,0 +1,184 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+
+import org.duracloud.chunk.manifest.ChunksManifest;
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.util.ChecksumUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restores a file to DuraCloud in a single pass: the file is read once while it
+ * is uploaded, its MD5 is computed as it is sent and checked against the md5
+ * manifest of the restored snapshot, and its properties from the content
+ * properties file are sent along with it. This takes the place of verifying the
+ * restored files and setting their properties in steps of their own.
+ * <p>
+ * The expected checksum and the properties of each file are looked up in a
+ * {@link RestoreContentIndex}, in which each file is recorded as having its
+ * properties applied once it has been uploaded.
+ * <p>
+ * Files too large to be uploaded in one piece are uploaded by a
+ * {@link ParallelChunkUploader}, and their properties are sent with the chunk
+ * manifest.
+ */
+public class FusedRestoreUploader {
+
+    private static final Logger log = LoggerFactory.getLogger(FusedRestoreUploader.class);
+
+    private static final String DEFAULT_MIMETYPE = "application/octet-stream";
+
+    private ContentStore contentStore;
+    private String spaceId;
+    private RestoreContentIndex index;
+    private ParallelChunkUploader chunkUploader;
+    private BandwidthGovernor bandwidthGovernor;
+    private String jobName;
+
+    /**
+     * @param contentStore  the content store to which files are uploaded
+     * @param spaceId       the destination space
+     * @param index         the checksums and properties of the restored files
+     * @param chunkUploader uploads the files which are too large to be uploaded in one piece
+     */
+    public FusedRestoreUploader(ContentStore contentStore,
+                                String spaceId,
+                                RestoreContentIndex index,
+                                ParallelChunkUploader chunkUploader) {
+        this.contentStore = contentStore;
+        this.spaceId = spaceId;
+        this.index = index;
+        this.chunkUploader = chunkUploader;
+    }
+
+    /**
+     * When set, files are sent no faster than the job's share of the bridge
+     * bandwidth allows.
+     *
+     * @param bandwidthGovernor
+     * @param jobName
+     */
+    public void setBandwidthGovernor(BandwidthGovernor bandwidthGovernor, String jobName) {
+        this.bandwidthGovernor = bandwidthGovernor;
+        this.jobName = jobName;
+    }
+
+    /**
+     * Opens the index.
+     *
+     * @param commitBatchSize  the number of records after which a commit is made
+     * @param commitIntervalMs the interval at which pending records are committed
+     * @throws IOException
+     */
+    public void open(int commitBatchSize, long commitIntervalMs) throws IOException {
+        index.open(commitBatchSize, commitIntervalMs);
+    }
+
+    /**
+     * @param file
+     * @return true if the file is uploaded in chunks
+     */
+    public boolean isChunked(File file) {
+        return chunkUploader != null && chunkUploader.isChunked(file);
+    }
+
+    /**
+     * Uploads the file with its properties, verifying it against the md5 manifest.
+     *
+     * @param contentId the content id of the file
+     * @param file
+     * @return the checksum the store holds for the file
+     * @throws IOException if the file is not in the manifest, does not match its
+     *                     manifest checksum or could not be uploaded
+     */
+    public String upload(String contentId, File file) throws IOException {
+        String expected = index.getChecksum(contentId);
+        if (expected == null) {
+            throw new IOException("Restored file " + file.getAbsolutePath() + " is not listed in the manifest");
+        }
+        Map<String, String> props = index.getProperties(contentId);
+
+        String stored;
+        if (isChunked(file)) {
+            stored = uploadChunked(contentId, file, expected, props);
+        } else {
+            stored = uploadWhole(contentId, file, expected, props);
+        }
+        index.recordApplied(contentId);
+        return stored;
+    }
+
+    /**
+     * Closes the index.
+     */
+    public void close() {
+        index.close();
+    }
+
+    private String uploadWhole(String contentId, File file, String expected, Map<String, String> props)
+        throws IOException {
+        String mimetype = props.getOrDefault(ContentStore.CONTENT_MIMETYPE, DEFAULT_MIMETYPE);
+        MessageDigest md5 = createDigest();
+        String stored;
+        try (InputStream stream = new DigestInputStream(throttle(new FileInputStream(file)), md5)) {
+            // the manifest checksum is sent as the expected checksum, so the
+            // store rejects the file if what it receives does not match it
+            stored = contentStore.addContent(spaceId, contentId, stream, file.length(), mimetype, expected, props);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("Failed to upload " + file.getAbsolutePath() + ": " + ex.getMessage(), ex);
+        }
+
+        String sent = ChecksumUtil.checksumBytesToString(md5.digest());
+        verify(file, expected, sent);
+        if (!expected.equals(stored)) {
+            throw new IOException("Restored file " + file.getAbsolutePath() +
+                                  " failed verification: manifest md5=" + expected + ", stored md5=" + stored);
+        }
+        log.info("successfully uploaded and verified {} with {} properties", file.getAbsolutePath(), props.size());
+        return stored;
+    }
+
+    private String uploadChunked(String contentId, File file, String expected, Map<String, String> props)
+        throws IOException {
+        // the manifest is only uploaded once the file is verified, so the space
+        // never lists a chunked file which does not match its manifest checksum
+        ChunksManifest manifest = chunkUploader.upload(spaceId, contentId, file, props, expected);
+        log.info("successfully uploaded and verified {} in chunks", file.getAbsolutePath());
+        return manifest.getHeader().getSourceMD5();
+    }
+
+    private InputStream throttle(InputStream in) {
+        return bandwidthGovernor != null ? bandwidthGovernor.throttle(jobName, in) : in;
+    }
+
+    private void verify(File file, String expected, String actual) throws IOException {
+        if (!expected.equals(actual)) {
+            throw new IOException("Restored file " + file.getAbsolutePath() +
+                                  " failed verification: manifest md5=" + expected + ", file md5=" + actual);
+        }
+    }
+
+    private MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Map;
+
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.collection.StreamingIterator;
+import org.duracloud.common.collection.jpa.JpaIteratorSource;
+import org.duracloud.common.constant.ManifestFormat;
+import org.duracloud.manifest.ManifestFormatter;
+import org.duracloud.manifest.impl.TsvManifestFormatter;
+import org.duracloud.manifeststitch.StitchedManifestGenerator;
+import org.duracloud.mill.db.model.ManifestItem;
+import org.duracloud.snapshot.db.model.SnapshotContentItem;
+import org.duracloud.snapshot.db.repo.SnapshotContentItemRepo;
+import org.mapdb.DB;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Seeds the resume caches of a snapshot with the items of the space which are
+ * unchanged since the previous snapshot, so that they are carried forward rather
+ * than retrieved again. An item is unchanged when its checksum in the current
+ * space manifest matches the checksum recorded for it in the previous snapshot
+ * and its content was retained when the previous snapshot was staged. The
+ * content of each unchanged item is hard linked from the retained copy into the
+ * new snapshot's data directory.
+ * <p>
+ * Only the content and its checksums are carried forward. Properties may change
+ * without changing the content, so the properties of every item are read from
+ * the space as the item is written.
+ */
+public class IncrementalSnapshotSeeder {
+
+    private static final Logger log = LoggerFactory.getLogger(IncrementalSnapshotSeeder.class);
+
+    private String previousSnapshotName;
+    private SnapshotContentItemRepo snapshotContentItemRepo;
+    private RetainedContent retainedContent;
+    private StitchedManifestGenerator manifestGenerator;
+    private String spaceId;
+
+    /**
+     * @param previousSnapshotName    the most recent completed snapshot of the space
+     * @param snapshotContentItemRepo
+     * @param retainedContent         the content retained from the previous snapshot
+     * @param manifestGenerator       generates the current manifest of the space
+     * @param spaceId
+     */
+    public IncrementalSnapshotSeeder(String previousSnapshotName,
+                                     SnapshotContentItemRepo snapshotContentItemRepo,
+                                     RetainedContent retainedContent,
+                                     StitchedManifestGenerator manifestGenerator,
+                                     String spaceId) {
+        this.previousSnapshotName = previousSnapshotName;
+        this.snapshotContentItemRepo = snapshotContentItemRepo;
+        this.retainedContent = retainedContent;
+        this.manifestGenerator = manifestGenerator;
+        this.spaceId = spaceId;
+    }
+
+    /**
+     * @param db          the database in which working indexes are kept
+     * @param dataDir     the data directory of the new snapshot
+     * @param md5Cache
+     * @param sha256Cache
+     * @return the number of items carried forward
+     * @throws Exception
+     */
+    public int seed(DB db,
+                    File dataDir,
+                    Map<String, String> md5Cache,
+                    Map<String, String> sha256Cache) throws Exception {
+        if (!previousSnapshotName.equals(retainedContent.getSnapshotName())) {
+            log.info("Content of snapshot {} was not retained; all items of space {} will be retrieved",
+                     previousSnapshotName, spaceId);
+            return 0;
+        }
+
+        Map<String, String> retainedSha256 =
+            db.treeMap("incrementalSha256", Serializer.STRING, Serializer.STRING).createOrOpen();
+        Map<String, String> previousProps =
+            db.treeMap("incrementalProps", Serializer.STRING, Serializer.STRING).createOrOpen();
+        try {
+            loadRetainedSha256(retainedSha256);
+            loadPreviousProps(previousProps);
+            int seeded = seedUnchanged(retainedSha256, previousProps, dataDir, md5Cache, sha256Cache);
+            log.info("Carried forward {} unchanged items of space {} from snapshot {}",
+                     seeded, spaceId, previousSnapshotName);
+            return seeded;
+        } finally {
+            retainedSha256.clear();
+            previousProps.clear();
+        }
+    }
+
+    private void loadRetainedSha256(Map<String, String> retainedSha256) throws IOException {
+        try (BufferedReader reader =
+                 new BufferedReader(new InputStreamReader(new FileInputStream(retainedContent.getSha256Manifest()),
+                                                          StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    ManifestEntry entry = ManifestFileHelper.parseManifestEntry(line);
+                    retainedSha256.put(entry.getContentId(), entry.getChecksum());
+                } catch (ParseException ex) {
+                    log.info("Unable to parse line in retained manifest: skipping: line={}", line);
+                }
+            }
+        }
+    }
+
+    private void loadPreviousProps(Map<String, String> previousProps) {
+        StreamingIterator<SnapshotContentItem> items =
+            new StreamingIterator<>(
+                new JpaIteratorSource<SnapshotContentItemRepo, SnapshotContentItem>(snapshotContentItemRepo) {
+                    @Override
+                    protected Page<SnapshotContentItem> getNextPage(Pageable pageable,
+                                                                    SnapshotContentItemRepo repo) {
+                        return repo.findBySnapshotName(previousSnapshotName, pageable);
+                    }
+                });
+        while (items.hasNext()) {
+            SnapshotContentItem item = items.next();
+            previousProps.put(item.getContentId(), item.getMetadata());
+        }
+    }
+
+    private int seedUnchanged(Map<String, String> retainedSha256,
+                              Map<String, String> previousProps,
+                              File dataDir,
+                              Map<String, String> md5Cache,
+                              Map<String, String> sha256Cache) throws Exception {
+        int seeded = 0;
+        try (BufferedReader reader =
+                 new BufferedReader(new InputStreamReader(manifestGenerator.generate(spaceId,
+                                                                                      ManifestFormat.TSV)))) {
+            ManifestFormatter formatter = new TsvManifestFormatter();
+            // skip header
+            if (formatter.getHeader() != null) {
+                reader.readLine();
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ManifestItem item = formatter.parseLine(line);
+                String contentId = item.getContentId();
+                if (md5Cache.containsKey(contentId)) {
+                    continue;
+                }
+
+                String propsStr = previousProps.get(contentId);
+                String sha256 = retainedSha256.get(contentId);
+                if (propsStr == null || sha256 == null) {
+                    continue;
+                }
+
+                Map<String, String> props = PropertiesSerializer.deserialize(propsStr);
+                String md5 = props.get(ContentStore.CONTENT_CHECKSUM);
+                File retainedFile = new File(retainedContent.getDataDir(), contentId);
+                if (md5 == null || !md5.equals(item.getContentChecksum()) || !retainedFile.exists()) {
+                    continue;
+                }
+
+                RetainedContent.link(new File(dataDir, contentId).toPath(), retainedFile.toPath());
+                sha256Cache.put(contentId, sha256);
+                md5Cache.put(contentId, md5);
+                seeded++;
+            }
+        }
+        return seeded;
+    }
+}
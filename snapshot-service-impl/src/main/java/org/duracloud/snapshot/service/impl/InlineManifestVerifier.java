@@ -0,0 +1,205 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.duracloud.common.constant.Constants;
+import org.duracloud.common.constant.ManifestFormat;
+import org.duracloud.manifest.ManifestFormatter;
+import org.duracloud.manifest.impl.TsvManifestFormatter;
+import org.duracloud.manifeststitch.StitchedManifestGenerator;
+import org.duracloud.mill.db.model.ManifestItem;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies the items of a snapshot against the space manifest while they are
+ * written, rather than comparing the whole snapshot manifest with the space
+ * manifest once the transfer has finished.
+ * <p>
+ * The stitched space manifest is streamed once, in the background, into an
+ * on-disk index while items are transferred. Each written item is checked
+ * against the index as soon as its checksum is known; items written before
+ * their manifest entry was indexed are kept in the same on-disk store and
+ * checked when the index is complete. At the end only the counts need to be
+ * reconciled: every indexed item must have been written with a matching
+ * checksum.
+ * <p>
+ * Nothing is kept across a restart of the step: the index is rebuilt and the
+ * checked items are counted again from scratch. This relies on the item writer
+ * passing every item of the space through {@link #check(String, String)} on each
+ * run, including the items retrieved by an earlier run, which it takes from its
+ * resume caches rather than retrieving them again. An item which was not
+ * checked in the current run leaves the counts unreconciled, so the
+ * verification falls back to a full verification rather than passing.
+ * <p>
+ * The space manifest may lag behind the space, so a failed inline verification
+ * is not conclusive. Callers fall back to a full verification when
+ * {@link #finish()} returns false.
+ */
+public class InlineManifestVerifier {
+
+    private static final Logger log = LoggerFactory.getLogger(InlineManifestVerifier.class);
+
+    private StitchedManifestGenerator generator;
+    private String spaceId;
+    private File dbFile;
+
+    private DB db;
+    private Map<String, String> expected;
+    private Map<String, String> verified;
+    private Map<String, String> pending;
+    private final Object indexedLock = new Object();
+    private AtomicLong mismatches = new AtomicLong();
+    private long expectedCount = 0;
+    private volatile boolean indexed = false;
+    private volatile Exception indexFailure;
+    private Thread indexer;
+
+    /**
+     * @param generator generates the stitched manifest of the space
+     * @param spaceId
+     * @param dbFile    the file in which the index is kept while the step runs
+     */
+    public InlineManifestVerifier(StitchedManifestGenerator generator, String spaceId, File dbFile) {
+        this.generator = generator;
+        this.spaceId = spaceId;
+        this.dbFile = dbFile;
+    }
+
+    /**
+     * Starts indexing the space manifest in the background.
+     */
+    public synchronized void start() {
+        dbFile.delete();
+        db = DBMaker.fileDB(dbFile).closeOnJvmShutdown().make();
+        expected = db.hashMap("expected", Serializer.STRING, Serializer.STRING).create();
+        verified = db.hashMap("verified", Serializer.STRING, Serializer.STRING).create();
+        pending = db.hashMap("pending", Serializer.STRING, Serializer.STRING).create();
+
+        indexer = new Thread(this::index, "inline-verifier-" + spaceId);
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    /**
+     * Checks a written item against the space manifest.
+     *
+     * @param contentId   the stitched content id of the item
+     * @param md5Checksum the checksum of the written item
+     */
+    public void check(String contentId, String md5Checksum) {
+        String expectedChecksum;
+        // the lookup and the test of the indexed flag are made together so that
+        // an entry indexed between the two is not taken for a missing one
+        synchronized (indexedLock) {
+            expectedChecksum = expected.get(contentId);
+            if (expectedChecksum == null && !indexed) {
+                pending.put(contentId, md5Checksum);
+                return;
+            }
+        }
+        compare(contentId, md5Checksum, expectedChecksum);
+    }
+
+    /**
+     * Waits for the space manifest to be indexed, checks the items written
+     * before their entries were indexed and reconciles the counts.
+     *
+     * @return true if every item of the space manifest was written with a
+     * matching checksum and no other items were written
+     */
+    public boolean finish() {
+        try {
+            indexer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (indexFailure != null) {
+            log.warn("Unable to index the manifest of space {}: {}", spaceId, indexFailure.getMessage());
+            return false;
+        }
+
+        for (Map.Entry<String, String> item : pending.entrySet()) {
+            compare(item.getKey(), item.getValue(), expected.get(item.getKey()));
+        }
+        pending.clear();
+
+        long verifiedCount = verified.size();
+        boolean result = mismatches.get() == 0 && verifiedCount == expectedCount;
+        log.info("Inline verification of space {} complete: manifest items={}, verified={}, mismatched={}",
+                 spaceId, expectedCount, verifiedCount, mismatches.get());
+        return result;
+    }
+
+    /**
+     * Discards the index.
+     */
+    public synchronized void close() {
+        if (indexer != null) {
+            indexer.interrupt();
+        }
+        if (db != null) {
+            db.close();
+            db = null;
+        }
+        dbFile.delete();
+    }
+
+    private void compare(String contentId, String md5Checksum, String expectedChecksum) {
+        if (md5Checksum.equals(expectedChecksum)) {
+            verified.put(contentId, md5Checksum);
+        } else {
+            mismatches.incrementAndGet();
+            log.warn("Item {} of space {} was written with checksum {} but the space manifest has {}",
+                     contentId, spaceId, md5Checksum, expectedChecksum);
+        }
+    }
+
+    private void index() {
+        try (BufferedReader reader =
+                 new BufferedReader(new InputStreamReader(generator.generate(spaceId, ManifestFormat.TSV)))) {
+            ManifestFormatter formatter = new TsvManifestFormatter();
+            // skip header
+            if (formatter.getHeader() != null) {
+                reader.readLine();
+            }
+
+            String line;
+            long count = 0;
+            while ((line = reader.readLine()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Indexing interrupted");
+                }
+                ManifestItem item = formatter.parseLine(line);
+                String contentId = item.getContentId();
+                if (!contentId.equals(Constants.SNAPSHOT_PROPS_FILENAME)) {
+                    expected.put(contentId, item.getContentChecksum());
+                    count++;
+                }
+            }
+            expectedCount = count;
+            log.info("Indexed {} items of the manifest of space {}", count, spaceId);
+        } catch (Exception ex) {
+            indexFailure = ex;
+        } finally {
+            synchronized (indexedLock) {
+                indexed = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.util.Date;
+
+/**
+ * The place of a snapshot or restore job in the job queue.
+ */
+public class JobQueueStatus {
+    private String name;
+    private String tenant;
+    private String priority;
+    private int position;
+    private Date estimatedStart;
+
+    /**
+     * @param name           the snapshot or restoration id
+     * @param tenant         the account which requested the job
+     * @param priority
+     * @param position       the position of the job in the queue, or 0 if it is running
+     * @param estimatedStart when the job started or is expected to start, or
+     *                       null if there is not yet enough history to estimate
+     */
+    public JobQueueStatus(String name, String tenant, String priority, int position, Date estimatedStart) {
+        this.name = name;
+        this.tenant = tenant;
+        this.priority = priority;
+        this.position = position;
+        this.estimatedStart = estimatedStart;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the position of the job in the queue, or 0 if it is running
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean isRunning() {
+        return position == 0;
+    }
+
+    /**
+     * @return when the job started or is expected to start, or null if unknown
+     */
+    public Date getEstimatedStart() {
+        return estimatedStart;
+    }
+}
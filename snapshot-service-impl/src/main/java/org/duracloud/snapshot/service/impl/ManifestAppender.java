@@ -0,0 +1,225 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends entries to manifest and properties files on a single thread. Transfer
+ * threads hand entries off through a non-blocking queue rather than contending
+ * for a lock on each file; the number of entries waiting in the queue is bounded,
+ * and threads only block when it is full. Buffered entries are flushed once the
+ * configured number have been written, once the configured interval has passed,
+ * or when the queue is empty, and can optionally be forced to disk on each flush.
+ */
+public class ManifestAppender {
+
+    private static final Logger log = LoggerFactory.getLogger(ManifestAppender.class);
+
+    // how often a thread waiting for room in the queue checks that the appender is still running
+    private static final long ACQUIRE_POLL_MS = 100;
+
+    private Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private Semaphore capacity;
+    private int flushEvery;
+    private long flushIntervalNanos;
+    private boolean sync;
+    private Map<Writer, FileChannel> channels = new ConcurrentHashMap<>();
+
+    private AtomicLong appended = new AtomicLong(0);
+    private volatile long flushed = 0;
+    private volatile IOException error;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    /**
+     * @param capacity        the number of entries which may wait to be written
+     * @param flushEvery      the number of entries written between flushes
+     * @param flushIntervalMs the longest time a written entry waits to be flushed
+     * @param sync            whether each flush is forced to disk
+     */
+    public ManifestAppender(int capacity, int flushEvery, long flushIntervalMs, boolean sync) {
+        this.capacity = new Semaphore(capacity);
+        this.flushEvery = flushEvery;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(flushIntervalMs, 1));
+        this.sync = sync;
+        this.thread = new Thread(this::run, "manifest-appender");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Opens a file to which entries are appended, replacing any existing content.
+     *
+     * @param file
+     * @return a writer for the file which may be passed to {@link #append(Writer, String)}
+     * @throws IOException
+     */
+    public BufferedWriter open(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        channels.put(writer, out.getChannel());
+        return writer;
+    }
+
+    /**
+     * Queues an entry to be appended, blocking only if the queue is full.
+     *
+     * @param writer a writer returned by {@link #open(File)}
+     * @param text   the entry
+     * @throws IOException if an earlier entry could not be written, or if the
+     *                     appender has been closed or its thread has stopped
+     */
+    public void append(Writer writer, String text) throws IOException {
+        checkRunning();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (capacity.tryAcquire(ACQUIRE_POLL_MS, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+                // the queue will never drain if the appender is gone
+                checkRunning();
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        queue.add(new Entry(writer, text));
+        appended.incrementAndGet();
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Waits until every entry queued so far has been written and flushed.
+     *
+     * @throws IOException if any entry could not be written
+     */
+    public void drain() throws IOException {
+        long target = appended.get();
+        while (flushed < target && error == null && thread.isAlive()) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        checkError();
+        if (flushed < target) {
+            throw new IOException("Manifest appender stopped before all entries were written");
+        }
+    }
+
+    /**
+     * Writes and flushes all queued entries and stops the appender thread. The
+     * files themselves are closed by their owner.
+     *
+     * @throws IOException if any entry could not be written
+     */
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            running = false;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void checkError() throws IOException {
+        if (error != null) {
+            throw new IOException("Failed to append manifest entry: " + error.getMessage(), error);
+        }
+    }
+
+    private void checkRunning() throws IOException {
+        checkError();
+        if (!running || !thread.isAlive()) {
+            throw new IOException("Manifest appender is closed");
+        }
+    }
+
+    private void run() {
+        Set<Writer> dirty = new LinkedHashSet<>();
+        long written = 0;
+        long lastFlush = System.nanoTime();
+        try {
+            while (running) {
+                Entry entry = queue.poll();
+                if (entry == null) {
+                    // nothing more to write for now
+                    if (!dirty.isEmpty()) {
+                        flush(dirty);
+                        lastFlush = System.nanoTime();
+                    }
+                    flushed = written;
+                    LockSupport.parkNanos(flushIntervalNanos);
+                    continue;
+                }
+
+                capacity.release();
+                entry.writer.write(entry.text);
+                dirty.add(entry.writer);
+                written++;
+
+                if (written - flushed >= flushEvery || System.nanoTime() - lastFlush >= flushIntervalNanos) {
+                    flush(dirty);
+                    lastFlush = System.nanoTime();
+                    flushed = written;
+                }
+            }
+        } catch (IOException ex) {
+            log.error("Failed to append manifest entry: " + ex.getMessage(), ex);
+            error = ex;
+        } catch (RuntimeException ex) {
+            log.error("Failed to append manifest entry: " + ex.getMessage(), ex);
+            error = new IOException(ex);
+        }
+    }
+
+    private void flush(Set<Writer> dirty) throws IOException {
+        for (Writer writer : dirty) {
+            writer.flush();
+            if (sync) {
+                channels.get(writer).force(false);
+            }
+        }
+        dirty.clear();
+    }
+
+    private static class Entry {
+        private Writer writer;
+        private String text;
+
+        private Entry(Writer writer, String text) {
+            this.writer = writer;
+            this.text = text;
+        }
+    }
+}
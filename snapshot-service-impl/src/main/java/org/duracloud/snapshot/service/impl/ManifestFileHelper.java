@@ -44,10 +44,19 @@ public class ManifestFileHelper {
     public static void writeManifestEntry(Writer writer,
                                           String contentId,
                                           String checksum) throws IOException {
-        writer.write(checksum + "  data/" + contentId + "\n");
+        writer.write(formatManifestEntry(contentId, checksum));
         writer.flush();
     }
 
+    /**
+     * @param contentId
+     * @param checksum
+     * @return the manifest line for the content id and checksum, including its line terminator
+     */
+    public static String formatManifestEntry(String contentId, String checksum) {
+        return checksum + "  data/" + contentId + "\n";
+    }
+
     public static ManifestEntry parseManifestEntry(String line) throws ParseException {
         try {
             Matcher matcher = MANIFEST_LINE_PATTERN.matcher(line);
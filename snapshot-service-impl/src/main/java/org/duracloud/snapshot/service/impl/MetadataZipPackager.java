@@ -0,0 +1,211 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.duracloud.common.util.ChecksumUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Packages snapshot metadata files into a zip, computing the MD5 and length of
+ * the zip as it is written.
+ * <p>
+ * Entry times are taken from the files, so packaging the same files twice
+ * produces the same bytes. The zip may be streamed to its destination as it is
+ * packaged, with the length and checksum of what was streamed known once the
+ * stream has been read to its end.
+ */
+public class MetadataZipPackager {
+
+    private static final Logger log = LoggerFactory.getLogger(MetadataZipPackager.class);
+
+    private static final int PIPE_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private List<File> files;
+
+    /**
+     * @param files the files to package; each is stored under its name
+     */
+    public MetadataZipPackager(List<File> files) {
+        this.files = files;
+    }
+
+    /**
+     * The length and MD5 checksum of a packaged zip.
+     */
+    public static class Packaged {
+        private long length;
+        private String checksum;
+
+        Packaged(long length, String checksum) {
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+    }
+
+    /**
+     * Writes the zip to a file.
+     *
+     * @param zipFile
+     * @return the length and checksum of the zip
+     * @throws IOException
+     */
+    public Packaged writeTo(File zipFile) throws IOException {
+        try (OutputStream out = new FileOutputStream(zipFile)) {
+            return write(out);
+        }
+    }
+
+    /**
+     * Computes the length and checksum of the zip without keeping it.
+     *
+     * @return the length and checksum of the zip
+     * @throws IOException
+     */
+    public Packaged measure() throws IOException {
+        return write(NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+
+    /**
+     * Packages the files on a background thread as the returned stream is read.
+     * The stream fails if packaging fails; closing it early stops packaging.
+     *
+     * @return a stream of the zip, which gives the length and checksum of the
+     * zip once it has been read to its end
+     * @throws IOException
+     */
+    public PackagingStream stream() throws IOException {
+        PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream out = new PipedOutputStream(in);
+        PackagingStream stream = new PackagingStream(in);
+
+        Thread writer = new Thread(() -> {
+            try {
+                // recorded before the pipe is closed so that the reader sees it
+                stream.packaged = write(out);
+            } catch (IOException | RuntimeException ex) {
+                // recorded before the pipe is closed so that the reader sees it
+                stream.failure = ex;
+                log.debug("Packaging of metadata zip stopped: {}", ex.getMessage());
+            } finally {
+                IOUtils.closeQuietly(out);
+            }
+        }, "metadata-zip-packager");
+        writer.setDaemon(true);
+        writer.start();
+        return stream;
+    }
+
+    /**
+     * Writes the zip to the stream, which is not closed.
+     *
+     * @param out
+     * @return the length and checksum of the zip
+     * @throws IOException
+     */
+    public Packaged write(OutputStream out) throws IOException {
+        MessageDigest md5 = createDigest();
+        CountingOutputStream counter = new CountingOutputStream(out);
+        ZipOutputStream zipOs =
+            new ZipOutputStream(new BufferedOutputStream(new DigestOutputStream(counter, md5), BUFFER_SIZE));
+        for (File file : files) {
+            ZipEntry entry = new ZipEntry(file.getName());
+            entry.setTime(file.lastModified());
+            zipOs.putNextEntry(entry);
+            try (InputStream in = new FileInputStream(file)) {
+                IOUtils.copyLarge(in, zipOs, new byte[BUFFER_SIZE]);
+            }
+            zipOs.closeEntry();
+        }
+        zipOs.finish();
+        zipOs.flush();
+        return new Packaged(counter.getByteCount(), ChecksumUtil.checksumBytesToString(md5.digest()));
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * A stream of a zip being packaged, which reports a packaging failure to the
+     * reader rather than a truncated zip.
+     */
+    public static class PackagingStream extends FilterInputStream {
+        private volatile Exception failure;
+        private volatile Packaged packaged;
+
+        private PackagingStream(InputStream in) {
+            super(in);
+        }
+
+        /**
+         * @return the length and checksum of the zip, or null if the stream has
+         * not been read to its end
+         */
+        public Packaged getPackaged() {
+            return packaged;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                checkFailure();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                checkFailure();
+            }
+            return read;
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw new IOException("Failed to package metadata zip: " + failure.getMessage(), failure);
+            }
+        }
+    }
+}
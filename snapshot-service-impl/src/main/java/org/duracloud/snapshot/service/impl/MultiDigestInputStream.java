@@ -0,0 +1,129 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.duracloud.common.util.ChecksumUtil;
+import org.duracloud.common.util.ChecksumUtil.Algorithm;
+
+/**
+ * An input stream which computes one or more digests of the bytes read through it,
+ * allowing several checksums to be generated in the same pass that moves the data.
+ */
+public class MultiDigestInputStream extends FilterInputStream {
+
+    private Map<Algorithm, MessageDigest> digests = new LinkedHashMap<>();
+    private Map<Algorithm, String> checksums = new LinkedHashMap<>();
+    private long bytesRead = 0;
+    private boolean endOfStream = false;
+
+    /**
+     * @param in         the underlying stream
+     * @param algorithms the digests to compute
+     */
+    public MultiDigestInputStream(InputStream in, Algorithm... algorithms) {
+        super(in);
+        for (Algorithm algorithm : algorithms) {
+            try {
+                digests.put(algorithm, MessageDigest.getInstance(algorithm.toString()));
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b == -1) {
+            endOfStream = true;
+        } else {
+            for (MessageDigest digest : digests.values()) {
+                digest.update((byte) b);
+            }
+            bytesRead++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read == -1) {
+            endOfStream = true;
+        } else if (read > 0) {
+            for (MessageDigest digest : digests.values()) {
+                digest.update(b, off, read);
+            }
+            bytesRead += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes would not be digested, so they are read instead.
+        byte[] buffer = new byte[(int) Math.min(8192, Math.max(n, 1))];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return true if the underlying stream has been read to its end
+     */
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    /**
+     * @return the number of bytes read through this stream
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Completes the digest for the specified algorithm. Once completed, no further
+     * bytes are added to the digest, so this should be called after the stream has
+     * been fully read.
+     *
+     * @param algorithm
+     * @return the hex encoded checksum
+     */
+    public String getChecksum(Algorithm algorithm) {
+        String checksum = checksums.get(algorithm);
+        if (checksum == null) {
+            MessageDigest digest = digests.remove(algorithm);
+            if (digest == null) {
+                throw new IllegalArgumentException(algorithm + " is not computed by this stream");
+            }
+            checksum = ChecksumUtil.checksumBytesToString(digest.digest());
+            checksums.put(algorithm, checksum);
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.duracloud.chunk.manifest.ChunksManifest;
+import org.duracloud.chunk.manifest.ChunksManifestBean;
+import org.duracloud.chunk.manifest.xml.ManifestDocumentBinding;
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.model.ContentItem;
+import org.duracloud.common.retry.Retriable;
+import org.duracloud.common.retry.Retrier;
+import org.duracloud.common.util.ChecksumUtil;
+import org.duracloud.common.util.ChecksumUtil.Algorithm;
+import org.duracloud.domain.Content;
+import org.duracloud.retrieval.mgmt.RetrievalListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retrieves the chunks of a chunked DuraCloud content item concurrently, writing
+ * each chunk directly to its offset in the local file. The MD5 of every chunk is
+ * computed as it is written and compared to the checksum recorded in the chunk
+ * manifest.
+ */
+public class ParallelChunkRetriever {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelChunkRetriever.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ContentStore contentStore;
+    private PartialFileDirectory partialFiles;
+    private int threadsPerItem;
+    private ExecutorService executor;
+    private boolean resumable = false;
+    private BandwidthGovernor bandwidthGovernor;
+    private String jobName;
+
+    /**
+     * @param contentStore   the content store from which chunks are retrieved
+     * @param partialFiles   the directory in which partial files are kept
+     * @param threadsPerItem the number of chunks of a single item which may be in flight at once
+     * @param threadsPerJob  the number of chunks which may be in flight at once across all items
+     */
+    public ParallelChunkRetriever(ContentStore contentStore,
+                                  PartialFileDirectory partialFiles,
+                                  int threadsPerItem,
+                                  int threadsPerJob) {
+        this.contentStore = contentStore;
+        this.partialFiles = partialFiles;
+        this.threadsPerItem = threadsPerItem;
+        this.executor = Executors.newFixedThreadPool(threadsPerJob, new ThreadFactory() {
+            private AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "chunk-retriever-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * When resumable, the chunks which have been retrieved and verified are
+     * recorded as they complete, and a failed or interrupted retrieval leaves its
+     * partial file in place so that a later retrieval of the same item only
+     * retrieves the remaining chunks.
+     *
+     * @param resumable
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * When set, content is read no faster than the job's share of the bridge
+     * bandwidth allows.
+     *
+     * @param bandwidthGovernor
+     * @param jobName
+     */
+    public void setBandwidthGovernor(BandwidthGovernor bandwidthGovernor, String jobName) {
+        this.bandwidthGovernor = bandwidthGovernor;
+        this.jobName = jobName;
+    }
+
+    /**
+     * @param contentItem
+     * @return true if the content item refers to a chunk manifest
+     */
+    public boolean isChunked(ContentItem contentItem) {
+        return contentItem.getContentId().endsWith(ChunksManifest.manifestSuffix);
+    }
+
+    /**
+     * Retrieves all chunks listed in the manifest referred to by the content item
+     * and writes them to the local file.
+     *
+     * @param contentItem a content item referring to a chunk manifest
+     * @param localFile   the file to which the stitched content is written
+     * @param listener    notified as each chunk is retrieved
+     * @return the properties of the stitched content item
+     * @throws IOException if any chunk could not be retrieved and verified
+     */
+    public Map<String, String> retrieve(ContentItem contentItem,
+                                        File localFile,
+                                        RetrievalListener listener) throws IOException {
+        return retrieve(contentItem, localFile, listener, new AtomicInteger());
+    }
+
+    /**
+     * Retrieves all chunks listed in the manifest referred to by the content item
+     * and writes them to the local file.
+     *
+     * @param contentItem a content item referring to a chunk manifest
+     * @param localFile   the file to which the stitched content is written
+     * @param listener    notified as each chunk is retrieved
+     * @param retries     incremented each time the retrieval of the manifest or of a chunk is retried
+     * @return the properties of the stitched content item
+     * @throws IOException if any chunk could not be retrieved and verified
+     */
+    public Map<String, String> retrieve(final ContentItem contentItem,
+                                        final File localFile,
+                                        final RetrievalListener listener,
+                                        final AtomicInteger retries) throws IOException {
+        final String spaceId = contentItem.getSpaceId();
+        final String manifestId = contentItem.getContentId();
+
+        Content manifestContent = getContent(spaceId, manifestId, retries);
+        ChunksManifest manifest;
+        try (InputStream manifestStream = manifestContent.getStream()) {
+            manifest = ManifestDocumentBinding.createManifestFrom(manifestStream);
+        }
+
+        ChunksManifestBean.ManifestHeader header = manifest.getHeader();
+        List<ChunksManifestBean.ManifestEntry> entries = new ArrayList<>(manifest.getEntries());
+        entries.sort(Comparator.comparingInt(ChunksManifestBean.ManifestEntry::getIndex));
+
+        if (isCurrent(localFile, header)) {
+            log.info("Local file {} is already current; not retrieving chunks of {}",
+                     localFile.getAbsolutePath(), manifestId);
+            return getProperties(manifestContent, header);
+        }
+
+        File parent = localFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        // chunks are written to a partial file which replaces the local file once
+        // every chunk has been verified.
+        File partialFile = partialFiles.getPartialFile(localFile);
+        File completedChunksFile = partialFiles.getCompletedChunksFile(localFile);
+        partialFile.getParentFile().mkdirs();
+        Set<String> completedChunks = loadCompletedChunks(partialFile, completedChunksFile,
+                                                           header.getSourceByteSize());
+
+        log.info("Retrieving {} chunks of {} (size={}) from space {} in parallel; {} already retrieved",
+                 entries.size(), manifestId, header.getSourceByteSize(), spaceId, completedChunks.size());
+
+        long[] offsets = new long[entries.size()];
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] = offsets[i - 1] + entries.get(i - 1).getByteSize();
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(partialFile, "rw");
+             Writer completedChunksWriter = resumable ?
+                 new OutputStreamWriter(new FileOutputStream(completedChunksFile, true), StandardCharsets.UTF_8) :
+                 null) {
+            file.setLength(header.getSourceByteSize());
+            final FileChannel channel = file.getChannel();
+
+            List<Integer> remaining = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++) {
+                if (!completedChunks.contains(getCompletedChunkKey(entries.get(i)))) {
+                    remaining.add(i);
+                }
+            }
+
+            CompletionService<Object> completionService = new ExecutorCompletionService<>(executor);
+            List<Future<Object>> futures = new ArrayList<>(remaining.size());
+
+            // keep at most threadsPerItem chunks of this item in flight at once so that
+            // a single very large item does not monopolize the shared thread pool.
+            int next = 0;
+            try {
+                for (int completed = 0; completed < remaining.size(); completed++) {
+                    while (next < remaining.size() && next - completed < threadsPerItem) {
+                        final ChunksManifestBean.ManifestEntry entry = entries.get(remaining.get(next));
+                        final long chunkOffset = offsets[remaining.get(next)];
+                        futures.add(completionService.submit(() -> {
+                            retrieveChunk(spaceId, entry, channel, chunkOffset, retries);
+                            if (completedChunksWriter != null) {
+                                recordCompletedChunk(channel, completedChunksWriter, entry);
+                            }
+                            listener.chunkRetrieved(entry.getChunkId());
+                            return null;
+                        }));
+                        next++;
+                    }
+                    completionService.take().get();
+                }
+            } catch (ExecutionException | InterruptedException ex) {
+                for (Future<Object> future : futures) {
+                    future.cancel(true);
+                }
+                Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+                throw new IOException("Failed to retrieve chunks of " + manifestId + ": " +
+                                      cause.getMessage(), cause);
+            }
+
+            channel.force(false);
+        } catch (IOException ex) {
+            if (!resumable) {
+                partialFile.delete();
+            }
+            throw ex;
+        }
+
+        Files.move(partialFile.toPath(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        completedChunksFile.delete();
+
+        return getProperties(manifestContent, header);
+    }
+
+    /**
+     * @return true if the local file already holds the stitched content, as when
+     * it was retrieved by an earlier run whose results were not recorded
+     */
+    private boolean isCurrent(File localFile, ChunksManifestBean.ManifestHeader header) throws IOException {
+        return localFile.exists() &&
+               localFile.length() == header.getSourceByteSize() &&
+               new ChecksumUtil(Algorithm.MD5).generateChecksum(localFile).equals(header.getSourceMD5());
+    }
+
+    private Map<String, String> getProperties(Content manifestContent, ChunksManifestBean.ManifestHeader header) {
+        Map<String, String> props = new HashMap<>(manifestContent.getProperties());
+        props.put(ContentStore.CONTENT_CHECKSUM, header.getSourceMD5());
+        props.put(ContentStore.CONTENT_MIMETYPE, header.getSourceMimetype());
+        props.put(ContentStore.CONTENT_SIZE, String.valueOf(header.getSourceByteSize()));
+        return props;
+    }
+
+    private Set<String> loadCompletedChunks(File partialFile,
+                                            File completedChunksFile,
+                                            long size) throws IOException {
+        Set<String> completedChunks = new HashSet<>();
+        if (resumable && completedChunksFile.exists() && partialFile.length() == size) {
+            for (String key : Files.readAllLines(completedChunksFile.toPath(), StandardCharsets.UTF_8)) {
+                if (!key.isEmpty()) {
+                    completedChunks.add(key);
+                }
+            }
+        } else {
+            completedChunksFile.delete();
+        }
+        return completedChunks;
+    }
+
+    // includes the checksum so that chunks of content which has since changed are retrieved again
+    private static String getCompletedChunkKey(ChunksManifestBean.ManifestEntry entry) {
+        return entry.getChunkId() + "\t" + entry.getChunkMD5();
+    }
+
+    private void recordCompletedChunk(FileChannel channel,
+                                      Writer completedChunksWriter,
+                                      ChunksManifestBean.ManifestEntry entry) throws IOException {
+        // the chunk must be durable before it is recorded as complete
+        channel.force(false);
+        synchronized (completedChunksWriter) {
+            completedChunksWriter.write(getCompletedChunkKey(entry) + "\n");
+            completedChunksWriter.flush();
+        }
+    }
+
+    private void retrieveChunk(final String spaceId,
+                               final ChunksManifestBean.ManifestEntry entry,
+                               final FileChannel channel,
+                               final long offset,
+                               final AtomicInteger retries) throws Exception {
+        final String chunkId = entry.getChunkId();
+        new Retrier().execute(new Retriable() {
+            private boolean attempted = false;
+
+            @Override
+            public Object retry() throws Exception {
+                if (attempted) {
+                    retries.incrementAndGet();
+                }
+                attempted = true;
+                MessageDigest md5 = MessageDigest.getInstance("MD5");
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long position = offset;
+                try (InputStream chunkStream = throttle(contentStore.getContent(spaceId, chunkId).getStream())) {
+                    int read;
+                    while ((read = chunkStream.read(buffer)) != -1) {
+                        md5.update(buffer, 0, read);
+                        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                        while (byteBuffer.hasRemaining()) {
+                            position += channel.write(byteBuffer, position);
+                        }
+                    }
+                }
+
+                long written = position - offset;
+                String checksum = ChecksumUtil.checksumBytesToString(md5.digest());
+                if (written != entry.getByteSize() || !checksum.equals(entry.getChunkMD5())) {
+                    throw new IOException("Chunk " + chunkId + " failed verification: expected size=" +
+                                          entry.getByteSize() + " md5=" + entry.getChunkMD5() +
+                                          ", retrieved size=" + written + " md5=" + checksum);
+                }
+                log.debug("Retrieved and verified chunk {} at offset {}", chunkId, offset);
+                return null;
+            }
+        });
+    }
+
+    private Content getContent(final String spaceId,
+                               final String contentId,
+                               final AtomicInteger retries) throws IOException {
+        try {
+            return new Retrier().execute(new Retriable() {
+                private boolean attempted = false;
+
+                @Override
+                public Content retry() throws Exception {
+                    if (attempted) {
+                        retries.incrementAndGet();
+                    }
+                    attempted = true;
+                    return contentStore.getContent(spaceId, contentId);
+                }
+            });
+        } catch (Exception ex) {
+            throw new IOException("Failed to retrieve " + contentId + " from space " + spaceId +
+                                  ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Releases the threads used for chunk retrieval.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private InputStream throttle(InputStream in) {
+        return bandwidthGovernor != null ? bandwidthGovernor.throttle(jobName, in) : in;
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.duracloud.chunk.manifest.ChunksManifest;
+import org.duracloud.chunk.manifest.xml.ManifestDocumentBinding;
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.retry.Retriable;
+import org.duracloud.common.retry.Retrier;
+import org.duracloud.common.util.ChecksumUtil;
+import org.duracloud.common.util.ChecksumUtil.Algorithm;
+import org.duracloud.error.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads a large file to DuraCloud as chunks, several chunks of the file at
+ * once. Each chunk is read from its offset in the file and its MD5 is computed
+ * as it is sent and compared to the checksum returned by DuraCloud. Once every
+ * chunk has been uploaded the chunk manifest is assembled and uploaded, which
+ * makes the stitched content item visible under its own content id.
+ * <p>
+ * The MD5 of the whole file cannot be assembled from chunks sent out of order,
+ * so it is computed by reading the file in order alongside the uploads, which
+ * read the same part of the file at about the same time. If the upload fails,
+ * the chunks already sent are removed.
+ */
+public class ParallelChunkUploader {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelChunkUploader.class);
+
+    private static final String CHUNK_MIMETYPE = "application/octet-stream";
+    private static final String MANIFEST_MIMETYPE = "application/xml";
+
+    private ContentStore contentStore;
+    private long chunkSize;
+    private int threadsPerFile;
+    private ExecutorService executor;
+    private ExecutorService digester;
+    private BandwidthGovernor bandwidthGovernor;
+    private String jobName;
+
+    /**
+     * @param contentStore   the content store to which chunks are uploaded
+     * @param chunkSize      the size in bytes of each chunk but the last
+     * @param threadsPerFile the number of chunks of a single file which may be in flight at once
+     * @param threadsPerJob  the number of chunks which may be in flight at once across all files
+     */
+    public ParallelChunkUploader(ContentStore contentStore, long chunkSize, int threadsPerFile, int threadsPerJob) {
+        this.contentStore = contentStore;
+        this.chunkSize = chunkSize;
+        this.threadsPerFile = Math.max(threadsPerFile, 1);
+        this.executor = Executors.newFixedThreadPool(Math.max(threadsPerJob, this.threadsPerFile),
+                                                     createThreadFactory("chunk-uploader-"));
+        this.digester = Executors.newCachedThreadPool(createThreadFactory("chunk-digester-"));
+    }
+
+    private static ThreadFactory createThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * When set, chunks are sent no faster than the job's share of the bridge
+     * bandwidth allows.
+     *
+     * @param bandwidthGovernor
+     * @param jobName
+     */
+    public void setBandwidthGovernor(BandwidthGovernor bandwidthGovernor, String jobName) {
+        this.bandwidthGovernor = bandwidthGovernor;
+        this.jobName = jobName;
+    }
+
+    /**
+     * @param file
+     * @return true if the file is large enough to be uploaded in chunks
+     */
+    public boolean isChunked(File file) {
+        return file.length() > chunkSize;
+    }
+
+    /**
+     * Uploads the chunks of the file and then its chunk manifest, without
+     * properties.
+     *
+     * @param spaceId   the space to which the file is uploaded
+     * @param contentId the content id of the stitched file
+     * @param file
+     * @return the manifest of the uploaded chunks
+     * @throws IOException if any chunk or the manifest could not be uploaded
+     */
+    public ChunksManifest upload(final String spaceId, final String contentId, final File file) throws IOException {
+        return upload(spaceId, contentId, file, null);
+    }
+
+    /**
+     * Uploads the chunks of the file and then its chunk manifest, which carries
+     * the mimetype and properties of the file.
+     *
+     * @param spaceId   the space to which the file is uploaded
+     * @param contentId the content id of the stitched file
+     * @param file
+     * @param props     the properties of the file, including its mimetype, or null
+     * @return the manifest of the uploaded chunks
+     * @throws IOException if any chunk or the manifest could not be uploaded
+     */
+    public ChunksManifest upload(String spaceId,
+                                 String contentId,
+                                 File file,
+                                 Map<String, String> props) throws IOException {
+        return upload(spaceId, contentId, file, props, null);
+    }
+
+    /**
+     * Uploads the chunks of the file and then its chunk manifest, which carries
+     * the mimetype and properties of the file. The manifest is uploaded only if
+     * the MD5 of the file matches the expected checksum; otherwise the chunks
+     * are removed, so that the space never lists content which failed
+     * verification.
+     *
+     * @param spaceId     the space to which the file is uploaded
+     * @param contentId   the content id of the stitched file
+     * @param file
+     * @param props       the properties of the file, including its mimetype, or null
+     * @param expectedMd5 the checksum the file must have, or null
+     * @return the manifest of the uploaded chunks
+     * @throws IOException if any chunk or the manifest could not be uploaded, or
+     *                     the file does not have the expected checksum
+     */
+    public ChunksManifest upload(final String spaceId,
+                                 final String contentId,
+                                 final File file,
+                                 Map<String, String> props,
+                                 String expectedMd5) throws IOException {
+        final long size = file.length();
+        int count = (int) ((size + chunkSize - 1) / chunkSize);
+
+        String mimetype = props != null ? props.getOrDefault(ContentStore.CONTENT_MIMETYPE, CHUNK_MIMETYPE) :
+                          CHUNK_MIMETYPE;
+        ChunksManifest manifest = new ChunksManifest(contentId, mimetype, size);
+        List<String> chunkIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            chunkIds.add(manifest.nextChunkId());
+        }
+        String[] checksums = new String[count];
+
+        log.info("Uploading {} chunks of {} (size={}) to space {} in parallel", count, contentId, size, spaceId);
+
+        Future<String> sourceMd5 = digester.submit(() -> new ChecksumUtil(Algorithm.MD5).generateChecksum(file));
+        CompletionService<Object> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Object>> futures = new ArrayList<>(count);
+
+        // keep at most threadsPerFile chunks of this file in flight at once so that
+        // a single very large file does not monopolize the shared thread pool.
+        int next = 0;
+        try {
+            for (int completed = 0; completed < count; completed++) {
+                while (next < count && next - completed < threadsPerFile) {
+                    final int index = next;
+                    final long offset = index * chunkSize;
+                    final long length = Math.min(chunkSize, size - offset);
+                    futures.add(completionService.submit(() -> {
+                        checksums[index] = uploadChunk(spaceId, chunkIds.get(index), file, offset, length);
+                        return null;
+                    }));
+                    next++;
+                }
+                completionService.take().get();
+            }
+            manifest.setMD5OfSourceContent(sourceMd5.get());
+        } catch (ExecutionException | InterruptedException ex) {
+            for (Future<Object> future : futures) {
+                future.cancel(true);
+            }
+            sourceMd5.cancel(true);
+            deleteChunks(spaceId, chunkIds.subList(0, next));
+            Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+            throw new IOException("Failed to upload chunks of " + contentId + ": " + cause.getMessage(), cause);
+        }
+
+        String md5 = manifest.getHeader().getSourceMD5();
+        if (expectedMd5 != null && !expectedMd5.equals(md5)) {
+            deleteChunks(spaceId, chunkIds);
+            throw new IOException("File " + file.getAbsolutePath() + " failed verification: expected md5=" +
+                                  expectedMd5 + ", file md5=" + md5);
+        }
+
+        for (int i = 0; i < count; i++) {
+            manifest.addEntry(chunkIds.get(i), checksums[i], Math.min(chunkSize, size - i * chunkSize));
+        }
+        try {
+            uploadManifest(spaceId, manifest, props);
+        } catch (IOException ex) {
+            deleteChunks(spaceId, chunkIds);
+            throw ex;
+        }
+        return manifest;
+    }
+
+    /**
+     * Releases the threads used for chunk uploads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        digester.shutdownNow();
+    }
+
+    private String uploadChunk(final String spaceId,
+                               final String chunkId,
+                               final File file,
+                               final long offset,
+                               final long length) throws Exception {
+        return new Retrier().execute(new Retriable() {
+            @Override
+            public String retry() throws Exception {
+                MessageDigest md5 = MessageDigest.getInstance("MD5");
+                try (FileInputStream fileStream = new FileInputStream(file)) {
+                    if (offset + length > fileStream.getChannel().size()) {
+                        throw new IOException("Chunk " + chunkId + " at offset " + offset +
+                                              " lies beyond the end of " + file.getAbsolutePath());
+                    }
+                    fileStream.getChannel().position(offset);
+                    InputStream chunkStream =
+                        new DigestInputStream(throttle(new BoundedInputStream(fileStream, length)), md5);
+                    String stored =
+                        contentStore.addContent(spaceId, chunkId, chunkStream, length, CHUNK_MIMETYPE, null, null);
+                    String checksum = ChecksumUtil.checksumBytesToString(md5.digest());
+                    if (!checksum.equals(stored)) {
+                        throw new IOException("Chunk " + chunkId + " failed verification: sent md5=" +
+                                              checksum + ", stored md5=" + stored);
+                    }
+                    log.debug("Uploaded and verified chunk {} at offset {}", chunkId, offset);
+                    return checksum;
+                }
+            }
+        });
+    }
+
+    private InputStream throttle(InputStream in) {
+        return bandwidthGovernor != null ? bandwidthGovernor.throttle(jobName, in) : in;
+    }
+
+    /**
+     * Removes chunks of a file whose upload failed, so that they are not left in
+     * the space without a manifest. Chunks which were never stored are ignored.
+     */
+    private void deleteChunks(String spaceId, List<String> chunkIds) {
+        for (String chunkId : chunkIds) {
+            try {
+                contentStore.deleteContent(spaceId, chunkId);
+            } catch (NotFoundException ex) {
+                // the chunk was not stored
+            } catch (Exception ex) {
+                log.warn("Unable to remove chunk {} of a failed upload from space {}: {}",
+                         chunkId, spaceId, ex.getMessage());
+            }
+        }
+    }
+
+    private void uploadManifest(final String spaceId,
+                                final ChunksManifest manifest,
+                                Map<String, String> props) throws IOException {
+        final byte[] document = ManifestDocumentBinding.createDocumentFrom(manifest).getBytes(StandardCharsets.UTF_8);
+        final String checksum = new ChecksumUtil(Algorithm.MD5).generateChecksum(new ByteArrayInputStream(document));
+        // the mimetype of the file is kept in the manifest, which is itself xml
+        final Map<String, String> manifestProps = props != null ? new HashMap<>(props) : null;
+        if (manifestProps != null) {
+            manifestProps.remove(ContentStore.CONTENT_MIMETYPE);
+        }
+        try {
+            new Retrier().execute(new Retriable() {
+                @Override
+                public Object retry() throws Exception {
+                    return contentStore.addContent(spaceId,
+                                                   manifest.getManifestId(),
+                                                   new ByteArrayInputStream(document),
+                                                   document.length,
+                                                   MANIFEST_MIMETYPE,
+                                                   checksum,
+                                                   manifestProps);
+                }
+            });
+        } catch (Exception ex) {
+            throw new IOException("Failed to upload chunk manifest " + manifest.getManifestId() +
+                                  ": " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lists the regular files beneath a directory in a fixed order: the entries of
+ * each directory are visited in order of name, and a directory's entries are
+ * visited before its next sibling. Listing and reading the attributes of the
+ * entries of upcoming directories is done on a pool of threads, while the files
+ * are handed out in order through a bounded buffer.
+ * <p>
+ * The scan may start after a checkpoint: a path relative to the root which was
+ * handed out by an earlier scan. Entries up to and including the checkpoint are
+ * skipped by name, so only the directories on the path to the checkpoint are
+ * listed again and nothing before it is read.
+ */
+public class ParallelFileScanner implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelFileScanner.class);
+
+    private final Path end;
+    private Path root;
+    private Path checkpoint;
+    private int threads;
+    private BlockingQueue<Path> buffer;
+    private ExecutorService listers;
+    private Thread scanner;
+    private volatile IOException failure;
+    private volatile boolean closed = false;
+    private boolean finished = false;
+
+    /**
+     * @param root       the directory to scan
+     * @param checkpoint the path, relative to the root, of the last file which
+     *                   need not be handed out again, or null to scan from the start
+     * @param threads    the number of directories listed at once
+     * @param bufferSize the number of files held ready to be handed out
+     */
+    public ParallelFileScanner(File root, String checkpoint, int threads, int bufferSize) {
+        this.root = root.toPath();
+        this.end = this.root;
+        this.checkpoint = checkpoint != null ? this.root.getFileSystem().getPath(checkpoint) : null;
+        this.threads = Math.max(threads, 1);
+        this.buffer = new ArrayBlockingQueue<>(Math.max(bufferSize, 1));
+    }
+
+    /**
+     * Starts scanning in the background.
+     */
+    public synchronized void start() {
+        if (scanner == null) {
+            listers = Executors.newFixedThreadPool(threads);
+            scanner = new Thread(this::scan, "file-scanner-" + root.getFileName());
+            scanner.setDaemon(true);
+            scanner.start();
+        }
+    }
+
+    /**
+     * Waits for the next file.
+     *
+     * @return the next file, or null once every file has been handed out
+     * @throws IOException          if a directory could not be listed
+     * @throws InterruptedException
+     */
+    public synchronized File next() throws IOException, InterruptedException {
+        if (finished || closed) {
+            return null;
+        }
+        Path path = buffer.take();
+        if (path == end) {
+            finished = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        return path.toFile();
+    }
+
+    /**
+     * @param file a file beneath the root
+     * @return the path of the file relative to the root, as accepted for a checkpoint
+     */
+    public String relativize(File file) {
+        return root.relativize(file.toPath()).toString();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (scanner != null) {
+            scanner.interrupt();
+            listers.shutdownNow();
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Orders paths relative to the same root in the order in which they are scanned.
+     */
+    static int compare(Path a, Path b) {
+        int count = Math.min(a.getNameCount(), b.getNameCount());
+        for (int i = 0; i < count; i++) {
+            int result = a.getName(i).toString().compareTo(b.getName(i).toString());
+            if (result != 0) {
+                return result;
+            }
+        }
+        return a.getNameCount() - b.getNameCount();
+    }
+
+    private void scan() {
+        try {
+            if (checkpoint != null) {
+                log.info("Resuming scan of {} after {}", root, checkpoint);
+            }
+            Deque<Frame> stack = new ArrayDeque<>();
+            stack.push(new Frame(list(root)));
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (!frame.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Entry entry = frame.next();
+                if (entry.directory) {
+                    stack.push(new Frame(frame.listing(entry)));
+                } else {
+                    buffer.put(entry.path);
+                }
+            }
+        } catch (InterruptedException ex) {
+            return;
+        } catch (ExecutionException ex) {
+            failure = ex.getCause() instanceof IOException ?
+                      (IOException) ex.getCause() : new IOException(ex.getCause());
+        } catch (IOException ex) {
+            failure = ex;
+        } catch (RuntimeException ex) {
+            failure = new IOException(ex);
+        } finally {
+            listers.shutdownNow();
+        }
+
+        if (failure != null) {
+            log.error("Scan of " + root + " failed: " + failure.getMessage(), failure);
+        }
+        try {
+            buffer.put(end);
+        } catch (InterruptedException ex) {
+            // closed while waiting to hand out the end of the scan
+        }
+    }
+
+    /**
+     * @return the regular files and directories in the given directory which
+     * come after the checkpoint, in order of name
+     */
+    private List<Entry> list(Path dir) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                if (!isPassed(path)) {
+                    paths.add(path);
+                }
+            }
+        }
+        paths.sort(Comparator.comparing(path -> path.getFileName().toString()));
+
+        List<Entry> entries = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException ex) {
+                continue;
+            }
+            if (attributes.isDirectory()) {
+                entries.add(new Entry(path, true));
+            } else if (attributes.isRegularFile()) {
+                entries.add(new Entry(path, false));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return true if the path, and everything beneath it, was handed out by the
+     * scan which recorded the checkpoint
+     */
+    private boolean isPassed(Path path) {
+        if (checkpoint == null) {
+            return false;
+        }
+        Path relative = root.relativize(path);
+        if (compare(relative, checkpoint) > 0) {
+            return false;
+        }
+        // a directory containing the checkpoint may still hold entries after it
+        return !(checkpoint.startsWith(relative) && !checkpoint.equals(relative));
+    }
+
+    /**
+     * The entries of a directory being scanned, with the listings of up to one
+     * subdirectory per thread requested ahead of time.
+     */
+    private class Frame {
+        private List<Entry> entries;
+        private int position = 0;
+        private int requested = 0;
+        private Map<Path, Future<List<Entry>>> listings = new HashMap<>();
+
+        private Frame(List<Entry> entries) {
+            this.entries = entries;
+            requestListings();
+        }
+
+        private boolean hasNext() {
+            return position < entries.size();
+        }
+
+        private Entry next() {
+            return entries.get(position++);
+        }
+
+        private List<Entry> listing(Entry directory)
+            throws IOException, InterruptedException, ExecutionException {
+            Future<List<Entry>> listing = listings.remove(directory.path);
+            requestListings();
+            return listing != null ? listing.get() : list(directory.path);
+        }
+
+        private void requestListings() {
+            while (listings.size() < threads && requested < entries.size()) {
+                Entry entry = entries.get(requested++);
+                if (entry.directory) {
+                    listings.put(entry.path, listers.submit(() -> list(entry.path)));
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private Path path;
+        private boolean directory;
+
+        private Entry(Path path, boolean directory) {
+            this.path = path;
+            this.directory = directory;
+        }
+    }
+}
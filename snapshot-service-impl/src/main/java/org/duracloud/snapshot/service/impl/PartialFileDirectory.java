@@ -0,0 +1,86 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A work directory holding the partial files of interrupted retrievals. Each
+ * partial file sits at the same path relative to the work directory as its local
+ * file does relative to the content directory, so partial files never share a
+ * directory with retrieved content and removing them cannot touch content whose
+ * name happens to look like a partial file.
+ */
+public class PartialFileDirectory {
+
+    private static final Logger log = LoggerFactory.getLogger(PartialFileDirectory.class);
+
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final String COMPLETED_CHUNKS_SUFFIX = ".chunks";
+
+    private Path contentDir;
+    private File workDir;
+
+    /**
+     * @param contentDir the directory to which content is retrieved
+     * @param workDir    the directory in which partial files are kept; must not be
+     *                   within the content directory's data directory
+     */
+    public PartialFileDirectory(File contentDir, File workDir) {
+        this.contentDir = contentDir.getAbsoluteFile().toPath().normalize();
+        this.workDir = workDir;
+    }
+
+    /**
+     * @param localFile
+     * @return the file to which the content of the local file is written until
+     * it has been retrieved in full
+     */
+    public File getPartialFile(File localFile) {
+        return new File(workDir, getRelativePath(localFile) + PARTIAL_SUFFIX);
+    }
+
+    /**
+     * @param localFile
+     * @return the file recording the chunks of the local file's partial file
+     * which have been retrieved and verified
+     */
+    public File getCompletedChunksFile(File localFile) {
+        return new File(workDir, getRelativePath(localFile) + PARTIAL_SUFFIX + COMPLETED_CHUNKS_SUFFIX);
+    }
+
+    /**
+     * Removes the work directory and any partial files left in it.
+     */
+    public void delete() {
+        if (!workDir.exists()) {
+            return;
+        }
+        try {
+            log.info("Removing partial file directory {}", workDir.getAbsolutePath());
+            FileUtils.deleteDirectory(workDir);
+        } catch (IOException ex) {
+            log.warn("Unable to remove partial file directory {}: {}", workDir.getAbsolutePath(), ex.getMessage());
+        }
+    }
+
+    private String getRelativePath(File localFile) {
+        Path path = localFile.getAbsoluteFile().toPath().normalize();
+        if (!path.startsWith(contentDir)) {
+            throw new IllegalArgumentException("File " + localFile.getAbsolutePath() +
+                                               " is not within content directory " + contentDir);
+        }
+        return contentDir.relativize(path).toString();
+    }
+}
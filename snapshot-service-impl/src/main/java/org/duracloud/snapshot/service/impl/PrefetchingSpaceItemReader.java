@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.duracloud.common.model.ContentItem;
+import org.duracloud.retrieval.source.RetrievalSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+
+/**
+ * A space item reader which lists the space on a background thread, keeping a
+ * bounded queue of content items ahead of the threads which read from it. Reading
+ * threads only block when the queue is empty; the listing thread blocks when the
+ * queue is full.
+ */
+public class PrefetchingSpaceItemReader extends SpaceItemReader implements StepExecutionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(PrefetchingSpaceItemReader.class);
+
+    // marks the end of the listing; compared by identity
+    private static final ContentItem END_OF_LISTING = new ContentItem(null, null);
+
+    private BlockingQueue<ContentItem> queue;
+    private Thread lister;
+    private volatile Exception listingError;
+
+    /**
+     * @param retrievalSource the source whose content items are listed
+     * @param depth           the number of content items listed ahead of the readers
+     */
+    public PrefetchingSpaceItemReader(RetrievalSource retrievalSource, int depth) {
+        super(retrievalSource);
+        this.queue = new ArrayBlockingQueue<>(depth);
+    }
+
+    @Override
+    public ContentItem read() throws Exception {
+        startLister();
+
+        ContentItem contentItem = queue.take();
+        if (contentItem == END_OF_LISTING) {
+            // leave the marker in place for the other reading threads
+            queue.put(END_OF_LISTING);
+            if (listingError != null) {
+                throw listingError;
+            }
+            return null;
+        }
+        return contentItem;
+    }
+
+    private synchronized void startLister() {
+        if (lister != null) {
+            return;
+        }
+
+        lister = new Thread(() -> {
+            try {
+                ContentItem contentItem;
+                while ((contentItem = super.read()) != null) {
+                    queue.put(contentItem);
+                }
+                log.info("Finished listing content items");
+            } catch (InterruptedException ex) {
+                log.info("Listing of content items interrupted");
+                return;
+            } catch (Exception ex) {
+                listingError = ex;
+            }
+
+            try {
+                queue.put(END_OF_LISTING);
+            } catch (InterruptedException ex) {
+                log.info("Listing of content items interrupted");
+            }
+        }, "space-item-lister");
+        lister.setDaemon(true);
+        lister.start();
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public synchronized ExitStatus afterStep(StepExecution stepExecution) {
+        if (lister != null) {
+            lister.interrupt();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.model.ContentItem;
+import org.duracloud.common.retry.Retriable;
+import org.duracloud.common.retry.Retrier;
+import org.duracloud.common.util.ChecksumUtil;
+import org.duracloud.common.util.DateUtil;
+import org.duracloud.common.util.DateUtil.DateFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retrieves unchunked content items into a partial file which is kept when a
+ * retrieval fails or is interrupted. A later retrieval of the same item, whether
+ * a retry or a restart of the job, continues from the end of the partial file
+ * using a ranged request. The MD5 of the complete file is verified before it
+ * replaces the local file.
+ * <p>
+ * The MD5 and SHA-256 digests are resumed over the partial file already on disk
+ * and then continued over the ranged stream, so only the partial prefix is read
+ * back rather than the whole file.
+ * <p>
+ * As with the retrieval worker, a local file which already holds the content is
+ * kept rather than retrieved again, and the times of the original file recorded
+ * in the content properties are applied to the local file.
+ */
+public class RangedContentRetriever {
+
+    private static final Logger log = LoggerFactory.getLogger(RangedContentRetriever.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ContentStore contentStore;
+    private PartialFileDirectory partialFiles;
+    private BandwidthGovernor bandwidthGovernor;
+    private String jobName;
+    private ThreadLocal<String[]> lastSha256 = new ThreadLocal<>();
+
+    /**
+     * @param contentStore the content store from which content is retrieved
+     * @param partialFiles the directory in which partial files are kept
+     */
+    public RangedContentRetriever(ContentStore contentStore, PartialFileDirectory partialFiles) {
+        this.contentStore = contentStore;
+        this.partialFiles = partialFiles;
+    }
+
+    /**
+     * When set, content is read no faster than the job's share of the bridge
+     * bandwidth allows.
+     *
+     * @param bandwidthGovernor
+     * @param jobName
+     */
+    public void setBandwidthGovernor(BandwidthGovernor bandwidthGovernor, String jobName) {
+        this.bandwidthGovernor = bandwidthGovernor;
+        this.jobName = jobName;
+    }
+
+    /**
+     * @param contentItem the item to retrieve
+     * @param localFile   the file to which the content is written
+     * @return the properties of the content item
+     * @throws IOException if the content could not be retrieved and verified
+     */
+    public Map<String, String> retrieve(ContentItem contentItem, File localFile) throws IOException {
+        return retrieve(contentItem, localFile, new AtomicInteger());
+    }
+
+    /**
+     * @param contentItem the item to retrieve
+     * @param localFile   the file to which the content is written
+     * @param retries     incremented each time the retrieval is retried
+     * @return the properties of the content item
+     * @throws IOException if the content could not be retrieved and verified
+     */
+    public Map<String, String> retrieve(ContentItem contentItem,
+                                        File localFile,
+                                        AtomicInteger retries) throws IOException {
+        return retrieve(contentItem, localFile, null, retries);
+    }
+
+    /**
+     * @param contentItem the item to retrieve
+     * @param localFile   the file to which the content is written
+     * @param sourceProps the properties of the item if they have already been
+     *                    read, used by the first attempt; may be null
+     * @param retries     incremented each time the retrieval is retried
+     * @return the properties of the content item
+     * @throws IOException if the content could not be retrieved and verified
+     */
+    public Map<String, String> retrieve(final ContentItem contentItem,
+                                        final File localFile,
+                                        final Map<String, String> sourceProps,
+                                        final AtomicInteger retries) throws IOException {
+        final String spaceId = contentItem.getSpaceId();
+        final String contentId = contentItem.getContentId();
+        final File partialFile = partialFiles.getPartialFile(localFile);
+
+        File parent = localFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        partialFile.getParentFile().mkdirs();
+
+        try {
+            return new Retrier().execute(new Retriable() {
+                private boolean attempted = false;
+
+                @Override
+                public Map<String, String> retry() throws Exception {
+                    boolean retrying = attempted;
+                    if (retrying) {
+                        retries.incrementAndGet();
+                    }
+                    attempted = true;
+                    // properties are read again on a retry in case the content has changed
+                    Map<String, String> props = retrying || sourceProps == null ?
+                                                contentStore.getContentProperties(spaceId, contentId) :
+                                                sourceProps;
+                    long size = Long.parseLong(props.get(ContentStore.CONTENT_SIZE));
+                    String expectedMd5 = props.get(ContentStore.CONTENT_CHECKSUM);
+
+                    if (isCurrent(localFile, size, expectedMd5, contentId)) {
+                        log.info("Local file {} is already current; not retrieving {}",
+                                 localFile.getAbsolutePath(), contentId);
+                        applyTimestamps(props, localFile);
+                        return props;
+                    }
+
+                    long offset = partialFile.length();
+                    if (offset > size) {
+                        partialFile.delete();
+                        offset = 0;
+                    }
+
+                    MessageDigest md5 = MessageDigest.getInstance("MD5");
+                    MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                    digest(partialFile, md5, sha256);
+                    if (offset < size) {
+                        log.info("Retrieving {} from space {} starting at byte {} of {}",
+                                 contentId, spaceId, offset, size);
+                        append(spaceId, contentId, offset, partialFile, md5, sha256);
+                    }
+
+                    String checksum = ChecksumUtil.checksumBytesToString(md5.digest());
+                    long retrievedSize = partialFile.length();
+                    if (retrievedSize != size || !checksum.equals(expectedMd5)) {
+                        // the partial content cannot be trusted, so start over on the next attempt
+                        partialFile.delete();
+                        throw new IOException("Retrieved content of " + contentId + " failed verification: " +
+                                              "expected size=" + size + " md5=" + expectedMd5 +
+                                              ", retrieved size=" + retrievedSize + " md5=" + checksum);
+                    }
+
+                    Files.move(partialFile.toPath(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    lastSha256.set(new String[] {contentId,
+                                                 ChecksumUtil.checksumBytesToString(sha256.digest())});
+                    applyTimestamps(props, localFile);
+                    return props;
+                }
+            });
+        } catch (Exception ex) {
+            throw new IOException("Failed to retrieve " + contentId + " from space " + spaceId +
+                                  ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Returns and clears the SHA-256 checksum of the last content item retrieved
+     * by the calling thread.
+     *
+     * @param contentItem the item which was retrieved
+     * @return the SHA-256 checksum of the item, or null if the calling thread's
+     * last retrieval was not of this item
+     */
+    public String getSha256(ContentItem contentItem) {
+        String[] last = lastSha256.get();
+        lastSha256.remove();
+        return last != null && last[0].equals(contentItem.getContentId()) ? last[1] : null;
+    }
+
+    /**
+     * @return true if the local file already holds the content, as when it was
+     * retrieved by an earlier run whose results were not recorded; the SHA-256
+     * computed while checking is kept as though the content had been retrieved
+     */
+    private boolean isCurrent(File localFile, long size, String expectedMd5, String contentId)
+        throws Exception {
+        if (!localFile.exists() || localFile.length() != size) {
+            return false;
+        }
+
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        digest(localFile, md5, sha256);
+        if (!ChecksumUtil.checksumBytesToString(md5.digest()).equals(expectedMd5)) {
+            return false;
+        }
+        lastSha256.set(new String[] {contentId, ChecksumUtil.checksumBytesToString(sha256.digest())});
+        return true;
+    }
+
+    /**
+     * Sets the times of the local file to those of the original file recorded in
+     * the content properties, as the retrieval worker does.
+     */
+    private void applyTimestamps(Map<String, String> props, File localFile) {
+        FileTime modified = getFileTime(props, ContentStore.CONTENT_FILE_MODIFIED);
+        FileTime accessed = getFileTime(props, ContentStore.CONTENT_FILE_ACCESSED);
+        FileTime created = getFileTime(props, ContentStore.CONTENT_FILE_CREATED);
+        if (modified == null && accessed == null && created == null) {
+            return;
+        }
+
+        try {
+            Files.getFileAttributeView(localFile.toPath(), BasicFileAttributeView.class)
+                 .setTimes(modified, accessed, created);
+        } catch (IOException ex) {
+            log.warn("Unable to set the times of {}: {}", localFile.getAbsolutePath(), ex.getMessage());
+        }
+    }
+
+    private FileTime getFileTime(Map<String, String> props, String name) {
+        String value = props.get(name);
+        if (value == null) {
+            return null;
+        }
+
+        // the sync tool records file times in the long format
+        for (DateFormat format : new DateFormat[] {DateFormat.LONG_FORMAT, DateFormat.DEFAULT_FORMAT}) {
+            try {
+                return FileTime.fromMillis(DateUtil.convertToDate(value, format).getTime());
+            } catch (ParseException ex) {
+                // try the next format
+            }
+        }
+        log.warn("Unable to parse {} property value {}", name, value);
+        return null;
+    }
+
+    private void digest(File file, MessageDigest md5, MessageDigest sha256) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md5.update(buffer, 0, read);
+                sha256.update(buffer, 0, read);
+            }
+        }
+    }
+
+    private void append(String spaceId,
+                        String contentId,
+                        long offset,
+                        File partialFile,
+                        MessageDigest md5,
+                        MessageDigest sha256) throws Exception {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        InputStream content = offset > 0 ?
+                              contentStore.getContent(spaceId, contentId, offset, null).getStream() :
+                              contentStore.getContent(spaceId, contentId).getStream();
+        try (InputStream in = throttle(content);
+             FileOutputStream out = new FileOutputStream(partialFile, true)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                md5.update(buffer, 0, read);
+                sha256.update(buffer, 0, read);
+            }
+            out.getFD().sync();
+        }
+    }
+
+    private InputStream throttle(InputStream in) {
+        return bandwidthGovernor != null ? bandwidthGovernor.throttle(jobName, in) : in;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of the expected checksum and the properties of each file of a
+ * restoration, built from the md5 manifest and the content properties file of
+ * the restored snapshot the first time it is opened and kept beside them, so
+ * that a restarted transfer does not read either file again.
+ * <p>
+ * The index also records the files whose properties have been applied in
+ * DuraCloud, so that properties supplied when a file is uploaded need not be
+ * set again afterwards.
+ */
+public class RestoreContentIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(RestoreContentIndex.class);
+
+    private File indexFile;
+    private File md5Manifest;
+    private File propertiesFile;
+
+    private DB db;
+    private CacheCommitter committer;
+    private Map<String, String> checksums;
+    private Map<String, String> properties;
+    private Set<String> applied;
+
+    /**
+     * @param indexFile      the file in which the index is kept
+     * @param md5Manifest    the md5 manifest of the restored snapshot
+     * @param propertiesFile the content properties file of the restored snapshot
+     */
+    public RestoreContentIndex(File indexFile, File md5Manifest, File propertiesFile) {
+        this.indexFile = indexFile;
+        this.md5Manifest = md5Manifest;
+        this.propertiesFile = propertiesFile;
+    }
+
+    /**
+     * Opens the index, building it the first time it is opened.
+     *
+     * @param commitBatchSize  the number of records after which a commit is made
+     * @param commitIntervalMs the interval at which pending records are committed
+     * @throws IOException
+     */
+    public synchronized void open(int commitBatchSize, long commitIntervalMs) throws IOException {
+        db = DBMaker.fileDB(indexFile).transactionEnable().closeOnJvmShutdown().make();
+        checksums = db.hashMap("checksums", Serializer.STRING, Serializer.STRING).createOrOpen();
+        properties = db.hashMap("properties", Serializer.STRING, Serializer.STRING).createOrOpen();
+        applied = db.hashSet("applied", Serializer.STRING).createOrOpen();
+
+        if (checksums.isEmpty()) {
+            try {
+                loadChecksums();
+                loadProperties();
+            } catch (IOException | RuntimeException ex) {
+                db.rollback();
+                throw ex;
+            }
+            // the index is committed only once complete, so an interrupted
+            // build starts over the next time the index is opened
+            db.commit();
+        }
+        committer = new CacheCommitter(db, commitBatchSize, commitIntervalMs);
+        log.info("Opened restore index {}: {} checksums, {} sets of properties, {} applied",
+                 indexFile.getAbsolutePath(), checksums.size(), properties.size(), applied.size());
+    }
+
+    /**
+     * @param contentId
+     * @return the checksum of the file in the md5 manifest, or null if it is not listed
+     */
+    public String getChecksum(String contentId) {
+        return checksums.get(contentId);
+    }
+
+    /**
+     * @param contentId
+     * @return the properties of the file, empty if the properties file has none for it
+     */
+    public Map<String, String> getProperties(String contentId) {
+        String serialized = properties.get(contentId);
+        return serialized != null ? PropertiesSerializer.deserialize(serialized) : new HashMap<>();
+    }
+
+    /**
+     * Records that the properties of a file have been applied in DuraCloud.
+     *
+     * @param contentId
+     */
+    public void recordApplied(String contentId) {
+        applied.add(contentId);
+        committer.changed();
+    }
+
+    /**
+     * @param contentId
+     * @return true if the properties of the file have been applied in DuraCloud
+     */
+    public boolean isApplied(String contentId) {
+        return applied != null && applied.contains(contentId);
+    }
+
+    /**
+     * @return the number of files whose properties have been applied
+     */
+    public int getAppliedCount() {
+        return applied != null ? applied.size() : 0;
+    }
+
+    /**
+     * Commits all records and closes the index.
+     */
+    public synchronized void close() {
+        if (committer != null) {
+            committer.close();
+            committer = null;
+        }
+        if (db != null) {
+            db.close();
+            db = null;
+        }
+        checksums = null;
+        properties = null;
+        applied = null;
+    }
+
+    private void loadChecksums() throws IOException {
+        try (BufferedReader reader =
+                 new BufferedReader(new InputStreamReader(new FileInputStream(md5Manifest),
+                                                          StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    ManifestEntry entry = ManifestFileHelper.parseManifestEntry(line);
+                    checksums.put(entry.getContentId(), entry.getChecksum());
+                } catch (ParseException ex) {
+                    log.info("Unable to parse line in manifest file {}. message={}. skipping: line={}",
+                             md5Manifest.getAbsolutePath(), ex.getMessage(), line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the content properties file, which holds an array of objects each
+     * mapping one content id to its properties.
+     */
+    private void loadProperties() throws IOException {
+        try (JsonParser parser = new JsonFactory().createParser(propertiesFile)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Content properties file " + propertiesFile.getAbsolutePath() +
+                                      " does not hold an array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String contentId = parser.getCurrentName();
+                    parser.nextToken(); // {
+                    Map<String, String> props = new HashMap<>();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String key = parser.getCurrentName();
+                        parser.nextToken();
+                        props.put(key, parser.getText());
+                    }
+                    properties.put(contentId, PropertiesSerializer.serialize(props));
+                }
+            }
+        }
+    }
+}
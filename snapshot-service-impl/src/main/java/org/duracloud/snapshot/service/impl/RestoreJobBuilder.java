@@ -18,6 +18,7 @@ import org.duracloud.snapshot.db.model.DuracloudEndPointConfig;
 import org.duracloud.snapshot.db.model.Restoration;
 import org.duracloud.snapshot.db.model.SnapshotContentItem;
 import org.duracloud.snapshot.db.repo.SnapshotContentItemRepo;
+import org.duracloud.snapshot.service.BridgeConfiguration;
 import org.duracloud.snapshot.service.RestoreManager;
 import org.duracloud.snapshot.service.SnapshotJobManagerConfig;
 import org.duracloud.sync.endpoint.DuraStoreChunkSyncEndpoint;
@@ -55,6 +56,7 @@ public class RestoreJobBuilder extends AbstractJobBuilder implements BatchJobBui
     private RestoreManager restoreManager;
     private SnapshotContentItemRepo snapshotContentItemRepo;
     private StoreClientHelper storeClientHelper;
+    private BandwidthGovernor bandwidthGovernor;
 
     @Autowired
     public RestoreJobBuilder(RestoreJobExecutionListener jobListener,
@@ -63,7 +65,8 @@ public class RestoreJobBuilder extends AbstractJobBuilder implements BatchJobBui
                              @Qualifier("itemTaskExecutor") TaskExecutor taskExecutor,
                              RestoreManager restoreManager,
                              SnapshotContentItemRepo snapshotContentItemRepo,
-                             StoreClientHelper storeClientHelper) {
+                             StoreClientHelper storeClientHelper,
+                             BandwidthGovernor bandwidthGovernor) {
         this.jobListener = jobListener;
         this.jobRepository = jobRepository;
         this.transactionManager = transactionManager;
@@ -71,6 +74,7 @@ public class RestoreJobBuilder extends AbstractJobBuilder implements BatchJobBui
         this.restoreManager = restoreManager;
         this.snapshotContentItemRepo = snapshotContentItemRepo;
         this.storeClientHelper = storeClientHelper;
+        this.bandwidthGovernor = bandwidthGovernor;
     }
 
     /*
@@ -98,18 +102,42 @@ public class RestoreJobBuilder extends AbstractJobBuilder implements BatchJobBui
 
             JobBuilderFactory jobBuilderFactory = new JobBuilderFactory(jobRepository);
             JobBuilder jobBuilder = jobBuilderFactory.get(getJobName());
-            SimpleJobBuilder simpleJobBuilder =
-                jobBuilder.start(buildVerifyTransferUsingManifestStep(restoreId, jobManagerConfig))
-                          .next(buildVerifyTransferUsingSnapshotRepoStep(restoreId, jobManagerConfig))
-                          .next(buildRestoreContentStep(restoreId, destinationSpaceId, contentStore, jobManagerConfig))
-                          .next(buildRestoreContentPropertiesStep(restoreId,
-                                                                  destinationSpaceId,
-                                                                  contentStore,
-                                                                  jobManagerConfig))
-                          .next(buildVerifyDuraCloudTransferStep(restoreId,
-                                                                 destinationSpaceId,
-                                                                 contentStore,
-                                                                 jobManagerConfig));
+            SimpleJobBuilder simpleJobBuilder;
+            if (BridgeConfiguration.isBridgeRestoreFused()) {
+                // restored files are verified against the manifest and given their
+                // properties as they are uploaded by the restore content step, so
+                // the properties step only sets the properties of any items left over
+                simpleJobBuilder =
+                    jobBuilder.start(buildVerifyTransferUsingSnapshotRepoStep(restoreId, jobManagerConfig))
+                              .next(buildRestoreContentStep(restoreId,
+                                                            destinationSpaceId,
+                                                            contentStore,
+                                                            jobManagerConfig))
+                              .next(buildRestoreContentPropertiesStep(restoreId,
+                                                                      destinationSpaceId,
+                                                                      contentStore,
+                                                                      jobManagerConfig))
+                              .next(buildVerifyDuraCloudTransferStep(restoreId,
+                                                                     destinationSpaceId,
+                                                                     contentStore,
+                                                                     jobManagerConfig));
+            } else {
+                simpleJobBuilder =
+                    jobBuilder.start(buildVerifyTransferUsingManifestStep(restoreId, jobManagerConfig))
+                              .next(buildVerifyTransferUsingSnapshotRepoStep(restoreId, jobManagerConfig))
+                              .next(buildRestoreContentStep(restoreId,
+                                                            destinationSpaceId,
+                                                            contentStore,
+                                                            jobManagerConfig))
+                              .next(buildRestoreContentPropertiesStep(restoreId,
+                                                                      destinationSpaceId,
+                                                                      contentStore,
+                                                                      jobManagerConfig))
+                              .next(buildVerifyDuraCloudTransferStep(restoreId,
+                                                                     destinationSpaceId,
+                                                                     contentStore,
+                                                                     jobManagerConfig));
+            }
             simpleJobBuilder.listener(jobListener);
             job = simpleJobBuilder.build();
             log.debug("build job {}", job);
@@ -265,23 +293,46 @@ public class RestoreJobBuilder extends AbstractJobBuilder implements BatchJobBui
         return restoreDir;
     }
 
-    private Step buildRestoreContentPropertiesStep(String restorationId,
-                                                   String destinationSpaceId,
-                                                   ContentStore contentStore,
-                                                   SnapshotJobManagerConfig jobManagerConfig) throws Exception {
-
+    /**
+     * @param restoreDir
+     * @return
+     */
+    private File getRestoreContentPropertiesFile(File restoreDir) {
         File contentPropertiesJsonFile =
-            new File(ContentDirUtils.getSourcePath(restorationId, jobManagerConfig.getContentRootDir()),
-                     SnapshotServiceConstants.CONTENT_PROPERTIES_JSON_FILENAME);
+            new File(restoreDir, SnapshotServiceConstants.CONTENT_PROPERTIES_JSON_FILENAME);
 
         if (!contentPropertiesJsonFile.exists()) {
             throw new RuntimeException("The restored content properties file is missing : "
                                        + contentPropertiesJsonFile.getAbsolutePath());
         }
+        return contentPropertiesJsonFile;
+    }
+
+    /**
+     * @param restoreDir
+     * @return
+     */
+    private RestoreContentIndex createRestoreContentIndex(File restoreDir) {
+        return new RestoreContentIndex(new File(restoreDir, "restore-index.db"),
+                                       getRestoreMd5Manifest(restoreDir),
+                                       getRestoreContentPropertiesFile(restoreDir));
+    }
+
+    private Step buildRestoreContentPropertiesStep(String restorationId,
+                                                   String destinationSpaceId,
+                                                   ContentStore contentStore,
+                                                   SnapshotJobManagerConfig jobManagerConfig) throws Exception {
+
+        File restoreDir = getRestoreDir(restorationId, jobManagerConfig);
+        File contentPropertiesJsonFile = getRestoreContentPropertiesFile(restoreDir);
 
         ContentPropertiesFileReader reader = new ContentPropertiesFileReader(contentPropertiesJsonFile);
 
         ContentPropertiesWriter writer = new ContentPropertiesWriter(contentStore, destinationSpaceId);
+        writer.setStagedContent(getRestoreContentDir(restoreDir), BridgeConfiguration.getBridgeRestoreChunkSizeBytes());
+        if (BridgeConfiguration.isBridgeRestoreFused()) {
+            writer.setContentIndex(createRestoreContentIndex(restoreDir));
+        }
 
         SimpleStepFactoryBean<ContentProperties, ContentProperties> stepFactory = new SimpleStepFactoryBean<>();
         stepFactory.setJobRepository(jobRepository);
@@ -301,13 +352,14 @@ public class RestoreJobBuilder extends AbstractJobBuilder implements BatchJobBui
                                          ContentStore contentStore,
                                          SnapshotJobManagerConfig jobManagerConfig) throws Exception {
 
+        long chunkSize = BridgeConfiguration.getBridgeRestoreChunkSizeBytes();
         SyncEndpoint endpoint =
             new DuraStoreChunkSyncEndpoint(contentStore,
                                            jobManagerConfig.getDuracloudUsername(),
                                            destinationSpaceId,
                                            false,
                                            true,
-                                           1000 * 1000 * 1000); // 1GB chunk size
+                                           chunkSize);
         endpoint.addEndPointListener(new EndPointLogger());
 
         File watchDir =
@@ -329,6 +381,41 @@ public class RestoreJobBuilder extends AbstractJobBuilder implements BatchJobBui
                            contentStore,
                            destinationSpaceId,
                            restoreManager);
+        writer.setConcurrencyLimiter(createConcurrencyLimiter(restorationId));
+        writer.setBandwidthGovernor(bandwidthGovernor);
+        if (BridgeConfiguration.isBridgeRestoreUploadLedger()) {
+            File restoreDir = watchDir.getParentFile();
+            StitchedManifestGenerator generator = BridgeConfiguration.isBridgeRestoreLedgerReconcile() ?
+                                                  new StitchedManifestGenerator(contentStore) : null;
+            writer.setUploadLedger(new RestoreUploadLedger(new File(restoreDir, "upload-ledger.db"),
+                                                           getRestoreMd5Manifest(restoreDir),
+                                                           contentStore,
+                                                           generator,
+                                                           destinationSpaceId));
+        }
+        boolean fused = BridgeConfiguration.isBridgeRestoreFused();
+        int chunkThreadsPerFile = BridgeConfiguration.getBridgeRestoreChunkThreadsPerFile();
+        ParallelChunkUploader chunkUploader = null;
+        if (chunkThreadsPerFile > 1 || fused) {
+            log.info("Uploading chunks of large files using {} threads per file", chunkThreadsPerFile);
+            chunkUploader =
+                new ParallelChunkUploader(contentStore,
+                                          chunkSize,
+                                          chunkThreadsPerFile,
+                                          chunkThreadsPerFile * BridgeConfiguration.getBridgeThreadsPerJob());
+            chunkUploader.setBandwidthGovernor(bandwidthGovernor, restorationId);
+            writer.setParallelChunkUploader(chunkUploader);
+        }
+        if (fused) {
+            File restoreDir = watchDir.getParentFile();
+            log.info("Verifying and uploading restored files with their properties in a single pass");
+            FusedRestoreUploader fusedUploader = new FusedRestoreUploader(contentStore,
+                                                                          destinationSpaceId,
+                                                                          createRestoreContentIndex(restoreDir),
+                                                                          chunkUploader);
+            fusedUploader.setBandwidthGovernor(bandwidthGovernor, restorationId);
+            writer.setFusedUploader(fusedUploader);
+        }
 
         SimpleStepFactoryBean<File, File> stepFactory = new SimpleStepFactoryBean<>();
         stepFactory.setJobRepository(jobRepository);
@@ -460,41 +460,77 @@ public class RestoreManagerImpl implements RestoreManager {
         for (Restoration restoration : completedRestores) {
             Date expirationDate = restoration.getExpirationDate();
             if (expirationDate.before(new Date())) { // Only continue if expired
-                DuracloudEndPointConfig destination = restoration.getDestination();
-                ContentStore store =
-                    storeClientHelper.create(destination,
-                                             bridgeConfig.getDuracloudUsername(),
-                                             bridgeConfig.getDuracloudPassword());
-                try {
-                    String spaceId = destination.getSpaceId();
-                    Iterator<String> it = store.getSpaceContents(spaceId);
-                    if (!it.hasNext()) { // if space is empty
-                        // Call DuraCloud to remove space
-                        log.info("Deleting expired restoration space: " + spaceId +
-                                 " at host: " + destination.getHost());
-                        store.deleteSpace(spaceId);
-
-                        // Update restore status
-                        validateAndSet(restoration,
-                                       RestoreStatus.RESTORATION_EXPIRED,
-                                       "Restoration expired");
-                        restoration = save(restoration);
-                        log.info("Transition of restore " +
-                                 restoration.getRestorationId() +
-                                 " to expired state completed successfully");
-
-                        // Add history event
-                        String history =
-                            "[{'" + RESTORE_ACTION_TITLE + "':'" + RESTORE_ACTION_EXPIRED + "'}," +
-                            "{'" + RESTORE_ID_TITLE + "':'" + restoration.getRestorationId() + "'}]";
-                        snapshotManager.updateHistory(restoration.getSnapshot(), history);
-                    }
-                } catch (Exception e) {
-                    log.error("Failed to transition restore " +
-                              restoration.getRestorationId() +
-                              " to expired state due to: " + e.getMessage());
-                }
+                finalizeRestore(restoration);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.duracloud.snapshot.service.RestoreManager#getRestoresToFinalize()
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> getRestoresToFinalize() {
+        List<String> restorationIds = new ArrayList<>();
+        Date now = new Date();
+        for (Restoration restoration : restoreRepo.findByStatus(RestoreStatus.RESTORATION_COMPLETE)) {
+            if (restoration.getExpirationDate().before(now)) {
+                restorationIds.add(restoration.getRestorationId());
+            }
+        }
+        return restorationIds;
+    }
+
+    /* (non-Javadoc)
+     * @see org.duracloud.snapshot.service.RestoreManager#finalizeRestore(java.lang.String)
+     */
+    @Override
+    @Transactional
+    public boolean finalizeRestore(String restorationId) {
+        Restoration restoration = restoreRepo.findByRestorationId(restorationId);
+        if (restoration == null || restoration.getStatus() != RestoreStatus.RESTORATION_COMPLETE) {
+            return true;
+        }
+        return finalizeRestore(restoration);
+    }
+
+    private boolean finalizeRestore(Restoration restoration) {
+        DuracloudEndPointConfig destination = restoration.getDestination();
+        ContentStore store =
+            storeClientHelper.create(destination,
+                                     bridgeConfig.getDuracloudUsername(),
+                                     bridgeConfig.getDuracloudPassword());
+        try {
+            String spaceId = destination.getSpaceId();
+            Iterator<String> it = store.getSpaceContents(spaceId);
+            if (!it.hasNext()) { // if space is empty
+                // Call DuraCloud to remove space
+                log.info("Deleting expired restoration space: " + spaceId +
+                         " at host: " + destination.getHost());
+                store.deleteSpace(spaceId);
+
+                // Update restore status
+                validateAndSet(restoration,
+                               RestoreStatus.RESTORATION_EXPIRED,
+                               "Restoration expired");
+                restoration = save(restoration);
+                log.info("Transition of restore " +
+                         restoration.getRestorationId() +
+                         " to expired state completed successfully");
+
+                // Add history event
+                String history =
+                    "[{'" + RESTORE_ACTION_TITLE + "':'" + RESTORE_ACTION_EXPIRED + "'}," +
+                    "{'" + RESTORE_ID_TITLE + "':'" + restoration.getRestorationId() + "'}]";
+                snapshotManager.updateHistory(restoration.getSnapshot(), history);
+                return true;
             }
+            return false;
+        } catch (Exception e) {
+            log.error("Failed to transition restore " +
+                      restoration.getRestorationId() +
+                      " to expired state due to: " + e.getMessage());
+            return false;
         }
     }
 
@@ -0,0 +1,274 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.constant.ManifestFormat;
+import org.duracloud.error.ContentStoreException;
+import org.duracloud.error.NotFoundException;
+import org.duracloud.manifest.ManifestFormatter;
+import org.duracloud.manifest.impl.TsvManifestFormatter;
+import org.duracloud.manifeststitch.StitchedManifestGenerator;
+import org.duracloud.mill.db.model.ManifestItem;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the files of a restoration which have been uploaded to the destination
+ * space, with the checksum the store returned for each, so that a restarted
+ * transfer uploads only the files which were not uploaded before.
+ * <p>
+ * The expected checksum of each file is taken from the md5 manifest of the
+ * restored snapshot, which has been verified against the restored files before
+ * the transfer starts. A file counts as uploaded only while the checksum the
+ * store returned for it matches its expected checksum. Files uploaded whole are
+ * checked against the store by the sync endpoint, so they are recorded with
+ * their expected checksum without reading it back from the store.
+ * <p>
+ * The ledger is reconciled against the destination space before the transfer
+ * starts. With a manifest generator, files the space holds with their expected
+ * checksum are recorded and all other records are dropped, which also covers
+ * records which were not committed before the bridge stopped. Otherwise each
+ * record is checked against the checksum the store holds for the file. Either
+ * way, records of content which has since changed in the space are dropped.
+ */
+public class RestoreUploadLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(RestoreUploadLedger.class);
+
+    private File dbFile;
+    private File md5Manifest;
+    private ContentStore contentStore;
+    private StitchedManifestGenerator generator;
+    private String spaceId;
+
+    private DB db;
+    private CacheCommitter committer;
+    private Map<String, String> expected;
+    private Map<String, String> uploaded;
+
+    /**
+     * @param dbFile       the file in which the ledger is kept
+     * @param md5Manifest  the md5 manifest of the restored snapshot
+     * @param contentStore the store holding the destination space, against which
+     *                     each record is checked if there is no manifest generator
+     * @param generator    generates the manifest of the destination space, or null
+     *                     if each record is to be checked on its own
+     * @param spaceId      the destination space
+     */
+    public RestoreUploadLedger(File dbFile,
+                               File md5Manifest,
+                               ContentStore contentStore,
+                               StitchedManifestGenerator generator,
+                               String spaceId) {
+        this.dbFile = dbFile;
+        this.md5Manifest = md5Manifest;
+        this.contentStore = contentStore;
+        this.generator = generator;
+        this.spaceId = spaceId;
+    }
+
+    /**
+     * Opens the ledger, loading the expected checksums the first time it is opened.
+     *
+     * @param commitBatchSize  the number of records after which a commit is made
+     * @param commitIntervalMs the interval at which pending records are committed
+     * @throws IOException
+     */
+    public synchronized void open(int commitBatchSize, long commitIntervalMs) throws IOException {
+        db = DBMaker.fileDB(dbFile).transactionEnable().closeOnJvmShutdown().make();
+        committer = new CacheCommitter(db, commitBatchSize, commitIntervalMs);
+        expected = db.hashMap("expected", Serializer.STRING, Serializer.STRING).createOrOpen();
+        uploaded = db.hashMap("uploaded", Serializer.STRING, Serializer.STRING).createOrOpen();
+
+        if (expected.isEmpty()) {
+            loadExpected();
+            db.commit();
+        }
+        log.info("Opened upload ledger of space {}: {} of {} files uploaded",
+                 spaceId, uploaded.size(), expected.size());
+    }
+
+    /**
+     * Replaces the records with the files the destination space holds with their
+     * expected checksum, or, without a manifest generator, drops each record
+     * whose file the store does not hold with its expected checksum.
+     *
+     * @throws IOException
+     */
+    public synchronized void reconcile() throws IOException {
+        if (generator == null) {
+            if (contentStore != null) {
+                checkRecords();
+            }
+            return;
+        }
+
+        int recorded = uploaded.size();
+        Map<String, String> confirmed =
+            db.hashMap("confirmed", Serializer.STRING, Serializer.STRING).createOrOpen();
+        confirmed.clear();
+
+        try (BufferedReader reader =
+                 new BufferedReader(new InputStreamReader(generator.generate(spaceId, ManifestFormat.TSV)))) {
+            ManifestFormatter formatter = new TsvManifestFormatter();
+            // skip header
+            if (formatter.getHeader() != null) {
+                reader.readLine();
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ManifestItem item = formatter.parseLine(line);
+                String checksum = item.getContentChecksum();
+                if (checksum != null && checksum.equals(expected.get(item.getContentId()))) {
+                    confirmed.put(item.getContentId(), checksum);
+                }
+            }
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("Unable to read the manifest of space " + spaceId + ": " + ex.getMessage(), ex);
+        }
+
+        uploaded.clear();
+        uploaded.putAll(confirmed);
+        confirmed.clear();
+        db.commit();
+        log.info("Reconciled upload ledger with the manifest of space {}: {} files recorded, {} confirmed",
+                 spaceId, recorded, uploaded.size());
+    }
+
+    private void checkRecords() throws IOException {
+        int recorded = uploaded.size();
+        for (String contentId : new ArrayList<>(uploaded.keySet())) {
+            String checksum;
+            try {
+                checksum = contentStore.getContentProperties(spaceId, contentId).get(ContentStore.CONTENT_CHECKSUM);
+            } catch (NotFoundException ex) {
+                checksum = null;
+            } catch (ContentStoreException ex) {
+                throw new IOException("Unable to check " + contentId + " in space " + spaceId + ": " +
+                                      ex.getMessage(), ex);
+            }
+            if (checksum == null || !checksum.equals(expected.get(contentId))) {
+                uploaded.remove(contentId);
+            } else {
+                uploaded.put(contentId, checksum);
+            }
+        }
+        db.commit();
+        log.info("Checked upload ledger against space {}: {} files recorded, {} confirmed",
+                 spaceId, recorded, uploaded.size());
+    }
+
+    /**
+     * Drops all records, as when the destination space has been created anew.
+     */
+    public synchronized void clear() {
+        if (uploaded == null) {
+            return;
+        }
+        uploaded.clear();
+        db.commit();
+    }
+
+    /**
+     * @param contentId the content id of a restored file
+     * @return true if the file was uploaded with its expected checksum
+     */
+    public boolean isUploaded(String contentId) {
+        if (uploaded == null) {
+            return false;
+        }
+        String checksum = uploaded.get(contentId);
+        return checksum != null && checksum.equals(expected.get(contentId));
+    }
+
+    /**
+     * Records that a restored file has been uploaded.
+     *
+     * @param contentId the content id of the file
+     * @param checksum  the checksum the store returned for the file; the file
+     *                  counts as uploaded only if it is the expected checksum
+     */
+    public void recordUploaded(String contentId, String checksum) {
+        if (expected == null || checksum == null || !expected.containsKey(contentId)) {
+            return;
+        }
+        uploaded.put(contentId, checksum);
+        committer.changed();
+    }
+
+    /**
+     * Records that a restored file has been uploaded with its expected checksum,
+     * for uploads which the store has already checked against the checksum of
+     * the file.
+     *
+     * @param contentId the content id of the file
+     */
+    public void recordUploaded(String contentId) {
+        if (expected == null) {
+            return;
+        }
+        recordUploaded(contentId, expected.get(contentId));
+    }
+
+    /**
+     * @return the number of files recorded as uploaded
+     */
+    public int getUploadedCount() {
+        return uploaded != null ? uploaded.size() : 0;
+    }
+
+    /**
+     * Commits all records and closes the ledger.
+     */
+    public synchronized void close() {
+        if (committer != null) {
+            committer.close();
+            committer = null;
+        }
+        if (db != null) {
+            db.close();
+            db = null;
+        }
+        expected = null;
+        uploaded = null;
+    }
+
+    private void loadExpected() throws IOException {
+        try (BufferedReader reader =
+                 new BufferedReader(new InputStreamReader(new FileInputStream(md5Manifest),
+                                                          StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    ManifestEntry entry = ManifestFileHelper.parseManifestEntry(line);
+                    expected.put(entry.getContentId(), entry.getChecksum());
+                } catch (ParseException ex) {
+                    log.info("Unable to parse line in manifest file {}. message={}. skipping: line={}",
+                             md5Manifest.getAbsolutePath(), ex.getMessage(), line);
+                }
+            }
+        }
+    }
+}
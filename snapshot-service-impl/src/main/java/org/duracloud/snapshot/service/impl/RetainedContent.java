@@ -0,0 +1,131 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.apache.commons.io.FileUtils;
+import org.duracloud.snapshot.common.SnapshotServiceConstants;
+import org.duracloud.snapshot.db.model.DuracloudEndPointConfig;
+
+/**
+ * The content of the most recently staged snapshot of a space, kept on bridge
+ * storage after the snapshot directory is cleaned up so that unchanged content
+ * can be carried forward into the next snapshot of the space. Content files are
+ * hard links to the staged files, so they share storage with the staged files
+ * only while the staged snapshot directory exists. Once it is removed, the
+ * retained content takes up as much space as the content of the staged snapshot,
+ * and it keeps doing so until it is replaced by the content of the space's next
+ * snapshot.
+ */
+public class RetainedContent {
+
+    private static final String SNAPSHOT_NAME_FILE = "retained-snapshot.txt";
+
+    private File retainedDir;
+
+    /**
+     * @param contentRootDir the bridge content root directory
+     * @param source         the space whose content is retained
+     */
+    public RetainedContent(File contentRootDir, DuracloudEndPointConfig source) {
+        this.retainedDir = new File(contentRootDir,
+                                    "retained" + File.separator + source.getHost() +
+                                    File.separator + source.getStoreId() +
+                                    File.separator + source.getSpaceId());
+    }
+
+    /**
+     * @return the directory holding the retained content files
+     */
+    public File getDataDir() {
+        return new File(retainedDir, "data");
+    }
+
+    /**
+     * @return the SHA-256 manifest of the retained snapshot
+     */
+    public File getSha256Manifest() {
+        return new File(retainedDir, SnapshotServiceConstants.MANIFEST_SHA256_TXT_FILE_NAME);
+    }
+
+    /**
+     * @return the name of the snapshot whose content is retained, or null if
+     * no content is retained for the space
+     * @throws IOException
+     */
+    public String getSnapshotName() throws IOException {
+        File nameFile = new File(retainedDir, SNAPSHOT_NAME_FILE);
+        if (!nameFile.exists()) {
+            return null;
+        }
+        return new String(Files.readAllBytes(nameFile.toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Replaces the retained content of the space with the content staged for a
+     * snapshot.
+     *
+     * @param snapshotName the name of the staged snapshot
+     * @param snapshotDir  the directory in which the snapshot was staged
+     * @throws IOException
+     */
+    public void retain(String snapshotName, File snapshotDir) throws IOException {
+        File tempDir = new File(retainedDir.getPath() + ".tmp");
+        FileUtils.deleteDirectory(tempDir);
+        tempDir.mkdirs();
+
+        File stagedDataDir = new File(snapshotDir, "data");
+        if (stagedDataDir.exists()) {
+            linkTree(stagedDataDir.toPath(), new File(tempDir, "data").toPath());
+        }
+        File stagedSha256Manifest =
+            new File(snapshotDir, SnapshotServiceConstants.MANIFEST_SHA256_TXT_FILE_NAME);
+        Files.copy(stagedSha256Manifest.toPath(),
+                   new File(tempDir, SnapshotServiceConstants.MANIFEST_SHA256_TXT_FILE_NAME).toPath());
+        Files.write(new File(tempDir, SNAPSHOT_NAME_FILE).toPath(),
+                    snapshotName.getBytes(StandardCharsets.UTF_8));
+
+        FileUtils.deleteDirectory(retainedDir);
+        Files.move(tempDir.toPath(), retainedDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Creates a hard link to a file, creating any missing parent directories.
+     * An existing file at the link path is left in place.
+     *
+     * @param link   the path of the link to create
+     * @param target the existing file
+     * @throws IOException
+     */
+    public static void link(Path link, Path target) throws IOException {
+        if (Files.exists(link)) {
+            return;
+        }
+        Files.createDirectories(link.getParent());
+        Files.createLink(link, target);
+    }
+
+    private static void linkTree(final Path source, final Path destination) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                link(destination.resolve(source.relativize(file)), file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.duracloud.chunk.manifest.ChunksManifest;
+import org.duracloud.common.model.ContentItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ItemReader;
+
+/**
+ * Hands out content items in separate lanes by size class, each lane with its
+ * own number of items which may be in flight at once. Items which were chunked
+ * on upload to DuraCloud (those listed as chunk manifests) run in the large
+ * lane; all other items run in the small lane. A reading thread is given an item
+ * from whichever lane has capacity, so that a run of large items cannot occupy
+ * every transfer thread while small items wait, or the reverse.
+ * <p>
+ * Items are listed from the delegate reader by a thread of their own, which
+ * keeps up to the lookahead of listed items waiting in the lanes, so that
+ * reading threads and releases never wait behind the listing of a page of
+ * items; only handing items to and from the lanes is done under the lock.
+ * <p>
+ * The writer must call {@link #release(ContentItem)} once it has finished with
+ * each item it was given.
+ */
+public class SizeClassLaneReader implements ItemReader<ContentItem>, StepExecutionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SizeClassLaneReader.class);
+
+    public enum Lane {
+        SMALL, LARGE
+    }
+
+    private ItemReader<ContentItem> delegate;
+    private int lookahead;
+    private Map<Lane, Deque<ContentItem>> pending = new EnumMap<>(Lane.class);
+    private Map<Lane, Integer> available = new EnumMap<>(Lane.class);
+    private boolean listingComplete = false;
+    private Exception listingFailure;
+    private Thread lister;
+    private boolean stopped = false;
+
+    /**
+     * @param delegate         the reader from which content items are listed
+     * @param smallLaneThreads the number of small items which may be in flight at once
+     * @param largeLaneThreads the number of large items which may be in flight at once
+     * @param lookahead        the number of listed items which may wait for a lane
+     */
+    public SizeClassLaneReader(ItemReader<ContentItem> delegate,
+                               int smallLaneThreads,
+                               int largeLaneThreads,
+                               int lookahead) {
+        this.delegate = delegate;
+        this.lookahead = lookahead;
+        for (Lane lane : Lane.values()) {
+            pending.put(lane, new ArrayDeque<>());
+        }
+        available.put(Lane.SMALL, smallLaneThreads);
+        available.put(Lane.LARGE, largeLaneThreads);
+    }
+
+    /**
+     * @param contentItem
+     * @return the lane in which the content item runs
+     */
+    public static Lane classify(ContentItem contentItem) {
+        String contentId = contentItem.getContentId();
+        if (contentId != null && contentId.endsWith(ChunksManifest.manifestSuffix)) {
+            return Lane.LARGE;
+        }
+        return Lane.SMALL;
+    }
+
+    @Override
+    public synchronized ContentItem read() throws Exception {
+        if (lister == null) {
+            lister = new Thread(this::list, "lane-reader-lister");
+            lister.setDaemon(true);
+            lister.start();
+        }
+
+        while (true) {
+            for (Lane lane : Lane.values()) {
+                Deque<ContentItem> items = pending.get(lane);
+                if (available.get(lane) > 0 && !items.isEmpty()) {
+                    available.put(lane, available.get(lane) - 1);
+                    notifyAll();
+                    return items.poll();
+                }
+            }
+
+            if (listingFailure != null) {
+                throw listingFailure;
+            } else if (listingComplete && getPendingCount() == 0) {
+                return null;
+            }
+            // wait for an item to be listed or for capacity in its lane
+            wait();
+        }
+    }
+
+    /**
+     * Lists items from the delegate into their lanes until the listing is
+     * complete, keeping no more than the lookahead waiting.
+     */
+    private void list() {
+        while (true) {
+            synchronized (this) {
+                while (!stopped && getPendingCount() >= lookahead) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (stopped) {
+                    return;
+                }
+            }
+
+            ContentItem contentItem;
+            try {
+                contentItem = delegate.read();
+            } catch (Exception ex) {
+                log.error("Failed to list content items: " + ex.getMessage(), ex);
+                synchronized (this) {
+                    listingFailure = ex;
+                    notifyAll();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                if (contentItem == null) {
+                    listingComplete = true;
+                } else {
+                    pending.get(classify(contentItem)).add(contentItem);
+                }
+                notifyAll();
+            }
+            if (contentItem == null) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the capacity used by a content item to its lane.
+     *
+     * @param contentItem an item returned by {@link #read()}
+     */
+    public synchronized void release(ContentItem contentItem) {
+        Lane lane = classify(contentItem);
+        available.put(lane, available.get(lane) + 1);
+        log.debug("Released {} lane capacity for {}", lane, contentItem.getContentId());
+        notifyAll();
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        if (delegate instanceof StepExecutionListener) {
+            ((StepExecutionListener) delegate).beforeStep(stepExecution);
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        if (delegate instanceof StepExecutionListener) {
+            return ((StepExecutionListener) delegate).afterStep(stepExecution);
+        }
+        return null;
+    }
+
+    private int getPendingCount() {
+        int count = 0;
+        for (Deque<ContentItem> items : pending.values()) {
+            count += items.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.duracloud.common.retry.Retriable;
+import org.duracloud.common.retry.Retrier;
+import org.duracloud.snapshot.db.model.Snapshot;
+import org.duracloud.snapshot.service.SnapshotManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers snapshot content items and adds them to the snapshot in batches
+ * rather than one transaction per item. A batch is written once it reaches the
+ * configured size, once the configured interval has passed since the previous
+ * write, or when {@link #flush()} is called at the end of a step.
+ * <p>
+ * Items which have been buffered but not yet written are lost if the bridge
+ * stops; they are added again when the snapshot is restarted since every item
+ * passes through the writer on a restart.
+ */
+public class SnapshotContentItemBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotContentItemBatcher.class);
+
+    private SnapshotManager snapshotManager;
+    private Snapshot snapshot;
+    private int batchSize;
+    private long flushIntervalMs;
+    private Map<String, Map<String, String>> buffer = new LinkedHashMap<>();
+    private long lastFlush = System.currentTimeMillis();
+
+    /**
+     * @param snapshotManager the snapshot manager to which batches are written
+     * @param snapshot        the snapshot to which the content items belong
+     * @param batchSize       the number of items written in a single batch
+     * @param flushIntervalMs the longest time items are buffered before being written
+     */
+    public SnapshotContentItemBatcher(SnapshotManager snapshotManager,
+                                      Snapshot snapshot,
+                                      int batchSize,
+                                      long flushIntervalMs) {
+        this.snapshotManager = snapshotManager;
+        this.snapshot = snapshot;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    /**
+     * Buffers a content item, writing the buffered batch if it is full or due.
+     *
+     * @param contentId
+     * @param props
+     * @throws IOException if a batch could not be written
+     */
+    public void add(String contentId, Map<String, String> props) throws IOException {
+        Map<String, Map<String, String>> batch = null;
+        synchronized (this) {
+            buffer.put(contentId, props);
+            if (buffer.size() >= batchSize ||
+                System.currentTimeMillis() - lastFlush >= flushIntervalMs) {
+                batch = drain();
+            }
+        }
+        // written outside of the lock so that other writer threads can keep buffering
+        write(batch);
+    }
+
+    /**
+     * Writes any buffered content items.
+     *
+     * @throws IOException if the batch could not be written
+     */
+    public void flush() throws IOException {
+        Map<String, Map<String, String>> batch;
+        synchronized (this) {
+            batch = drain();
+        }
+        write(batch);
+    }
+
+    private Map<String, Map<String, String>> drain() {
+        Map<String, Map<String, String>> batch = buffer;
+        buffer = new LinkedHashMap<>();
+        lastFlush = System.currentTimeMillis();
+        return batch;
+    }
+
+    private void write(final Map<String, Map<String, String>> batch) throws IOException {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            new Retrier().execute(new Retriable() {
+                @Override
+                public Object retry() throws Exception {
+                    snapshotManager.addContentItems(snapshot, batch);
+                    return null;
+                }
+            });
+            log.debug("Added batch of {} content items to snapshot {}", batch.size(), snapshot.getName());
+        } catch (Exception e) {
+            log.error("Failed to add batch of " + batch.size() + " content items to snapshot " +
+                      snapshot + ": " + e.getMessage(), e);
+            throw new IOException(e);
+        }
+    }
+}
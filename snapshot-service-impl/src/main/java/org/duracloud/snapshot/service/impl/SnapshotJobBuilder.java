@@ -16,13 +16,15 @@ import org.duracloud.client.ContentStore;
 import org.duracloud.common.model.ContentItem;
 import org.duracloud.manifeststitch.StitchedManifestGenerator;
 import org.duracloud.retrieval.mgmt.LoggingOutputWriter;
-import org.duracloud.retrieval.source.DuraStoreStitchingRetrievalSource;
-import org.duracloud.retrieval.source.RetrievalSource;
 import org.duracloud.snapshot.SnapshotException;
 import org.duracloud.snapshot.common.SnapshotServiceConstants;
 import org.duracloud.snapshot.db.ContentDirUtils;
 import org.duracloud.snapshot.db.model.DuracloudEndPointConfig;
 import org.duracloud.snapshot.db.model.Snapshot;
+import org.duracloud.snapshot.db.repo.SnapshotContentItemRepo;
+import org.duracloud.snapshot.db.repo.SnapshotRepo;
+import org.duracloud.snapshot.dto.SnapshotStatus;
+import org.duracloud.snapshot.service.BridgeConfiguration;
 import org.duracloud.snapshot.service.SnapshotJobManagerConfig;
 import org.duracloud.snapshot.service.SnapshotManager;
 import org.slf4j.Logger;
@@ -37,7 +39,6 @@ import org.springframework.batch.core.job.builder.SimpleJobBuilder;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.factory.SimpleStepFactoryBean;
 import org.springframework.batch.item.ItemReader;
-import org.springframework.batch.item.ItemWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.task.TaskExecutor;
@@ -55,12 +56,17 @@ public class SnapshotJobBuilder extends AbstractJobBuilder implements BatchJobBu
         SnapshotServiceConstants.MANIFEST_SHA256_TXT_FILE_NAME;
     private static final String MANIFEST_MD5_TXT_FILE_NAME =
         SnapshotServiceConstants.MANIFEST_MD5_TXT_FILE_NAME;
+    // the number of listed items which may wait for a transfer lane with capacity
+    private static final int LANE_LOOKAHEAD = 1000;
     private SnapshotJobExecutionListener jobListener;
     private JobRepository jobRepository;
     private PlatformTransactionManager transactionManager;
     private TaskExecutor taskExecutor;
     private SnapshotManager snapshotManager;
     private StoreClientHelper storeClientHelper;
+    private SnapshotRepo snapshotRepo;
+    private SnapshotContentItemRepo snapshotContentItemRepo;
+    private BandwidthGovernor bandwidthGovernor;
 
     @Autowired
     public SnapshotJobBuilder(SnapshotJobExecutionListener jobListener,
@@ -68,7 +74,10 @@ public class SnapshotJobBuilder extends AbstractJobBuilder implements BatchJobBu
                               PlatformTransactionManager transactionManager,
                               @Qualifier("itemTaskExecutor") TaskExecutor taskExecutor,
                               SnapshotManager snapshotManager,
-                              StoreClientHelper storeClientHelper) {
+                              StoreClientHelper storeClientHelper,
+                              SnapshotRepo snapshotRepo,
+                              SnapshotContentItemRepo snapshotContentItemRepo,
+                              BandwidthGovernor bandwidthGovernor) {
 
         this.jobListener = jobListener;
         this.jobRepository = jobRepository;
@@ -76,6 +85,9 @@ public class SnapshotJobBuilder extends AbstractJobBuilder implements BatchJobBu
         this.taskExecutor = taskExecutor;
         this.snapshotManager = snapshotManager;
         this.storeClientHelper = storeClientHelper;
+        this.snapshotRepo = snapshotRepo;
+        this.snapshotContentItemRepo = snapshotContentItemRepo;
+        this.bandwidthGovernor = bandwidthGovernor;
     }
 
     /* (non-Javadoc)
@@ -98,13 +110,20 @@ public class SnapshotJobBuilder extends AbstractJobBuilder implements BatchJobBu
             List<String> spaces = new ArrayList<>();
             spaces.add(source.getSpaceId());
 
-            RetrievalSource retrievalSource =
-                new DuraStoreStitchingRetrievalSource(contentStore,
-                                                      spaces,
-                                                      false);
+            DigestingRetrievalSource retrievalSource =
+                new DigestingRetrievalSource(contentStore,
+                                             spaces,
+                                             false);
+            retrievalSource.setBandwidthGovernor(bandwidthGovernor, snapshot.getName());
 
-            ItemReader<ContentItem> itemReader =
-                new SpaceItemReader(retrievalSource);
+            ItemReader<ContentItem> itemReader;
+            int prefetchDepth = BridgeConfiguration.getBridgeListingPrefetchDepth();
+            if (prefetchDepth > 0) {
+                log.info("Listing up to {} content items ahead of transfers", prefetchDepth);
+                itemReader = new PrefetchingSpaceItemReader(retrievalSource, prefetchDepth);
+            } else {
+                itemReader = new SpaceItemReader(retrievalSource);
+            }
 
             File contentDir =
                 new File(ContentDirUtils.getDestinationPath(snapshot.getName(),
@@ -117,11 +136,12 @@ public class SnapshotJobBuilder extends AbstractJobBuilder implements BatchJobBu
             File md5File = new File(contentDir, MANIFEST_MD5_TXT_FILE_NAME);
             File sha256File = new File(contentDir, MANIFEST_SHA256_TXT_FILE_NAME);
 
+            StitchedManifestGenerator manifestGenerator = new StitchedManifestGenerator(contentStore);
             SpaceManifestSnapshotManifestVerifier verifier =
                 new SpaceManifestSnapshotManifestVerifier(md5File,
-                                                          new StitchedManifestGenerator(contentStore),
+                                                          manifestGenerator,
                                                           source.getSpaceId());
-            ItemWriter itemWriter =
+            SpaceItemWriter itemWriter =
                 new SpaceItemWriter(snapshot,
                                     retrievalSource,
                                     contentDir,
@@ -132,6 +152,98 @@ public class SnapshotJobBuilder extends AbstractJobBuilder implements BatchJobBu
                                     snapshotManager,
                                     verifier);
 
+            if (BridgeConfiguration.isBridgeIncrementalSnapshots()) {
+                Snapshot previous = findPreviousCompleteSnapshot(snapshot);
+                if (previous != null) {
+                    log.info("Carrying forward unchanged items from snapshot {}", previous.getName());
+                    itemWriter.setIncrementalSnapshotSeeder(
+                        new IncrementalSnapshotSeeder(previous.getName(),
+                                                      snapshotContentItemRepo,
+                                                      new RetainedContent(config.getContentRootDir(), source),
+                                                      manifestGenerator,
+                                                      source.getSpaceId()));
+                }
+            }
+
+            if (BridgeConfiguration.isBridgeInlineVerification()) {
+                log.info("Verifying items against the space manifest as they are written");
+                itemWriter.setInlineManifestVerifier(
+                    new InlineManifestVerifier(manifestGenerator,
+                                               source.getSpaceId(),
+                                               new File(contentDir, snapshot.getName() + "-space-manifest.db")));
+            }
+
+            if (BridgeConfiguration.isBridgeContentAddressedStore()) {
+                itemWriter.setContentAddressedStore(new ContentAddressedStore(config.getContentRootDir(),
+                                                                              source.getHost()));
+            }
+
+            int chunkThreadsPerItem = BridgeConfiguration.getBridgeChunkThreadsPerItem();
+            boolean resumable = BridgeConfiguration.isBridgeResumableRetrieval();
+            PartialFileDirectory partialFiles =
+                new PartialFileDirectory(contentDir, new File(contentDir, snapshot.getName() + "-partial"));
+            itemWriter.setPartialFileDirectory(partialFiles);
+            if (chunkThreadsPerItem > 1 || resumable) {
+                chunkThreadsPerItem = Math.max(chunkThreadsPerItem, 1);
+                log.info("Retrieving chunked items using {} threads per item", chunkThreadsPerItem);
+                ParallelChunkRetriever chunkRetriever =
+                    new ParallelChunkRetriever(contentStore,
+                                               partialFiles,
+                                               chunkThreadsPerItem,
+                                               chunkThreadsPerItem * BridgeConfiguration.getBridgeThreadsPerJob());
+                chunkRetriever.setResumable(resumable);
+                chunkRetriever.setBandwidthGovernor(bandwidthGovernor, snapshot.getName());
+                itemWriter.setParallelChunkRetriever(chunkRetriever);
+            }
+
+            if (resumable) {
+                log.info("Resuming interrupted retrievals from partial files");
+                RangedContentRetriever rangedRetriever = new RangedContentRetriever(contentStore, partialFiles);
+                rangedRetriever.setBandwidthGovernor(bandwidthGovernor, snapshot.getName());
+                itemWriter.setRangedContentRetriever(rangedRetriever);
+            }
+
+            int contentItemBatchSize = BridgeConfiguration.getBridgeContentItemBatchSize();
+            if (contentItemBatchSize > 1) {
+                log.info("Adding snapshot content items in batches of {}", contentItemBatchSize);
+                itemWriter.setContentItemBatcher(
+                    new SnapshotContentItemBatcher(snapshotManager,
+                                                   snapshot,
+                                                   contentItemBatchSize,
+                                                   BridgeConfiguration.getBridgeContentItemFlushIntervalMs()));
+            }
+
+            int cacheCommitBatchSize = BridgeConfiguration.getBridgeCacheCommitBatchSize();
+            if (cacheCommitBatchSize > 1) {
+                log.info("Committing resume cache changes in groups of {}", cacheCommitBatchSize);
+                itemWriter.setCacheCommitPolicy(cacheCommitBatchSize,
+                                                BridgeConfiguration.getBridgeCacheCommitIntervalMs());
+            }
+
+            int manifestAppendQueueSize = BridgeConfiguration.getBridgeManifestAppendQueueSize();
+            if (manifestAppendQueueSize > 0) {
+                log.info("Appending manifest entries through a queue of {}", manifestAppendQueueSize);
+                itemWriter.setManifestAppender(
+                    new ManifestAppender(manifestAppendQueueSize,
+                                         Math.max(BridgeConfiguration.getBridgeManifestFlushEvery(), 1),
+                                         BridgeConfiguration.getBridgeManifestFlushIntervalMs(),
+                                         BridgeConfiguration.isBridgeManifestSync()));
+            }
+
+            itemWriter.setConcurrencyLimiter(createConcurrencyLimiter(snapshot.getName()));
+            itemWriter.setBandwidthGovernor(bandwidthGovernor);
+
+            int largeLaneThreads = BridgeConfiguration.getBridgeLargeLaneThreadsPerJob();
+            int threadsPerJob = getMaxThreadsPerJob();
+            if (largeLaneThreads > 0) {
+                log.info("Transferring items in lanes: small={} threads, large={} threads",
+                         threadsPerJob, largeLaneThreads);
+                SizeClassLaneReader laneReader =
+                    new SizeClassLaneReader(itemReader, threadsPerJob, largeLaneThreads, LANE_LOOKAHEAD);
+                itemWriter.setLaneReader(laneReader);
+                itemReader = laneReader;
+            }
+
             SimpleStepFactoryBean<ContentItem, File> stepFactory =
                 new SimpleStepFactoryBean<>();
             stepFactory.setJobRepository(jobRepository);
@@ -141,6 +253,9 @@ public class SnapshotJobBuilder extends AbstractJobBuilder implements BatchJobBu
             stepFactory.setItemWriter(itemWriter);
             stepFactory.setCommitInterval(1);
             setThrottleLimitForContentTransfers(stepFactory);
+            if (largeLaneThreads > 0) {
+                stepFactory.setThrottleLimit(threadsPerJob + largeLaneThreads);
+            }
             stepFactory.setTaskExecutor(taskExecutor);
             Step step = (Step) stepFactory.getObject();
 
@@ -161,6 +276,19 @@ public class SnapshotJobBuilder extends AbstractJobBuilder implements BatchJobBu
         return job;
     }
 
+    private Snapshot findPreviousCompleteSnapshot(Snapshot snapshot) {
+        DuracloudEndPointConfig source = snapshot.getSource();
+        Snapshot previous = null;
+        for (Snapshot candidate : snapshotRepo.findBySourceHostAndSourceStoreIdAndStatus(
+            source.getHost(), source.getStoreId(), SnapshotStatus.SNAPSHOT_COMPLETE)) {
+            if (candidate.getSource().getSpaceId().equals(source.getSpaceId()) &&
+                (previous == null || candidate.getSnapshotDate().after(previous.getSnapshotDate()))) {
+                previous = candidate;
+            }
+        }
+        return previous;
+    }
+
     /* (non-Javadoc)
      * @see org.duracloud.snapshot.manager.spring.batch.BatchJobBuilder#buildIdentifyingJobParameters(java.lang.Object)
      */
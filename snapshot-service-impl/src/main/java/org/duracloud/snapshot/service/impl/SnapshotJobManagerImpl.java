@@ -10,6 +10,9 @@ package org.duracloud.snapshot.service.impl;
 import java.io.File;
 import java.text.MessageFormat;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import org.apache.commons.io.FileUtils;
 import org.duracloud.client.ContentStore;
@@ -71,6 +74,10 @@ import org.springframework.transaction.annotation.Transactional;
 public class SnapshotJobManagerImpl implements SnapshotJobManager {
 
     private static final Logger log = LoggerFactory.getLogger(SnapshotJobManagerImpl.class);
+
+    // how long a space size looked up to estimate staging space is reused
+    private static final long SPACE_SIZE_CACHE_MS = 10 * 60 * 1000;
+
     private JobLauncher jobLauncher;
     private JobRepository jobRepository;
     private SnapshotRepo snapshotRepo;
@@ -79,6 +86,8 @@ public class SnapshotJobManagerImpl implements SnapshotJobManager {
     private BatchJobBuilderManager builderManager;
     private StoreClientHelper storeClientHelper;
     private EventLog eventLog;
+    private StagingCapacity stagingCapacity;
+    private Map<String, long[]> spaceSizes = new ConcurrentHashMap<>();
 
     @Autowired
     public SnapshotJobManagerImpl(SnapshotRepo snapshotRepo,
@@ -98,6 +107,14 @@ public class SnapshotJobManagerImpl implements SnapshotJobManager {
         this.eventLog = eventLog;
     }
 
+    /**
+     * @param stagingCapacity the staging space to reserve for each job
+     */
+    @Autowired(required = false)
+    public void setStagingCapacity(StagingCapacity stagingCapacity) {
+        this.stagingCapacity = stagingCapacity;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -187,6 +204,7 @@ public class SnapshotJobManagerImpl implements SnapshotJobManager {
         }
 
         try {
+            describeNextJob(entity, estimateStagingBytes(entity));
             JobExecution execution = jobLauncher.run(job, params);
             log.info("restarted job execution = {} for {}:  newly executed job execution id = {}",
                      execution,
@@ -199,8 +217,128 @@ public class SnapshotJobManagerImpl implements SnapshotJobManager {
                                            entity,
                                            e.getMessage()),
                       e);
+        } finally {
+            FairShareJobScheduler.clearNextJob();
+        }
+
+    }
+
+    /**
+     * Describes the job about to be launched for the entity to the job scheduler
+     * so that it can be queued fairly.
+     *
+     * @param entity        a snapshot or restoration
+     * @param requiredBytes the bytes the job is expected to stage, or 0 if unknown
+     */
+    private void describeNextJob(Object entity, long requiredBytes) {
+        if (entity instanceof Snapshot) {
+            Snapshot snapshot = (Snapshot) entity;
+            FairShareJobScheduler.setNextJob(snapshot.getName(),
+                                             getTenant(snapshot, snapshot::getSource),
+                                             FairShareJobScheduler.Priority.SNAPSHOT,
+                                             requiredBytes,
+                                             getStagingDir(entity));
+        } else if (entity instanceof Restoration) {
+            Restoration restoration = (Restoration) entity;
+            FairShareJobScheduler.setNextJob(restoration.getRestorationId(),
+                                             getTenant(restoration.getSnapshot(), restoration::getDestination),
+                                             FairShareJobScheduler.Priority.RESTORE,
+                                             requiredBytes,
+                                             getStagingDir(entity));
+        }
+    }
+
+    /**
+     * @param entity a snapshot or restoration
+     * @return the directory in which the entity's job stages its content
+     */
+    private File getStagingDir(Object entity) {
+        if (entity instanceof Snapshot) {
+            return new File(ContentDirUtils.getDestinationPath(((Snapshot) entity).getName(),
+                                                               config.getContentRootDir()));
+        } else if (entity instanceof Restoration) {
+            return new File(ContentDirUtils.getSourcePath(((Restoration) entity).getRestorationId(),
+                                                          config.getContentRootDir()));
+        }
+        return null;
+    }
+
+    /**
+     * Estimates the space a job will need on the staging volume: the size of the
+     * space for a snapshot, or the size of the snapshot for a restoration, less
+     * anything already staged by an earlier run of the job. Space sizes are
+     * looked up at most once every {@link #SPACE_SIZE_CACHE_MS}, so that jobs
+     * submitted or resumed together do not each wait on DuraCloud.
+     *
+     * @param entity a snapshot or restoration
+     * @return the estimated bytes, or 0 if staging admission is disabled or the
+     * size is not known
+     */
+    private long estimateStagingBytes(Object entity) {
+        if (stagingCapacity == null || !stagingCapacity.isEnabled()) {
+            return 0;
         }
 
+        try {
+            long required;
+            if (entity instanceof Snapshot) {
+                Snapshot snapshot = (Snapshot) entity;
+                required = getSpaceSize(snapshot.getSource());
+                if (required < 0) {
+                    log.warn("Size of space {} is not known; staging space will not be reserved for {}",
+                             snapshot.getSource().getSpaceId(), snapshot.getName());
+                    return 0;
+                }
+            } else if (entity instanceof Restoration) {
+                Long size = ((Restoration) entity).getSnapshot().getTotalSizeInBytes();
+                required = size != null ? size : 0;
+            } else {
+                return 0;
+            }
+
+            File stagingDir = getStagingDir(entity);
+            long staged = stagingDir.exists() ? FileUtils.sizeOfDirectory(stagingDir) : 0;
+            return Math.max(required - staged, 0);
+        } catch (Exception ex) {
+            log.warn("Unable to estimate the staging space needed for {}: {}", entity, ex.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * @param source
+     * @return the size of the space, or -1 if it is not known
+     * @throws Exception
+     */
+    private long getSpaceSize(DuracloudEndPointConfig source) throws Exception {
+        String key = source.getHost() + "/" + source.getStoreId() + "/" + source.getSpaceId();
+        long now = System.currentTimeMillis();
+        long[] cached = spaceSizes.get(key);
+        if (cached != null && now - cached[1] < SPACE_SIZE_CACHE_MS) {
+            return cached[0];
+        }
+
+        ContentStore contentStore =
+            storeClientHelper.create(source, config.getDuracloudUsername(), config.getDuracloudPassword());
+        String size = contentStore.getSpaceProperties(source.getSpaceId()).get(ContentStore.SPACE_SIZE);
+        long bytes = size != null ? Long.parseLong(size) : -1;
+        spaceSizes.put(key, new long[] {bytes, now});
+        return bytes;
+    }
+
+    /**
+     * @param snapshot the snapshot of the job, if any
+     * @param endpoint supplies the job's endpoint, which is only looked up when
+     *                 the snapshot has no member id
+     * @return the member id of the snapshot, or else the host of the endpoint
+     */
+    private String getTenant(Snapshot snapshot, Supplier<DuracloudEndPointConfig> endpoint) {
+        String memberId = snapshot != null ? snapshot.getMemberId() : null;
+        if (memberId != null) {
+            return memberId;
+        }
+        DuracloudEndPointConfig endpointConfig = endpoint.get();
+        return endpointConfig != null ? endpointConfig.getHost() : "unknown";
     }
 
     /* (non-Javadoc)
@@ -225,10 +363,16 @@ public class SnapshotJobManagerImpl implements SnapshotJobManager {
 
         log.debug("executing job for {}", entity);
         try {
+            long requiredBytes = estimateStagingBytes(entity);
+            if (stagingCapacity != null && !stagingCapacity.couldFit(requiredBytes)) {
+                throw new SnapshotException("Not enough space on the staging volume for " + entity +
+                                            ": " + requiredBytes + " bytes are needed", null);
+            }
             @SuppressWarnings("rawtypes")
             BatchJobBuilder builder = this.builderManager.getBuilder(entity);
             Job job = builder.buildJob(entity, config);
             JobParameters params = builder.buildJobParameters(entity);
+            describeNextJob(entity, requiredBytes);
             JobExecution execution = jobLauncher.run(job, params);
             BatchStatus status = execution.getStatus();
             log.info("executed  {} using parameters {}: jobexecution={}, execution status={}",
@@ -241,6 +385,8 @@ public class SnapshotJobManagerImpl implements SnapshotJobManager {
             String message = "Error running job based on " + entity + ": " + e.getMessage();
             log.error(message, e);
             throw new SnapshotException(e.getMessage(), e);
+        } finally {
+            FairShareJobScheduler.clearNextJob();
         }
     }
 
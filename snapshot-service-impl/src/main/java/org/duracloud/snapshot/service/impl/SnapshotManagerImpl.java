@@ -9,19 +9,18 @@ package org.duracloud.snapshot.service.impl;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.sql.Timestamp;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sql.DataSource;
 
 import org.apache.commons.io.FileUtils;
 import org.duracloud.client.ContentStore;
@@ -33,13 +32,13 @@ import org.duracloud.common.retry.Retriable;
 import org.duracloud.common.retry.Retrier;
 import org.duracloud.common.util.ChecksumUtil;
 import org.duracloud.common.util.ChecksumUtil.Algorithm;
-import org.duracloud.common.util.IOUtil;
 import org.duracloud.error.ContentStoreException;
 import org.duracloud.error.NotFoundException;
 import org.duracloud.snapshot.SnapshotException;
 import org.duracloud.snapshot.SnapshotNotFoundException;
 import org.duracloud.snapshot.common.SnapshotServiceConstants;
 import org.duracloud.snapshot.db.ContentDirUtils;
+import org.duracloud.snapshot.db.SnapshotDatabaseConfig;
 import org.duracloud.snapshot.db.model.DuracloudEndPointConfig;
 import org.duracloud.snapshot.db.model.Snapshot;
 import org.duracloud.snapshot.db.model.SnapshotContentItem;
@@ -56,6 +55,8 @@ import org.duracloud.snapshot.service.SnapshotManagerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -73,7 +74,14 @@ public class SnapshotManagerImpl implements SnapshotManager {
                                                     SnapshotServiceConstants.MANIFEST_MD5_TXT_FILE_NAME,
                                                     SnapshotServiceConstants.MANIFEST_SHA256_TXT_FILE_NAME};
 
-    private Map<String, Date> lastCleanupFailureNotificationBySnapshot = new HashMap<String, Date>();
+    // a row already present for the (snapshot_id, content_id_hash) unique key is
+    // left as it is; unlike INSERT IGNORE, any other error still fails the insert.
+    private static final String INSERT_CONTENT_ITEM_SQL =
+        "INSERT INTO snapshot_content_item " +
+        "(modified, content_id, content_id_hash, metadata, snapshot_id) VALUES (?, ?, ?, ?, ?) " +
+        "ON DUPLICATE KEY UPDATE id = id";
+
+    private Map<String, Date> lastCleanupFailureNotificationBySnapshot = new ConcurrentHashMap<>();
 
     //by default 1 day
     private long secondsBetweenCleanupFailureNotifications = 86400;
@@ -101,9 +109,20 @@ public class SnapshotManagerImpl implements SnapshotManager {
     @Autowired
     private EventLog eventLog;
 
+    private JdbcTemplate jdbcTemplate;
+
     public SnapshotManagerImpl() {
     }
 
+    /**
+     * @param dataSource the data source against which batched content item inserts are made
+     */
+    @Autowired
+    public void setDataSource(@Qualifier(SnapshotDatabaseConfig.SNAPSHOT_REPO_DATA_SOURCE_BEAN)
+                              DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
     /**
      * @param snapshotContentItemRepo the snapshotContentItemRepo to set
      */
@@ -170,6 +189,41 @@ public class SnapshotManagerImpl implements SnapshotManager {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.duracloud.snapshot.service.SnapshotManager#addContentItems(
+     *  org.duracloud.snapshot.db.model.Snapshot, java.util.Map)
+     */
+    @Override
+    @Transactional
+    public void addContentItems(Snapshot snapshot,
+                                Map<String, Map<String, String>> contentItems)
+        throws SnapshotException {
+        if (contentItems.isEmpty()) {
+            return;
+        }
+
+        try {
+            ChecksumUtil checksumUtil = createChecksumGenerator();
+            Timestamp modified = new Timestamp(System.currentTimeMillis());
+            List<Object[]> rows = new ArrayList<>(contentItems.size());
+            for (Map.Entry<String, Map<String, String>> entry : contentItems.entrySet()) {
+                String contentId = entry.getKey();
+                rows.add(new Object[] {modified,
+                                       contentId,
+                                       checksumUtil.generateChecksum(contentId),
+                                       PropertiesSerializer.serialize(entry.getValue()),
+                                       snapshot.getId()});
+            }
+            // the unique key on (snapshot_id, content_id_hash) causes items which
+            // were added by a previous run of the snapshot to be skipped.
+            this.jdbcTemplate.batchUpdate(INSERT_CONTENT_ITEM_SQL, rows);
+        } catch (Exception ex) {
+            throw new SnapshotException("failed to add content items: " + ex.getMessage(), ex);
+        }
+    }
+
     @Override
     @Transactional
     public Snapshot addAlternateSnapshotIds(Snapshot snapshot, List<String> alternateIds)
@@ -202,40 +256,24 @@ public class SnapshotManagerImpl implements SnapshotManager {
                 ContentDirUtils.getDestinationPath(snapshot.getName(),
                                                    BridgeConfiguration.getContentRootDir()));
 
-            File zipFile = zipMetadata(snapshotId, snapshotDir);
-
             DuracloudEndPointConfig source = snapshot.getSource();
 
             ContentStore store = getContentStore(source);
 
             ensureMetadataSpaceExists(store);
 
-            String zipChecksum = createChecksumGenerator().generateChecksum(zipFile);
+            uploadMetadata(store, snapshotId, snapshotDir);
 
-            try {
-                new Retrier(4, 1000, 2).execute(new Retriable() {
-                    public Object retry() throws Exception {
-                        try (FileInputStream zipStream = new FileInputStream(zipFile)) {
-                            return store.addContent(Constants.SNAPSHOT_METADATA_SPACE,
-                                                    zipFile.getName(),
-                                                    zipStream,
-                                                    zipFile.length(),
-                                                    "application/zip",
-                                                    zipChecksum,
-                                                    null);
-                        }
-                    }
-                });
-            } catch (Exception ex) {
-                log.error("failed to upload snapshot zip ("
-                          + zipFile.getAbsolutePath() + ") to duracloud: " + ex.getMessage(), ex);
-                throw new Exception(ex);
-            } finally {
-                zipFile.delete();
+            if (BridgeConfiguration.isBridgeIncrementalSnapshots()) {
+                retainContent(snapshot, snapshotDir);
             }
 
             FileUtils.deleteDirectory(snapshotDir);
 
+            if (BridgeConfiguration.isBridgeContentAddressedStore()) {
+                collectGarbage();
+            }
+
             String spaceId = source.getSpaceId();
             // Call DuraCloud to clean up snapshot
             getSnapshotTaskClient(source).cleanupSnapshot(spaceId);
@@ -250,6 +288,27 @@ public class SnapshotManagerImpl implements SnapshotManager {
         }
     }
 
+    private void retainContent(Snapshot snapshot, File snapshotDir) {
+        try {
+            new RetainedContent(BridgeConfiguration.getContentRootDir(), snapshot.getSource())
+                .retain(snapshot.getName(), snapshotDir);
+            log.info("retained content of snapshot {} for the next snapshot of the space",
+                     snapshot.getName());
+        } catch (IOException ex) {
+            log.warn("failed to retain content of snapshot " + snapshot.getName() +
+                     "; the next snapshot of the space will retrieve all items: " + ex.getMessage(), ex);
+        }
+    }
+
+    private void collectGarbage() {
+        try {
+            new ContentAddressedStore(BridgeConfiguration.getContentRootDir()).collectGarbage();
+        } catch (IOException ex) {
+            log.warn("failed to remove unreferenced content from the content addressed store: " +
+                     ex.getMessage(), ex);
+        }
+    }
+
     /**
      * @return
      */
@@ -307,26 +366,78 @@ public class SnapshotManagerImpl implements SnapshotManager {
     }
 
     /**
+     * Zips the snapshot metadata files and uploads the zip to the metadata space.
+     * The zip is either streamed to DuraCloud as it is packaged, with the
+     * checksum DuraCloud computes checked against the one computed as the zip
+     * was sent, or written to the snapshot directory and uploaded from there.
+     *
+     * @param store
      * @param snapshotId
      * @param snapshotDir
-     * @return
-     * @throws FileNotFoundException
-     * @throws IOException
+     * @throws Exception
      */
-    private File zipMetadata(String snapshotId, File snapshotDir)
-        throws FileNotFoundException, IOException {
-
-        File zipFile = new File(snapshotDir, snapshotId + ".zip");
-
-        FileOutputStream fileOutputStream = new FileOutputStream(zipFile);
-        ZipOutputStream zipOs = new ZipOutputStream(fileOutputStream);
-
+    private void uploadMetadata(ContentStore store, String snapshotId, File snapshotDir) throws Exception {
+        List<File> files = new ArrayList<>();
         for (String file : METADATA_FILENAMES) {
-            IOUtil.addFileToZipOutputStream(new File(snapshotDir, file), zipOs);
+            files.add(new File(snapshotDir, file));
         }
+        MetadataZipPackager packager = new MetadataZipPackager(files);
+        String zipName = snapshotId + ".zip";
 
-        zipOs.close();
-        return zipFile;
+        if (BridgeConfiguration.isBridgeStreamingMetadataUpload()) {
+            try {
+                new Retrier(4, 1000, 2).execute(new Retriable() {
+                    public Object retry() throws Exception {
+                        try (MetadataZipPackager.PackagingStream zipStream = packager.stream()) {
+                            // the zip is packaged only once, so its length and
+                            // checksum are not known until it has been sent
+                            String stored = store.addContent(Constants.SNAPSHOT_METADATA_SPACE,
+                                                             zipName,
+                                                             zipStream,
+                                                             -1,
+                                                             "application/zip",
+                                                             null,
+                                                             null);
+                            MetadataZipPackager.Packaged zip = zipStream.getPackaged();
+                            if (zip == null || !zip.getChecksum().equals(stored)) {
+                                throw new IOException("Checksum of " + zipName + " stored in DuraCloud (" + stored +
+                                                      ") does not match the zip sent (" +
+                                                      (zip != null ? zip.getChecksum() : "incomplete") + ")");
+                            }
+                            return stored;
+                        }
+                    }
+                });
+            } catch (Exception ex) {
+                log.error("failed to stream snapshot zip (" + zipName + ") to duracloud: " + ex.getMessage(), ex);
+                throw new Exception(ex);
+            }
+            return;
+        }
+
+        File zipFile = new File(snapshotDir, zipName);
+        try {
+            MetadataZipPackager.Packaged zip = packager.writeTo(zipFile);
+            new Retrier(4, 1000, 2).execute(new Retriable() {
+                public Object retry() throws Exception {
+                    try (FileInputStream zipStream = new FileInputStream(zipFile)) {
+                        return store.addContent(Constants.SNAPSHOT_METADATA_SPACE,
+                                                zipFile.getName(),
+                                                zipStream,
+                                                zip.getLength(),
+                                                "application/zip",
+                                                zip.getChecksum(),
+                                                null);
+                    }
+                }
+            });
+        } catch (Exception ex) {
+            log.error("failed to upload snapshot zip ("
+                      + zipFile.getAbsolutePath() + ") to duracloud: " + ex.getMessage(), ex);
+            throw new Exception(ex);
+        } finally {
+            zipFile.delete();
+        }
     }
 
     /**
@@ -400,64 +511,97 @@ public class SnapshotManagerImpl implements SnapshotManager {
         List<Snapshot> snapshots =
             this.snapshotRepo.findByStatusOrderBySnapshotDateAsc(SnapshotStatus.CLEANING_UP);
         for (Snapshot snapshot : snapshots) {
-            DuracloudEndPointConfig source = snapshot.getSource();
-            ContentStore store = getContentStore(source);
-            String snapshotId = snapshot.getName();
-            try {
-                String spaceId = source.getSpaceId();
-                Iterator<String> it = store.getSpaceContents(spaceId);
-                if (!it.hasNext()) {
-                    // Call DuraCloud to complete snapshot
-                    log.debug("notifying task provider that snapshot " +
-                              "is complete for space " + spaceId);
-                    CompleteSnapshotTaskResult result =
-                        getSnapshotTaskClient(source).completeSnapshot(spaceId);
-                    log.info("snapshot complete call to task provider performed " +
-                             "for space " + spaceId + ": result = " + result.getResult());
-
-                    //update snapshot status and notify users
-                    cleanupComplete(snapshot);
-                } else {
-
-                    //if snapshot has not been in the CLEANING_UP state
-                    //for more than three days, send a warning.
-                    Calendar c = Calendar.getInstance();
-                    int maxDays = MAX_DAYS_IN_CLEANUP;
-                    c.add(Calendar.DATE, -1 * maxDays);
-                    if (snapshot.getModified().before(c.getTime())) {
-                        //only send a warning if a notification has not already been sent
-                        //within secondsBetweenCleanupFailureNotifications
-                        Date lastNotification = this.lastCleanupFailureNotificationBySnapshot.get(snapshotId);
-                        Date nextNotification = new Date();
-                        if (lastNotification != null) {
-                            nextNotification = new Date(
-                                lastNotification.getTime() + (secondsBetweenCleanupFailureNotifications * 1000));
-                        }
+            finalizeSnapshot(snapshot);
+        }
+    }
 
-                        if (nextNotification.getTime() <= System.currentTimeMillis()) {
-                            String subject = MessageFormat.format(
-                                "Snapshot cleanup has not completed in over {0} days for snapshot: {1}",
-                                maxDays, snapshotId);
+    /* (non-Javadoc)
+     * @see org.duracloud.snapshot.service.SnapshotManager#getSnapshotsToFinalize()
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> getSnapshotsToFinalize() {
+        List<String> snapshotIds = new ArrayList<>();
+        for (Snapshot snapshot : this.snapshotRepo.findByStatusOrderBySnapshotDateAsc(SnapshotStatus.CLEANING_UP)) {
+            snapshotIds.add(snapshot.getName());
+        }
+        return snapshotIds;
+    }
 
-                            String body = subject + "\n\nSnapshot object=>" + snapshot;
+    /* (non-Javadoc)
+     * @see org.duracloud.snapshot.service.SnapshotManager#finalizeSnapshot(java.lang.String)
+     */
+    @Override
+    @Transactional
+    public boolean finalizeSnapshot(String snapshotId) {
+        Snapshot snapshot = this.snapshotRepo.findByName(snapshotId);
+        if (snapshot == null || snapshot.getStatus() != SnapshotStatus.CLEANING_UP) {
+            return true;
+        }
+        return finalizeSnapshot(snapshot);
+    }
 
-                            String[] recipients = this.bridgeConfig.getDuracloudEmailAddresses();
-                            log.warn(body + "  Sending notification to duracloud admins: {} ", recipients);
+    private boolean finalizeSnapshot(Snapshot snapshot) {
+        DuracloudEndPointConfig source = snapshot.getSource();
+        ContentStore store = getContentStore(source);
+        String snapshotId = snapshot.getName();
+        try {
+            String spaceId = source.getSpaceId();
+            Iterator<String> it = store.getSpaceContents(spaceId);
+            if (!it.hasNext()) {
+                // Call DuraCloud to complete snapshot
+                log.debug("notifying task provider that snapshot " +
+                          "is complete for space " + spaceId);
+                CompleteSnapshotTaskResult result =
+                    getSnapshotTaskClient(source).completeSnapshot(spaceId);
+                log.info("snapshot complete call to task provider performed " +
+                         "for space " + spaceId + ": result = " + result.getResult());
+
+                //update snapshot status and notify users
+                cleanupComplete(snapshot);
+                return true;
+            } else {
+
+                //if snapshot has not been in the CLEANING_UP state
+                //for more than three days, send a warning.
+                Calendar c = Calendar.getInstance();
+                int maxDays = MAX_DAYS_IN_CLEANUP;
+                c.add(Calendar.DATE, -1 * maxDays);
+                if (snapshot.getModified().before(c.getTime())) {
+                    //only send a warning if a notification has not already been sent
+                    //within secondsBetweenCleanupFailureNotifications
+                    Date lastNotification = this.lastCleanupFailureNotificationBySnapshot.get(snapshotId);
+                    Date nextNotification = new Date();
+                    if (lastNotification != null) {
+                        nextNotification = new Date(
+                            lastNotification.getTime() + (secondsBetweenCleanupFailureNotifications * 1000));
+                    }
 
-                            if (recipients.length > 0) {
-                                this.notificationManager.sendNotification(NotificationType.EMAIL,
-                                                                          subject,
-                                                                          body,
-                                                                          recipients);
-                                this.lastCleanupFailureNotificationBySnapshot.put(snapshotId, new Date());
-                            }
-                        }
+                    if (nextNotification.getTime() <= System.currentTimeMillis()) {
+                        String subject = MessageFormat.format(
+                            "Snapshot cleanup has not completed in over {0} days for snapshot: {1}",
+                            maxDays, snapshotId);
 
+                        String body = subject + "\n\nSnapshot object=>" + snapshot;
+
+                        String[] recipients = this.bridgeConfig.getDuracloudEmailAddresses();
+                        log.warn(body + "  Sending notification to duracloud admins: {} ", recipients);
+
+                        if (recipients.length > 0) {
+                            this.notificationManager.sendNotification(NotificationType.EMAIL,
+                                                                      subject,
+                                                                      body,
+                                                                      recipients);
+                            this.lastCleanupFailureNotificationBySnapshot.put(snapshotId, new Date());
+                        }
                     }
+
                 }
-            } catch (Exception e) {
-                log.error("failed to cleanup " + source);
+                return false;
             }
+        } catch (Exception e) {
+            log.error("failed to cleanup " + source);
+            return false;
         }
     }
 
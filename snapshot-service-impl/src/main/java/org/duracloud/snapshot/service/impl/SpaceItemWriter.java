@@ -21,11 +21,12 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.time.StopWatch;
+import org.duracloud.chunk.manifest.ChunksManifest;
 import org.duracloud.chunk.util.ChunkUtil;
 import org.duracloud.client.ContentStore;
 import org.duracloud.common.constant.Constants;
@@ -65,10 +66,15 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
     private static final Logger log =
         LoggerFactory.getLogger(SpaceItemWriter.class);
 
+    // the properties file is rebuilt from the resume cache on restart, so it
+    // need not be flushed after every entry
+    private static final int PROPS_FLUSH_EVERY = 100;
+
     private RetrievalSource retrievalSource;
     private File contentDir;
     private OutputWriter outputWriter;
     private BufferedWriter propsWriter;
+    private ContentPropertiesJsonWriter propsJsonWriter;
     private BufferedWriter md5Writer;
     private BufferedWriter sha256Writer;
     private ContentItem snapshotPropsContentItem;
@@ -86,6 +92,20 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
     private DB db;
     private File dbFile;
     private int totalChecksumsPerformed = 0;
+    private ParallelChunkRetriever parallelChunkRetriever;
+    private SnapshotContentItemBatcher contentItemBatcher;
+    private CacheCommitter cacheCommitter;
+    private SizeClassLaneReader laneReader;
+    private IncrementalSnapshotSeeder incrementalSnapshotSeeder;
+    private ContentAddressedStore contentAddressedStore;
+    private RangedContentRetriever rangedContentRetriever;
+    private PartialFileDirectory partialFiles;
+    private ManifestAppender manifestAppender;
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private BandwidthGovernor bandwidthGovernor;
+    private InlineManifestVerifier inlineManifestVerifier;
+    private int cacheCommitBatchSize = 1;
+    private long cacheCommitIntervalMs = 0;
 
     /**
      * @param snapshot
@@ -120,11 +140,134 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
         this.propsFile = propsFile;
     }
 
+    /**
+     * When set, chunked content items are retrieved using the parallel chunk
+     * retriever rather than one chunk at a time.
+     *
+     * @param parallelChunkRetriever
+     */
+    public void setParallelChunkRetriever(ParallelChunkRetriever parallelChunkRetriever) {
+        this.parallelChunkRetriever = parallelChunkRetriever;
+    }
+
+    /**
+     * When set, snapshot content items are added to the snapshot manager in
+     * batches rather than one at a time.
+     *
+     * @param contentItemBatcher
+     */
+    public void setContentItemBatcher(SnapshotContentItemBatcher contentItemBatcher) {
+        this.contentItemBatcher = contentItemBatcher;
+    }
+
+    /**
+     * Sets how often changes to the resume caches are committed. By default
+     * every change is committed as it is made.
+     *
+     * @param batchSize  the number of changes after which a commit is made
+     * @param intervalMs the interval at which pending changes are committed
+     */
+    public void setCacheCommitPolicy(int batchSize, long intervalMs) {
+        this.cacheCommitBatchSize = batchSize;
+        this.cacheCommitIntervalMs = intervalMs;
+    }
+
+    /**
+     * When set, the lane capacity used by each content item is returned to the
+     * lane reader once the item has been written.
+     *
+     * @param laneReader
+     */
+    public void setLaneReader(SizeClassLaneReader laneReader) {
+        this.laneReader = laneReader;
+    }
+
+    /**
+     * When set, items which are unchanged since the previous snapshot of the
+     * space are carried forward rather than retrieved.
+     *
+     * @param incrementalSnapshotSeeder
+     */
+    public void setIncrementalSnapshotSeeder(IncrementalSnapshotSeeder incrementalSnapshotSeeder) {
+        this.incrementalSnapshotSeeder = incrementalSnapshotSeeder;
+    }
+
+    /**
+     * When set, retrieved content is kept in the content addressed store, and
+     * content already held in the store is linked rather than retrieved.
+     *
+     * @param contentAddressedStore
+     */
+    public void setContentAddressedStore(ContentAddressedStore contentAddressedStore) {
+        this.contentAddressedStore = contentAddressedStore;
+    }
+
+    /**
+     * When set, unchunked content items are retrieved using ranged requests so
+     * that an interrupted retrieval resumes from its partial file.
+     *
+     * @param rangedContentRetriever
+     */
+    public void setRangedContentRetriever(RangedContentRetriever rangedContentRetriever) {
+        this.rangedContentRetriever = rangedContentRetriever;
+    }
+
+    /**
+     * When set, the directory in which the chunk and ranged retrievers keep their
+     * partial files is removed once the step completes without errors.
+     *
+     * @param partialFiles
+     */
+    public void setPartialFileDirectory(PartialFileDirectory partialFiles) {
+        this.partialFiles = partialFiles;
+    }
+
+    /**
+     * When set, manifest and content properties entries are handed off to the
+     * appender rather than written by the transfer threads under a lock.
+     *
+     * @param manifestAppender
+     */
+    public void setManifestAppender(ManifestAppender manifestAppender) {
+        this.manifestAppender = manifestAppender;
+    }
+
+    /**
+     * When set, the number of items retrieved at once is adjusted by the limiter
+     * rather than fixed by the number of step threads.
+     *
+     * @param concurrencyLimiter
+     */
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * When set, the job holds a share of the bridge bandwidth while the step runs.
+     *
+     * @param bandwidthGovernor
+     */
+    public void setBandwidthGovernor(BandwidthGovernor bandwidthGovernor) {
+        this.bandwidthGovernor = bandwidthGovernor;
+    }
+
+    /**
+     * @param inlineManifestVerifier verifies items against the space manifest as
+     *                               they are written, so that the space need only
+     *                               be verified in full if the inline verification fails
+     */
+    public void setInlineManifestVerifier(InlineManifestVerifier inlineManifestVerifier) {
+        this.inlineManifestVerifier = inlineManifestVerifier;
+    }
+
     private DB makeDatabase() {
         return DBMaker.fileDB(this.dbFile).transactionEnable().closeOnJvmShutdown().make();
     }
 
     protected void closeDatabase() {
+        if (this.cacheCommitter != null) {
+            this.cacheCommitter.close();
+        }
         if (this.db != null) {
             this.db.close();
         }
@@ -136,6 +279,9 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
     }
 
     private BufferedWriter createWriter(File file) throws IOException {
+        if (manifestAppender != null) {
+            return manifestAppender.open(file);
+        }
         BufferedWriter writer =
             Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
         return writer;
@@ -147,33 +293,79 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
             String contentId = contentItem.getContentId();
             log.debug("writing: {}", contentId);
 
-            if (!contentId.equals(Constants.SNAPSHOT_PROPS_FILENAME)) {
-                File dataDir = getDataDir();
-                retrieveFile(contentItem, dataDir);
-            } else {
-                // Cache the snapshot properties ContentItem so we can
-                // retrieve it last in the 'afterStep' method.
-                snapshotPropsContentItem = contentItem;
+            try {
+                if (!contentId.equals(Constants.SNAPSHOT_PROPS_FILENAME)) {
+                    File dataDir = getDataDir();
+                    if (concurrencyLimiter != null) {
+                        retrieveFileWithinLimit(contentItem, dataDir);
+                    } else {
+                        retrieveFile(contentItem, dataDir);
+                    }
+                } else {
+                    // Cache the snapshot properties ContentItem so we can
+                    // retrieve it last in the 'afterStep' method.
+                    snapshotPropsContentItem = contentItem;
+                }
+            } finally {
+                if (laneReader != null) {
+                    laneReader.release(contentItem);
+                }
             }
         }
     }
 
+    private void retrieveFileWithinLimit(ContentItem contentItem, File dataDir) throws IOException {
+        if (md5Cache.containsKey(chunkUtil.preChunkedContentId(contentItem.getContentId()))) {
+            // nothing is transferred for an item which was already retrieved, so
+            // it says nothing about how the transfers are faring
+            retrieveFile(contentItem, dataDir);
+            return;
+        }
+
+        try {
+            concurrencyLimiter.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting to retrieve " + contentItem.getContentId(), ex);
+        }
+
+        long start = System.currentTimeMillis();
+        AtomicInteger retries = new AtomicInteger();
+        boolean success = false;
+        try {
+            retrieveFile(contentItem, dataDir, true, retries);
+            success = true;
+        } finally {
+            File localFile = new File(dataDir, chunkUtil.preChunkedContentId(contentItem.getContentId()));
+            concurrencyLimiter.release(success ? localFile.length() : 0,
+                                       System.currentTimeMillis() - start,
+                                       retries.get(),
+                                       success);
+        }
+    }
+
     private File getDataDir() {
         return new File(contentDir, "data");
     }
 
     protected void retrieveFile(ContentItem contentItem, File directory)
         throws IOException {
-        retrieveFile(contentItem, directory, true, false);
+        retrieveFile(contentItem, directory, true);
     }
 
     private void cacheValue(Map<String, String> cache, String key, String value) {
         cache.put(key, value);
-        db.commit();
+        cacheCommitter.changed();
     }
 
     protected void retrieveFile(ContentItem contentItem, File directory,
-                                boolean writeChecksums, boolean lastItem)
+                                boolean writeChecksums)
+        throws IOException {
+        retrieveFile(contentItem, directory, writeChecksums, new AtomicInteger());
+    }
+
+    private void retrieveFile(ContentItem contentItem, File directory,
+                              boolean writeChecksums, AtomicInteger retries)
         throws IOException {
 
         String contentId = chunkUtil.preChunkedContentId(contentItem.getContentId());
@@ -194,14 +386,53 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
             StopWatch sw = new StopWatch();
             sw.start();
 
-            props = retrievalWorker.retrieveFile(new RetrievalListener() {
+            RetrievalListener listener = new RetrievalListener() {
                 @Override
                 public void chunkRetrieved(String chunk) {
                     getStepExecution().getExecutionContext().put("last-chunk-retrieved-" +
                                                                  Thread.currentThread().getName(),
                                                                  chunk);
                 }
-            });
+            };
+
+            boolean stored = false;
+            String rangedSha256 = null;
+            Map<String, String> sourceProps = null;
+            if (contentAddressedStore != null) {
+                sourceProps = getSourceProperties(contentItem);
+                stored = linkFromContentAddressedStore(sourceProps, localFile);
+                if (stored) {
+                    props = sourceProps;
+                } else {
+                    // never write into a file which may be linked to a stored blob
+                    Files.deleteIfExists(localFile.toPath());
+                }
+            }
+
+            if (stored) {
+                log.info("Linked {} to stored content rather than retrieving it", contentId);
+            } else if (parallelChunkRetriever != null && parallelChunkRetriever.isChunked(contentItem)) {
+                // the retrieval worker records its own results; do the same here
+                try {
+                    props = parallelChunkRetriever.retrieve(contentItem, localFile, listener, retries);
+                    outputWriter.writeSuccess(contentItem, localFile.getAbsolutePath(), 1);
+                } catch (IOException ex) {
+                    outputWriter.writeFailure(contentItem, ex.getMessage(), 1);
+                    throw ex;
+                }
+            } else if (rangedContentRetriever != null &&
+                       !contentItem.getContentId().endsWith(ChunksManifest.manifestSuffix)) {
+                try {
+                    props = rangedContentRetriever.retrieve(contentItem, localFile, sourceProps, retries);
+                    outputWriter.writeSuccess(contentItem, localFile.getAbsolutePath(), 1);
+                } catch (IOException ex) {
+                    outputWriter.writeFailure(contentItem, ex.getMessage(), 1);
+                    throw ex;
+                }
+                rangedSha256 = rangedContentRetriever.getSha256(contentItem);
+            } else {
+                props = retrievalWorker.retrieveFile(listener);
+            }
 
             sw.stop();
 
@@ -223,6 +454,19 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
 
             // cache md5
             md5Checksum = props.get(ContentStore.CONTENT_CHECKSUM);
+
+            // use the digests computed while the content was streamed to disk, if available
+            String streamedSha256 = rangedSha256 != null ? rangedSha256 :
+                                    getStreamedSha256(contentItem, md5Checksum, retries);
+            if (streamedSha256 != null) {
+                sha256 = streamedSha256;
+                cacheValue(sha256Cache, contentId, sha256);
+            }
+
+            if (contentAddressedStore != null && !stored && md5Checksum != null) {
+                contentAddressedStore.add(md5Checksum, localFile);
+            }
+
             cacheValue(md5Cache, contentId, md5Checksum);
 
             log.info("Retrieved item {} from space {} with MD5 checksum {}",
@@ -241,7 +485,7 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
                 log.info("Props found in cache for {}.", contentId);
             } else {
                 log.info("Props not found in cache for {}.", contentId);
-                props = retrievalSource.getSourceProperties(contentItem);
+                props = getSourceProperties(contentItem);
                 cacheValue(propsCache, contentId, PropertiesSerializer.serialize(props));
                 log.info("Retrieved and cached props for {}.", contentId);
             }
@@ -251,6 +495,9 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
             try {
                 if (writeChecksums) {
                     writeMD5Checksum(contentId, md5Checksum);
+                    if (inlineManifestVerifier != null) {
+                        inlineManifestVerifier.check(contentId, md5Checksum);
+                    }
                     if (sha256 == null) {
                         ChecksumUtil sha256ChecksumUtil =
                             new ChecksumUtil(ChecksumUtil.Algorithm.SHA_256);
@@ -283,7 +530,7 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
                 }
 
                 writeToSnapshotManager(contentId, props);
-                writeContentProperties(contentId, props, lastItem);
+                writeContentProperties(contentId, props);
             } catch (IOException ioe) {
                 log.error("Error writing snapshot details: " + ioe.getMessage());
                 throw ioe;
@@ -306,6 +553,74 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
         }
     }
 
+    /**
+     * @param contentItem
+     * @return the properties of the content item; for a chunked item, those of
+     * the stitched content rather than of its chunk manifest
+     * @throws IOException
+     */
+    private Map<String, String> getSourceProperties(ContentItem contentItem) throws IOException {
+        if (retrievalSource instanceof DigestingRetrievalSource) {
+            return ((DigestingRetrievalSource) retrievalSource).getStitchedProperties(contentItem);
+        }
+        return retrievalSource.getSourceProperties(contentItem);
+    }
+
+    /**
+     * @param props     the properties of the content item, which for a chunked
+     *                  item give the checksum and size of the stitched content
+     * @param localFile the file to link to the stored content
+     * @return true if the local file was linked to stored content with the item's
+     * checksum and size
+     * @throws IOException
+     */
+    private boolean linkFromContentAddressedStore(Map<String, String> props,
+                                                  File localFile) throws IOException {
+        String md5 = props.get(ContentStore.CONTENT_CHECKSUM);
+        String size = props.get(ContentStore.CONTENT_SIZE);
+        if (md5 == null || size == null) {
+            return false;
+        }
+
+        try {
+            return contentAddressedStore.link(md5, Long.parseLong(size), localFile);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @param contentItem
+     * @param md5Checksum the expected md5 of the content item
+     * @param retries     incremented by the number of times the content was streamed again
+     * @return the SHA-256 checksum computed while streaming the content item or null
+     * if the content was not streamed in full through a digesting retrieval source.
+     * @throws IOException if the MD5 computed while streaming does not match the expected md5
+     */
+    private String getStreamedSha256(ContentItem contentItem, String md5Checksum, AtomicInteger retries)
+        throws IOException {
+        if (!(retrievalSource instanceof DigestingRetrievalSource)) {
+            return null;
+        }
+
+        DigestingRetrievalSource.Digests digests =
+            ((DigestingRetrievalSource) retrievalSource).getDigests(contentItem);
+        if (digests == null) {
+            return null;
+        }
+        retries.addAndGet(digests.getAttempts() - 1);
+
+        if (!digests.getMd5().equals(md5Checksum)) {
+            throw new IOException("MD5 checksum of streamed content (" + digests.getMd5() +
+                                  ") does not match expected checksum (" + md5Checksum +
+                                  ") for " + contentItem.getContentId());
+        }
+
+        log.info("Computed sha256 checksum for contentId={} while streaming {} bytes",
+                 contentItem.getContentId(), digests.getByteCount());
+        return digests.getSha256();
+    }
+
     protected int getTotalChecksumsPerformed() {
         return totalChecksumsPerformed;
     }
@@ -316,6 +631,11 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
      */
     private void writeToSnapshotManager(final String contentId,
                                         final Map<String, String> props) throws IOException {
+        if (contentItemBatcher != null) {
+            contentItemBatcher.add(contentId, props);
+            return;
+        }
+
         try {
             new Retrier().execute(new Retriable() {
                 @Override
@@ -334,6 +654,10 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
 
     protected void writeMD5Checksum(String contentId,
                                     String md5Checksum) throws IOException {
+        if (manifestAppender != null) {
+            manifestAppender.append(md5Writer, ManifestFileHelper.formatManifestEntry(contentId, md5Checksum));
+            return;
+        }
         synchronized (md5Writer) {
             ManifestFileHelper.writeManifestEntry(md5Writer, contentId, md5Checksum);
         }
@@ -341,40 +665,25 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
 
     protected void writeSHA256Checksum(String contentId,
                                        String sha256Checksum) throws IOException {
-
+        if (manifestAppender != null) {
+            manifestAppender.append(sha256Writer, ManifestFileHelper.formatManifestEntry(contentId, sha256Checksum));
+            return;
+        }
         synchronized (sha256Writer) {
             ManifestFileHelper.writeManifestEntry(sha256Writer, contentId, sha256Checksum);
         }
     }
 
     protected void writeContentProperties(String contentId,
-                                          Map<String, String> props,
-                                          boolean lastItem)
+                                          Map<String, String> props)
         throws IOException {
-        Set<String> propKeys = props.keySet();
-        StringBuffer sb = new StringBuffer(100);
-        sb.append("{\n  \"" + contentId + "\": {\n");
-        for (String propKey : propKeys) {
-            sb.append("    \"" + propKey + "\": \"" + props.get(propKey) + "\",\n");
-        }
-        sb.deleteCharAt(sb.length() - 2); // delete comma after last key/value pair
-
-        sb.append("  }\n}");
-        if (!lastItem) {
-            sb.append(",");
-        }
-        sb.append("\n");
-
-        synchronized (propsWriter) {
-            propsWriter.write(sb.toString());
-            propsWriter.flush();
-        }
+        propsJsonWriter.write(contentId, props);
     }
 
     protected void retrieveSnapshotProperties() {
         if (snapshotPropsContentItem != null) {
             try {
-                retrieveFile(snapshotPropsContentItem, contentDir, false, true);
+                retrieveFile(snapshotPropsContentItem, contentDir, false);
                 log.info("Snapshot properties retrieved");
             } catch (IOException ioe) {
                 log.error("Error retrieving the snapshot properties file: " +
@@ -392,18 +701,41 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
     public ExitStatus afterStep(StepExecution stepExecution) {
         ExitStatus status = super.afterStep(stepExecution);
         log.info("Step complete with status: {}", stepExecution.getExitStatus());
+        drainManifestAppender();
+        if (bandwidthGovernor != null) {
+            bandwidthGovernor.unregister(snapshot.getName());
+        }
         close("md5 writer", md5Writer);
         close("sh256 writer", sha256Writer);
         close("output writer", outputWriter);
 
+        if (parallelChunkRetriever != null) {
+            parallelChunkRetriever.shutdown();
+        }
+
         retrieveSnapshotProperties();
         closePropsWriter();
+        flushContentItems();
 
         if (errors.size() == 0) {
             log.info("No errors in retrieval of snapshot {}; " +
                      "Proceeding with space manifest - snapshot manifest verification...",
                      snapshot.getName());
-            errors.addAll(verifySpace(spaceManifestSnapshotManifestVerifier));
+            if (isVerifiedInline()) {
+                log.info("Snapshot {} verified against the space manifest as items were written",
+                         snapshot.getName());
+            } else {
+                errors.addAll(verifySpace(spaceManifestSnapshotManifestVerifier));
+            }
+        }
+        if (inlineManifestVerifier != null) {
+            inlineManifestVerifier.close();
+        }
+
+        if (errors.size() == 0 && partialFiles != null) {
+            // removes partial files left by interrupted retrievals of items which
+            // were no longer in the space when the snapshot was resumed
+            partialFiles.delete();
         }
 
         if (errors.size() > 0) {
@@ -420,12 +752,50 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
         return status;
     }
 
+    private boolean isVerifiedInline() {
+        if (inlineManifestVerifier == null) {
+            return false;
+        }
+        if (inlineManifestVerifier.finish()) {
+            return true;
+        }
+        log.warn("Inline verification of snapshot {} did not succeed; verifying the full space manifest",
+                 snapshot.getName());
+        return false;
+    }
+
+    private void flushContentItems() {
+        if (contentItemBatcher == null) {
+            return;
+        }
+
+        try {
+            contentItemBatcher.flush();
+        } catch (IOException ioe) {
+            String message = "Error adding remaining content items to snapshot: " + ioe.getMessage();
+            errors.add(message);
+            log.error(message, ioe);
+        }
+    }
+
+    private void drainManifestAppender() {
+        if (manifestAppender != null) {
+            try {
+                manifestAppender.drain();
+            } catch (IOException ioe) {
+                String message = "Error writing manifest entries: " + ioe.getMessage();
+                errors.add(message);
+                log.error(message, ioe);
+            }
+        }
+    }
+
     private void closePropsWriter() {
         try {
-            synchronized (propsWriter) {
-                propsWriter.write("]\n");
-                propsWriter.flush();
+            if (manifestAppender != null) {
+                manifestAppender.close();
             }
+            propsJsonWriter.finish();
 
             log.debug("Closed props writer");
         } catch (IOException ioe) {
@@ -459,9 +829,10 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
     private void loadCacheFromFile(Map<String, String> cache,
                                    File file,
                                    Function<String, Boolean> isValidChecksum) throws IOException {
-        //if the cache is empty check if there is are md5 and sha256 manifests
-        //that can be used to prepopulate the cache.
-        if (cache.isEmpty() && file.exists()) {
+        //check if there are md5 and sha256 manifests that can be used to populate
+        //the cache. Entries may be missing from a non-empty cache when the last
+        //changes to it were not committed before a restart.
+        if (file.exists()) {
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)))) {
                 String line = null;
                 while ((line = reader.readLine()) != null) {
@@ -469,7 +840,9 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
                         ManifestEntry entry = ManifestFileHelper.parseManifestEntry(line);
                         String contentId = entry.getContentId();
                         String checksum = entry.getChecksum();
-                        if (isValidChecksum.apply(checksum)) {
+                        if (cache.containsKey(contentId)) {
+                            continue;
+                        } else if (isValidChecksum.apply(checksum)) {
                             cacheValue(cache, contentId, checksum);
                         } else {
                             log.info("Checksum {} in manifest file {} was not a valid checksum: skipping.",
@@ -484,12 +857,32 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
         }
     }
 
+    private void seedUnchangedItems() {
+        if (incrementalSnapshotSeeder == null) {
+            return;
+        }
+
+        try {
+            incrementalSnapshotSeeder.seed(db, getDataDir(), md5Cache, sha256Cache);
+        } catch (Exception ex) {
+            log.warn("Unable to carry forward unchanged items from the previous snapshot; " +
+                     "remaining items will be retrieved: " + ex.getMessage(), ex);
+        }
+    }
+
     @Override
     public void beforeStep(StepExecution stepExecution) {
         super.beforeStep(stepExecution);
         log.info("Starting step {}", stepExecution);
+        if (bandwidthGovernor != null) {
+            bandwidthGovernor.register(snapshot.getName());
+        }
+        if (inlineManifestVerifier != null) {
+            inlineManifestVerifier.start();
+        }
         try {
             this.db = makeDatabase();
+            this.cacheCommitter = new CacheCommitter(db, cacheCommitBatchSize, cacheCommitIntervalMs);
 
             md5Cache = db.treeMap("md5Cache", Serializer.STRING, Serializer.STRING)
                          .createOrOpen();
@@ -507,10 +900,14 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
                 this.sha256Cache,
                 this.sha256ManifestFile,
                 x -> x != null && x.matches("[a-fA-F0-9]{64}"));
+            seedUnchangedItems();
+            cacheCommitter.commit();
 
             //initialize writers after loading cache from files.
             try {
                 this.propsWriter = createWriter(propsFile);
+                this.propsJsonWriter = new ContentPropertiesJsonWriter(propsWriter, PROPS_FLUSH_EVERY);
+                this.propsJsonWriter.setManifestAppender(manifestAppender);
                 this.md5Writer = createWriter(this.md5ManifestFile);
                 this.sha256Writer = createWriter(this.sha256ManifestFile);
             } catch (IOException ex) {
@@ -518,10 +915,7 @@ public class SpaceItemWriter extends StepExecutionSupport implements ItemWriter<
             }
 
             errors.clear();
-            synchronized (propsWriter) {
-                propsWriter.write("[\n");
-                propsWriter.flush();
-            }
+            propsJsonWriter.start();
         } catch (IOException ioe) {
             log.error("Error writing start of content property " +
                       "manifest: ", ioe);
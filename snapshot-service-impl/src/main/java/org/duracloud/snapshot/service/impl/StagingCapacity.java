@@ -0,0 +1,252 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.duracloud.snapshot.service.BridgeConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks the space on the staging volume reserved by running jobs. A job
+ * reserves the bytes it is expected to stage before it starts and releases the
+ * reservation when it finishes, so jobs which together would fill the volume
+ * are not run at the same time. A margin of free space is always kept.
+ * <p>
+ * The free space on the volume already excludes what running jobs have staged,
+ * so only the part of each reservation which has not been staged yet is taken
+ * from it. What a job has staged is measured from its staging directory; a
+ * reservation made without one, or which has not been measured yet, is counted
+ * in full.
+ * <p>
+ * Measuring walks the staging directories, so it is done only by
+ * {@link #recordStart(String)} and {@link #measure()}, which take this object's
+ * lock only to read and record the results. The other methods use the most
+ * recent measurements and may be called while holding other locks.
+ */
+@Component
+public class StagingCapacity {
+
+    private static final Logger log = LoggerFactory.getLogger(StagingCapacity.class);
+
+    private File dir;
+    private long headroomBytes;
+    private boolean enabled;
+    private Map<String, Reservation> reservations = new HashMap<>();
+    private AtomicBoolean measuring = new AtomicBoolean(false);
+
+    public StagingCapacity() {
+        this(null,
+             BridgeConfiguration.getBridgeStagingHeadroomBytes(),
+             BridgeConfiguration.isBridgeStagingAdmission());
+    }
+
+    /**
+     * @param dir           a directory on the staging volume, or null for the
+     *                      content root directory
+     * @param headroomBytes the free space to keep on the volume
+     * @param enabled       whether jobs are admitted according to the free space
+     */
+    public StagingCapacity(File dir, long headroomBytes, boolean enabled) {
+        this.dir = dir;
+        this.headroomBytes = Math.max(headroomBytes, 0);
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return true if jobs are admitted according to the free space
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param bytes
+     * @return true if the bytes would fit on the volume were no space reserved
+     */
+    public synchronized boolean couldFit(long bytes) {
+        return !enabled || bytes <= getUsableSpace() - headroomBytes;
+    }
+
+    /**
+     * @param bytes
+     * @return true if the bytes fit in the space which is not reserved
+     */
+    public synchronized boolean fits(long bytes) {
+        return !enabled || bytes <= 0 || bytes <= getAvailable();
+    }
+
+    /**
+     * Reserves space for a job if it fits.
+     *
+     * @param jobName
+     * @param bytes   the bytes the job is expected to stage
+     * @return true if the space was reserved
+     */
+    public synchronized boolean reserve(String jobName, long bytes) {
+        return reserve(jobName, bytes, null);
+    }
+
+    /**
+     * Reserves space for a job if it fits.
+     *
+     * @param jobName
+     * @param bytes      the bytes the job is expected to stage
+     * @param stagingDir the directory in which the job stages its content, or
+     *                   null if not known
+     * @return true if the space was reserved
+     */
+    public synchronized boolean reserve(String jobName, long bytes, File stagingDir) {
+        if (!fits(bytes)) {
+            return false;
+        }
+        if (enabled && bytes > 0) {
+            reservations.put(jobName, new Reservation(bytes, stagingDir));
+            log.info("Reserved {} bytes of staging space for {}", bytes, jobName);
+        }
+        return true;
+    }
+
+    /**
+     * @param jobName
+     */
+    public synchronized void release(String jobName) {
+        if (reservations.remove(jobName) != null) {
+            log.info("Released staging space reserved for {}", jobName);
+        }
+    }
+
+    /**
+     * Records what is already in a job's staging directory as the job starts, as
+     * the estimate of the bytes it will stage already excludes it. Until this is
+     * recorded the job's reservation is counted in full.
+     *
+     * @param jobName
+     */
+    public void recordStart(String jobName) {
+        Reservation reservation;
+        synchronized (this) {
+            reservation = reservations.get(jobName);
+        }
+        if (reservation == null || reservation.stagingDir == null) {
+            return;
+        }
+
+        long size = measure(reservation.stagingDir);
+        if (size >= 0) {
+            synchronized (this) {
+                reservation.stagedAtStart = size;
+                reservation.started = true;
+            }
+        }
+    }
+
+    /**
+     * Measures what each running job has staged since it started. Returns at
+     * once if another thread is already measuring.
+     */
+    public void measure() {
+        if (!measuring.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Reservation> started = new ArrayList<>();
+            synchronized (this) {
+                for (Reservation reservation : reservations.values()) {
+                    if (reservation.started) {
+                        started.add(reservation);
+                    }
+                }
+            }
+
+            for (Reservation reservation : started) {
+                long size = measure(reservation.stagingDir);
+                if (size >= 0) {
+                    synchronized (this) {
+                        reservation.staged = Math.max(0, size - reservation.stagedAtStart);
+                    }
+                }
+            }
+        } finally {
+            measuring.set(false);
+        }
+    }
+
+    /**
+     * @return the bytes reserved by each running job
+     */
+    public synchronized Map<String, Long> getReservations() {
+        Map<String, Long> bytes = new TreeMap<>();
+        for (Map.Entry<String, Reservation> entry : reservations.entrySet()) {
+            bytes.put(entry.getKey(), entry.getValue().bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the free space on the volume less the margin and the reserved
+     * space which has not been staged yet
+     */
+    public synchronized long getAvailable() {
+        long reserved = 0;
+        for (Reservation reservation : reservations.values()) {
+            reserved += Math.max(0, reservation.bytes - reservation.staged);
+        }
+        return getUsableSpace() - headroomBytes - reserved;
+    }
+
+    /**
+     * @return the bytes held in the directory, or -1 if they could not be
+     * measured, as when files are removed during the walk
+     */
+    private long measure(File dir) {
+        try {
+            return getSize(dir);
+        } catch (RuntimeException ex) {
+            log.warn("Unable to measure staged content in {}: {}", dir.getAbsolutePath(), ex.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * @param dir
+     * @return the bytes held in the directory
+     */
+    protected long getSize(File dir) {
+        return dir.exists() ? FileUtils.sizeOfDirectory(dir) : 0;
+    }
+
+    protected long getUsableSpace() {
+        if (dir == null) {
+            dir = BridgeConfiguration.getContentRootDir();
+        }
+        return dir.getUsableSpace();
+    }
+
+    private static class Reservation {
+        private long bytes;
+        private File stagingDir;
+        private boolean started = false;
+        private long stagedAtStart;
+        private long staged;
+
+        private Reservation(long bytes, File stagingDir) {
+            this.bytes = bytes;
+            this.stagingDir = stagingDir;
+        }
+    }
+}
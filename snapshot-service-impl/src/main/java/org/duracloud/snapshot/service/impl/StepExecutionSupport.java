@@ -34,6 +34,7 @@ public abstract class StepExecutionSupport implements StepExecutionListener {
     private StepExecution stepExecution;
     public static String ITEMS_READ_KEY = "lines.read";
     public static final String ERRORS_KEY = "errors";
+    public static final String CHECKPOINT_KEY = "path.checkpoint";
     private boolean test = false;
 
     protected ExecutionContext getExecutionContext() {
@@ -59,6 +60,9 @@ public abstract class StepExecutionSupport implements StepExecutionListener {
         //items read state variable must be set back to zero to
         //ensure that the step will be run from top of the list on failure.
         addToItemsRead(getItemsRead() * -1);
+        synchronized (this.stepExecution) {
+            getExecutionContext().remove(CHECKPOINT_KEY);
+        }
         clearErrors();
     }
 
@@ -7,28 +7,130 @@
  */
 package org.duracloud.snapshot.service.impl;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.duracloud.client.ContentStore;
 import org.duracloud.client.util.StoreClientUtil;
 import org.duracloud.snapshot.common.SnapshotServiceConstants;
 import org.duracloud.snapshot.db.model.DuracloudEndPointConfig;
+import org.duracloud.snapshot.service.BridgeConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
+ * Creates content store clients. Clients are cached by endpoint, store and
+ * credentials, so repeated calls for the same endpoint share one client rather
+ * than each logging in and looking up the store again. The cache holds a bounded
+ * number of clients, least recently used first out, and drops clients which
+ * have not been used for a while.
+ *
  * @author Daniel Bernstein Date: Aug 18, 2014
  */
 @Component
 public class StoreClientHelper {
+
+    private static final Logger log = LoggerFactory.getLogger(StoreClientHelper.class);
+
     private StoreClientUtil storeClientUtil;
+    private int maxSize;
+    private long idleMs;
+
+    private Map<List<Object>, CachedStore> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
 
     @Autowired
     public StoreClientHelper(StoreClientUtil storeClientUtil) {
+        this(storeClientUtil,
+             BridgeConfiguration.getBridgeStoreClientCacheSize(),
+             BridgeConfiguration.getBridgeStoreClientIdleMs());
+    }
+
+    /**
+     * @param storeClientUtil
+     * @param maxSize         the largest number of cached clients, or 0 to create
+     *                        a new client on every call
+     * @param idleMs          the time after which an unused client is dropped
+     */
+    public StoreClientHelper(StoreClientUtil storeClientUtil, int maxSize, long idleMs) {
         this.storeClientUtil = storeClientUtil;
+        this.maxSize = Math.max(maxSize, 0);
+        this.idleMs = idleMs;
     }
 
     public ContentStore create(DuracloudEndPointConfig config,
                                String username,
                                String password) {
+        if (maxSize == 0) {
+            return createContentStore(config, username, password);
+        }
+
+        List<Object> key = Arrays.asList(config.getHost(), config.getPort(), config.getStoreId(),
+                                         username, password);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            evictIdle(now);
+            CachedStore cached = cache.get(key);
+            if (cached != null) {
+                hits++;
+                cached.lastUsed = now;
+                return cached.contentStore;
+            }
+            misses++;
+        }
+
+        ContentStore contentStore = createContentStore(config, username, password);
+        synchronized (this) {
+            cache.put(key, new CachedStore(contentStore, now));
+            Iterator<CachedStore> it = cache.values().iterator();
+            while (cache.size() > maxSize) {
+                it.next();
+                it.remove();
+                evictions++;
+            }
+        }
+        return contentStore;
+    }
+
+    /**
+     * @return the number of calls answered with a cached client
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of calls which created a new client
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of clients dropped from the cache, whether for being
+     * idle or to make room
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of cached clients
+     */
+    public synchronized int getSize() {
+        return cache.size();
+    }
+
+    private ContentStore createContentStore(DuracloudEndPointConfig config,
+                                            String username,
+                                            String password) {
         ContentStore contentStore =
             storeClientUtil.createContentStore(config.getHost(),
                                                config.getPort(),
@@ -38,4 +140,30 @@ public class StoreClientHelper {
                                                config.getStoreId());
         return contentStore;
     }
+
+    private void evictIdle(long now) {
+        int evicted = 0;
+        Iterator<CachedStore> it = cache.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastUsed >= idleMs) {
+                it.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            evictions += evicted;
+            log.debug("Dropped {} idle store clients (cached={}, hits={}, misses={}, evictions={})",
+                      evicted, cache.size(), hits, misses, evictions);
+        }
+    }
+
+    private static class CachedStore {
+        private ContentStore contentStore;
+        private long lastUsed;
+
+        private CachedStore(ContentStore contentStore, long lastUsed) {
+            this.contentStore = contentStore;
+            this.lastUsed = lastUsed;
+        }
+    }
 }
@@ -18,6 +18,7 @@ import org.duracloud.domain.Space;
 import org.duracloud.error.ContentStoreException;
 import org.duracloud.error.NotFoundException;
 import org.duracloud.snapshot.dto.RestoreStatus;
+import org.duracloud.snapshot.service.BridgeConfiguration;
 import org.duracloud.snapshot.service.RestoreManager;
 import org.duracloud.sync.endpoint.MonitoredFile;
 import org.duracloud.sync.endpoint.SyncEndpoint;
@@ -44,6 +45,11 @@ public class SyncWriter extends StepExecutionSupport implements ItemWriter<File>
     private String destinationSpaceId;
     private RestoreManager restoreManager;
     private String restorationId;
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private BandwidthGovernor bandwidthGovernor;
+    private RestoreUploadLedger uploadLedger;
+    private ParallelChunkUploader chunkUploader;
+    private FusedRestoreUploader fusedUploader;
 
     /**
      * @param restorationId
@@ -68,6 +74,58 @@ public class SyncWriter extends StepExecutionSupport implements ItemWriter<File>
         this.restorationId = restorationId;
     }
 
+    /**
+     * When set, the number of files uploaded at once is adjusted by the limiter
+     * rather than fixed by the number of step threads.
+     *
+     * @param concurrencyLimiter
+     */
+    public void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * When set, the job holds a share of the bridge bandwidth while the step runs
+     * and waits for its share before each upload.
+     *
+     * @param bandwidthGovernor
+     */
+    public void setBandwidthGovernor(BandwidthGovernor bandwidthGovernor) {
+        this.bandwidthGovernor = bandwidthGovernor;
+    }
+
+    /**
+     * When set, files recorded in the ledger as already uploaded are not
+     * uploaded again, and a destination space which is not empty is accepted
+     * as long as the ledger records uploaded files.
+     *
+     * @param uploadLedger
+     */
+    public void setUploadLedger(RestoreUploadLedger uploadLedger) {
+        this.uploadLedger = uploadLedger;
+    }
+
+    /**
+     * When set, files too large to be uploaded in one piece are uploaded by the
+     * uploader, several chunks at once, rather than chunk by chunk by the endpoint.
+     *
+     * @param chunkUploader
+     */
+    public void setParallelChunkUploader(ParallelChunkUploader chunkUploader) {
+        this.chunkUploader = chunkUploader;
+    }
+
+    /**
+     * When set, restored files are verified against the snapshot manifest and
+     * uploaded with their properties by the uploader, in place of the separate
+     * verification and properties steps.
+     *
+     * @param fusedUploader
+     */
+    public void setFusedUploader(FusedRestoreUploader fusedUploader) {
+        this.fusedUploader = fusedUploader;
+    }
+
     // StepExecution Interface
     /*
      * (non-Javadoc)
@@ -77,7 +135,27 @@ public class SyncWriter extends StepExecutionSupport implements ItemWriter<File>
      */
     @Override
     public ExitStatus afterStep(StepExecution stepExecution) {
+        try {
+            return completeStep(stepExecution);
+        } finally {
+            // only once the snapshot props file has been uploaded
+            if (bandwidthGovernor != null) {
+                bandwidthGovernor.unregister(restorationId);
+            }
+        }
+    }
+
+    private ExitStatus completeStep(StepExecution stepExecution) {
         ExitStatus status = stepExecution.getExitStatus();
+        if (uploadLedger != null) {
+            uploadLedger.close();
+        }
+        if (chunkUploader != null) {
+            chunkUploader.shutdown();
+        }
+        if (fusedUploader != null) {
+            fusedUploader.close();
+        }
 
         List<String> errors = getErrors();
         if (errors.isEmpty()) {
@@ -120,17 +198,35 @@ public class SyncWriter extends StepExecutionSupport implements ItemWriter<File>
     @Override
     public void beforeStep(StepExecution stepExecution) {
         super.beforeStep(stepExecution);
+        if (bandwidthGovernor != null) {
+            bandwidthGovernor.register(restorationId);
+        }
         try {
             RestoreStatus newStatus = RestoreStatus.TRANSFERRING_TO_DURACLOUD;
             restoreManager.transitionRestoreStatus(restorationId, newStatus, "");
+            if (uploadLedger != null) {
+                uploadLedger.open(BridgeConfiguration.getBridgeCacheCommitBatchSize(),
+                                  BridgeConfiguration.getBridgeCacheCommitIntervalMs());
+            }
+            if (fusedUploader != null) {
+                fusedUploader.open(BridgeConfiguration.getBridgeCacheCommitBatchSize(),
+                                   BridgeConfiguration.getBridgeCacheCommitIntervalMs());
+            }
             Space space = this.contentStore.getSpace(destinationSpaceId, null, 1, null);
-            if (!CollectionUtils.isEmpty(space.getContentIds())) {
+            if (uploadLedger != null) {
+                uploadLedger.reconcile();
+            }
+            boolean resuming = uploadLedger != null && uploadLedger.getUploadedCount() > 0;
+            if (!resuming && !CollectionUtils.isEmpty(space.getContentIds())) {
                 stepExecution.addFailureException(new RuntimeException("destination space "
                                                                        + destinationSpaceId +
                                                                        " must be empty to receive restored content"));
             }
         } catch (NotFoundException ex) {
             try {
+                if (uploadLedger != null) {
+                    uploadLedger.clear();
+                }
                 this.contentStore.createSpace(destinationSpaceId);
             } catch (ContentStoreException e) {
                 addError(ex.getMessage());
@@ -172,14 +268,54 @@ public class SyncWriter extends StepExecutionSupport implements ItemWriter<File>
      * @throws Exception
      */
     private void restoreFile(final File file, final File watchDir) throws Exception {
+        final String contentId = watchDir.toPath().relativize(file.toPath()).toString()
+                                         .replace(File.separatorChar, '/');
+        // only the restored content is listed in the manifest; the snapshot
+        // props file restored once the step completes is uploaded as before
+        final boolean fused = fusedUploader != null && watchDir.equals(this.watchDir);
+        if (uploadLedger != null && uploadLedger.isUploaded(contentId)) {
+            log.debug("skipping {}: already uploaded", file.getAbsolutePath());
+            return;
+        }
+
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.acquire();
+        }
+        final int[] attempts = {0};
+        // the checksum the store returned for the file
+        final String[] stored = {null};
+        long start = System.currentTimeMillis();
+        boolean success = false;
         try {
-            new Retrier().execute(new Retriable() {
+            Retriable upload = new Retriable() {
 
                 @Override
                 public Object retry() throws Exception {
+                    attempts[0]++;
+                    if (fused) {
+                        stored[0] = fusedUploader.upload(contentId, file);
+                        return SyncResultType.ADDED;
+                    }
+                    if (chunkUploader != null && chunkUploader.isChunked(file)) {
+                        // each chunk is checked by the store as it is added, and
+                        // the space lists the file with the source checksum
+                        stored[0] = chunkUploader.upload(destinationSpaceId, contentId, file)
+                                                 .getHeader().getSourceMD5();
+                        log.info("successfully uploaded {} in chunks", file.getAbsolutePath());
+                        return SyncResultType.ADDED;
+                    }
+
                     MonitoredFile monitoredFile = new MonitoredFile(file);
-                    SyncResultType result =
-                        endpoint.syncFileAndReturnDetailedResult(monitoredFile, watchDir);
+                    SyncResultType result;
+                    try {
+                        result = endpoint.syncFileAndReturnDetailedResult(monitoredFile, watchDir);
+                    } finally {
+                        // the endpoint reads the file itself, so each attempt is
+                        // charged against the job's share for the bytes it read
+                        if (bandwidthGovernor != null) {
+                            bandwidthGovernor.acquire(restorationId, monitoredFile.getStreamBytesRead());
+                        }
+                    }
                     if (result.equals(SyncResultType.FAILED)) {
                         String message = "Failed to upload " + file.getAbsolutePath() +
                                          " after uploading " +
@@ -193,9 +329,33 @@ public class SyncWriter extends StepExecutionSupport implements ItemWriter<File>
 
                     return result;
                 }
-            });
+            };
+            // chunks are retried one by one, so a chunked upload is not retried as a whole
+            boolean chunked = fused ? fusedUploader.isChunked(file) :
+                              chunkUploader != null && chunkUploader.isChunked(file);
+            if (chunked) {
+                upload.retry();
+            } else {
+                new Retrier().execute(upload);
+            }
+            success = true;
+            if (uploadLedger != null) {
+                if (stored[0] != null) {
+                    uploadLedger.recordUploaded(contentId, stored[0]);
+                } else {
+                    // the sync endpoint has checked the stored checksum against the file
+                    uploadLedger.recordUploaded(contentId);
+                }
+            }
         } catch (Exception ex) {
             addError(ex.getMessage());
+        } finally {
+            if (concurrencyLimiter != null) {
+                concurrencyLimiter.release(success ? file.length() : 0,
+                                           System.currentTimeMillis() - start,
+                                           Math.max(attempts[0] - 1, 0),
+                                           success);
+            }
         }
     }
 
@@ -0,0 +1,102 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest extends SnapshotTestBase {
+
+    @Test
+    public void testBacksOffOnErrors() throws Exception {
+        replayAll();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 8, 1, 16, 0);
+
+        limiter.acquire();
+        limiter.release(0, 10, 0, false);
+        assertEquals(4, limiter.getLimit());
+
+        limiter.acquire();
+        limiter.release(100, 10, 2, true);
+        assertEquals(2, limiter.getLimit());
+
+        limiter.acquire();
+        limiter.release(0, 10, 0, false);
+        limiter.acquire();
+        limiter.release(0, 10, 0, false);
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    public void testRaisesWhileHealthy() throws Exception {
+        replayAll();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 3, 0);
+
+        limiter.acquire();
+        limiter.release(1000, 10, 0, true);
+        assertEquals(3, limiter.getLimit());
+
+        // never raised beyond the maximum
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+            limiter.release(1000000, 10, 0, true);
+            assertTrue(limiter.getLimit() <= 3);
+        }
+    }
+
+    @Test
+    public void testLatencyIsMeasuredPerByte() throws Exception {
+        replayAll();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 4, 1, 16, 0);
+
+        limiter.acquire();
+        limiter.release(1024 * 1024, 10, 0, true);
+        assertEquals(5, limiter.getLimit());
+
+        // ten times the time for ten times the bytes is not a latency spike
+        limiter.acquire();
+        limiter.release(10 * 1024 * 1024, 100, 0, true);
+        assertTrue(limiter.getLimit() >= 4);
+
+        // ten times the time per byte is
+        int limit = limiter.getLimit();
+        limiter.acquire();
+        limiter.release(1024 * 1024, 100, 0, true);
+        assertEquals(limit / 2, limiter.getLimit());
+    }
+
+    @Test
+    public void testAcquireWaitsForPermit() throws Exception {
+        replayAll();
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 1, 1, 1, 60000);
+        limiter.acquire();
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        limiter.release(10, 10, 0, true);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.junit.Test;
+
+public class BandwidthGovernorTest extends SnapshotTestBase {
+
+    @Test
+    public void testSharesByWeight() throws Exception {
+        replayAll();
+        BandwidthGovernor governor = new BandwidthGovernor(4000);
+        governor.register("snapshot");
+        assertEquals(Long.valueOf(4000), governor.getRates().get("snapshot"));
+
+        governor.setWeight("restore", 3);
+        governor.register("restore");
+        assertEquals(Long.valueOf(1000), governor.getRates().get("snapshot"));
+        assertEquals(Long.valueOf(3000), governor.getRates().get("restore"));
+
+        governor.unregister("restore");
+        assertEquals(Long.valueOf(4000), governor.getRates().get("snapshot"));
+        assertEquals(1, governor.getRates().size());
+    }
+
+    @Test
+    public void testThrottlesStream() throws Exception {
+        replayAll();
+        BandwidthGovernor governor = new BandwidthGovernor(100000);
+        governor.register("snapshot");
+
+        long start = System.currentTimeMillis();
+        try (InputStream in = governor.throttle("snapshot", new ByteArrayInputStream(new byte[50000]))) {
+            assertEquals(50000, IOUtils.toByteArray(in).length);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        // the bucket starts empty, so half a second of bandwidth takes about half a second
+        assertTrue("elapsed " + elapsed, elapsed >= 400);
+    }
+
+    @Test
+    public void testUnregisteredJobIsNotLimited() throws Exception {
+        replayAll();
+        BandwidthGovernor governor = new BandwidthGovernor(1000);
+        governor.register("restore");
+        governor.unregister("restore");
+
+        long start = System.currentTimeMillis();
+        governor.acquire("restore", 1000000);
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        // a late transfer does not take a share back
+        assertTrue(governor.getRates().isEmpty());
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        replayAll();
+        BandwidthGovernor governor = new BandwidthGovernor(0);
+        long start = System.currentTimeMillis();
+        governor.acquire("snapshot", Long.MAX_VALUE);
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+}
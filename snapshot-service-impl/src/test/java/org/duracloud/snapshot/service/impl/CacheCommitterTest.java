@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+
+public class CacheCommitterTest {
+
+    private DB db;
+    private Map<String, String> cache;
+
+    @Before
+    public void setup() {
+        db = DBMaker.memoryDB().transactionEnable().make();
+        cache = db.treeMap("cache", Serializer.STRING, Serializer.STRING).createOrOpen();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testCommitsWhenBatchIsFull() {
+        CacheCommitter committer = new CacheCommitter(db, 3, 60000);
+        put(committer, "a");
+        put(committer, "b");
+        put(committer, "c");
+        put(committer, "d");
+
+        // the uncommitted fourth change is lost
+        db.rollback();
+        assertEquals(3, cache.size());
+
+        put(committer, "d");
+        committer.close();
+        db.rollback();
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void testCommitsEveryChangeByDefault() {
+        CacheCommitter committer = new CacheCommitter(db, 1, 0);
+        put(committer, "a");
+        db.rollback();
+        assertEquals(1, cache.size());
+        committer.close();
+    }
+
+    @Test
+    public void testBatchesWithoutTimer() {
+        CacheCommitter committer = new CacheCommitter(db, 2, 0);
+        put(committer, "a");
+        put(committer, "b");
+        put(committer, "c");
+        db.rollback();
+        assertEquals(2, cache.size());
+        committer.close();
+    }
+
+    private void put(CacheCommitter committer, String key) {
+        cache.put(key, key);
+        committer.changed();
+    }
+}
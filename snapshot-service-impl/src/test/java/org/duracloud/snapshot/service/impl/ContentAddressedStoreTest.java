@@ -0,0 +1,64 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.duracloud.common.util.ChecksumUtil;
+import org.duracloud.common.util.ChecksumUtil.Algorithm;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.junit.After;
+import org.junit.Test;
+
+public class ContentAddressedStoreTest extends SnapshotTestBase {
+
+    private File rootDir = getTempDir();
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(rootDir);
+    }
+
+    @Test
+    public void testLinkAndCollectGarbage() throws Exception {
+        replayAll();
+        ContentAddressedStore store = new ContentAddressedStore(rootDir, "account.duracloud.org");
+        ContentAddressedStore allAccounts = new ContentAddressedStore(rootDir);
+
+        byte[] data = "shared content".getBytes(StandardCharsets.UTF_8);
+        File first = new File(rootDir, "snapshots/one/data/file.txt");
+        first.getParentFile().mkdirs();
+        Files.write(first.toPath(), data);
+        String md5 = new ChecksumUtil(Algorithm.MD5).generateChecksum(first);
+
+        File second = new File(rootDir, "snapshots/two/data/copy.txt");
+        assertFalse(store.link(md5, data.length, second));
+
+        store.add(md5, first);
+        // content is never shared with another account
+        assertFalse(new ContentAddressedStore(rootDir, "other.duracloud.org").link(md5, data.length, second));
+        assertTrue(store.link(md5, data.length, second));
+        assertEquals("shared content", new String(Files.readAllBytes(second.toPath()), StandardCharsets.UTF_8));
+
+        // still referenced by the second snapshot
+        first.delete();
+        assertEquals(0, allAccounts.collectGarbage());
+        assertTrue(store.getBlob(md5).exists());
+
+        second.delete();
+        assertEquals(1, allAccounts.collectGarbage());
+        assertFalse(store.getBlob(md5).exists());
+    }
+}
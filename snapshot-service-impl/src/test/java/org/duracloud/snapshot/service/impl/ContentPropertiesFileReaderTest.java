@@ -8,7 +8,11 @@
 package org.duracloud.snapshot.service.impl;
 
 import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -24,11 +28,14 @@ import org.springframework.util.CollectionUtils;
  */
 public class ContentPropertiesFileReaderTest {
 
+    private File dir;
+
     /**
      * @throws java.lang.Exception
      */
     @Before
     public void setUp() throws Exception {
+        dir = Files.createTempDirectory("content-properties").toFile();
     }
 
     /**
@@ -36,6 +43,7 @@ public class ContentPropertiesFileReaderTest {
      */
     @After
     public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
     }
 
     /**
@@ -71,6 +79,83 @@ public class ContentPropertiesFileReaderTest {
         Assert.assertEquals(2, count++);
     }
 
+    @Test
+    public void testResumeSeeksUsingOffsetIndex() throws Exception {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < 10; i++) {
+            json.append(i > 0 ? ",\n" : "")
+                .append("{\n  \"file").append(i).append("\": {\n    \"content-size\": \"")
+                .append(i).append("\"\n  }\n}");
+        }
+        json.append("\n]");
+        File propertiesFile = new File(dir, "content-properties.json");
+        Files.write(propertiesFile.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+
+        // read the whole file once, recording the offset of every third item
+        ContentPropertiesFileReader reader = createReader(propertiesFile, 0);
+        int count = 0;
+        while (reader.read() != null) {
+            count++;
+        }
+        Assert.assertEquals(10, count);
+        Assert.assertTrue(new File(dir, propertiesFile.getName() +
+                                        ContentPropertiesOffsetIndex.OFFSET_INDEX_SUFFIX).exists());
+
+        // make the first items unreadable, so that reading past them would fail
+        try (RandomAccessFile file = new RandomAccessFile(propertiesFile, "rw")) {
+            file.seek(json.indexOf("file1"));
+            file.write("!!!!!".getBytes(StandardCharsets.UTF_8));
+        }
+
+        reader = createReader(propertiesFile, 7);
+        Assert.assertEquals("file7", reader.read().getContentId());
+        Assert.assertEquals("file8", reader.read().getContentId());
+        Assert.assertEquals("file9", reader.read().getContentId());
+        Assert.assertNull(reader.read());
+    }
+
+    @Test
+    public void testResumeFallsBackWhenOffsetLeadsElsewhere() throws Exception {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < 10; i++) {
+            json.append(i > 0 ? ",\n" : "")
+                .append("{\n  \"file").append(i).append("\": {\n    \"content-size\": \"")
+                .append(i).append("\"\n  }\n}");
+        }
+        json.append("\n]");
+        File propertiesFile = new File(dir, "content-properties.json");
+        Files.write(propertiesFile.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+
+        ContentPropertiesFileReader reader = createReader(propertiesFile, 0);
+        while (reader.read() != null) {
+            // record the offsets of items 0, 3, 6 and 9
+        }
+
+        // point the offset of item 6 at item 5, which still lies between the
+        // offsets of items 3 and 9: the format (4 bytes), file length (8) and
+        // stride (4) are followed by 12 bytes per offset
+        File indexFile = new File(dir, propertiesFile.getName() + ContentPropertiesOffsetIndex.OFFSET_INDEX_SUFFIX);
+        try (RandomAccessFile index = new RandomAccessFile(indexFile, "rw")) {
+            index.seek(16 + 2 * 12);
+            index.writeLong(json.lastIndexOf("{", json.indexOf("\"file5\"")));
+        }
+
+        reader = createReader(propertiesFile, 7);
+        Assert.assertEquals("file7", reader.read().getContentId());
+        Assert.assertEquals("file8", reader.read().getContentId());
+        Assert.assertEquals("file9", reader.read().getContentId());
+        Assert.assertNull(reader.read());
+    }
+
+    private ContentPropertiesFileReader createReader(File propertiesFile, final long itemsRead) {
+        return new ContentPropertiesFileReader(propertiesFile, 3) {
+            @Override
+            protected long getItemsRead() {
+                return itemsRead;
+            }
+        };
+    }
+
     /**
      * @param props
      */
@@ -0,0 +1,100 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.junit.After;
+import org.junit.Test;
+
+public class ContentPropertiesJsonWriterTest extends SnapshotTestBase {
+
+    private File dir = getTempDir();
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        replayAll();
+        Map<String, String> props = new HashMap<>();
+        props.put("content-mimetype", "text/plain");
+        props.put("quoted", "say \"hi\" \\ bye");
+        props.put("control", "line1\nline2\ttab\u0001");
+        props.put("unicode", "caf\u00e9 \u2603");
+
+        File file = write("dir/\"odd\" name.txt", props, "empty", Collections.emptyMap());
+
+        ContentPropertiesFileReader reader = createReader(file);
+        ContentProperties first = reader.read();
+        assertEquals("dir/\"odd\" name.txt", first.getContentId());
+        assertEquals(props, first.getProperties());
+
+        ContentProperties second = reader.read();
+        assertEquals("empty", second.getContentId());
+        assertEquals(0, second.getProperties().size());
+
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        replayAll();
+        File file = write();
+        assertEquals("[\n]\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertNull(createReader(file).read());
+    }
+
+    @Test
+    public void testFormatMatchesExistingLayout() throws Exception {
+        replayAll();
+        File file = write("a", Collections.singletonMap("k", "v"), "b", Collections.singletonMap("k", "w"));
+        assertEquals("[\n" +
+                     "{\n  \"a\": {\n    \"k\": \"v\"\n  }\n},\n" +
+                     "{\n  \"b\": {\n    \"k\": \"w\"\n  }\n}\n" +
+                     "]\n",
+                     new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    private File write(Object... entries) throws Exception {
+        dir.mkdirs();
+        File file = new File(dir, "content-properties.json");
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            ContentPropertiesJsonWriter writer = new ContentPropertiesJsonWriter(out, 1);
+            writer.start();
+            for (int i = 0; i < entries.length; i += 2) {
+                writer.write((String) entries[i], (Map<String, String>) entries[i + 1]);
+            }
+            writer.finish();
+        }
+        return file;
+    }
+
+    private ContentPropertiesFileReader createReader(File file) {
+        return new ContentPropertiesFileReader(file) {
+            @Override
+            protected long getItemsRead() {
+                return 0;
+            }
+        };
+    }
+}
@@ -10,17 +10,24 @@ package org.duracloud.snapshot.service.impl;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.duracloud.chunk.manifest.ChunksManifest;
 import org.duracloud.client.ContentStore;
 import org.duracloud.error.ContentStoreException;
 import org.duracloud.snapshot.common.test.SnapshotTestBase;
 import org.easymock.Mock;
+import org.junit.After;
 import org.junit.Test;
 
 /**
@@ -33,6 +40,13 @@ public class ContentPropertiesWriterTest extends SnapshotTestBase {
     @Mock
     private ContentStore contentStore;
 
+    private File dir = getTempDir();
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
     /**
      * Test method for {@link org.duracloud.snapshot.service.impl.ContentPropertiesWriter#write(java.util.List)}.
      *
@@ -77,4 +91,111 @@ public class ContentPropertiesWriterTest extends SnapshotTestBase {
 
     }
 
+    @Test
+    public void testWriteTargetsChunkManifestByStagedSize() throws Exception {
+        String destinationSpaceId = "space-id";
+        File contentDir = new File(dir, "data");
+        FileUtils.writeByteArrayToFile(new File(contentDir, "small"), new byte[3]);
+        FileUtils.writeByteArrayToFile(new File(contentDir, "dir/large"), new byte[10]);
+
+        Map<String, String> props = new HashMap<>();
+        props.put("non-system-prop", "value");
+        Map<String, String> manifestProps = new HashMap<>();
+        manifestProps.put("content-type", "original-manifest-value");
+        Map<String, String> combinedProps = new HashMap<>(props);
+        combinedProps.putAll(manifestProps);
+
+        expect(contentStore.getStoreId()).andReturn("store-id");
+        expect(contentStore.getStorageProviderType()).andReturn("store-type");
+
+        // the small item is set directly, the large one goes straight to its manifest
+        contentStore.setContentProperties(destinationSpaceId, "small", props);
+        expectLastCall();
+        String manifestId = "dir/large" + ChunksManifest.manifestSuffix;
+        expect(contentStore.getContentProperties(destinationSpaceId, manifestId)).andReturn(manifestProps);
+        contentStore.setContentProperties(destinationSpaceId, manifestId, combinedProps);
+        expectLastCall();
+        replayAll();
+
+        ContentPropertiesWriter writer = new ContentPropertiesWriter(contentStore, destinationSpaceId);
+        writer.setStagedContent(contentDir, 5);
+        writer.write(Arrays.asList(new ContentProperties("small", props),
+                                   new ContentProperties("dir/large", props)));
+    }
+
+    @Test
+    public void testWriteFallsBackWhenStagedSizeMisleads() throws Exception {
+        String destinationSpaceId = "space-id";
+        File contentDir = new File(dir, "data");
+        FileUtils.writeByteArrayToFile(new File(contentDir, "small"), new byte[3]);
+        FileUtils.writeByteArrayToFile(new File(contentDir, "large"), new byte[10]);
+
+        Map<String, String> props = new HashMap<>();
+        props.put("non-system-prop", "value");
+        Map<String, String> manifestProps = new HashMap<>();
+        manifestProps.put("content-type", "original-manifest-value");
+        Map<String, String> combinedProps = new HashMap<>(props);
+        combinedProps.putAll(manifestProps);
+
+        expect(contentStore.getStoreId()).andReturn("store-id");
+        expect(contentStore.getStorageProviderType()).andReturn("store-type");
+
+        // the small item was stored in chunks and the large one whole, as
+        // when the chunk size has changed since they were uploaded
+        contentStore.setContentProperties(destinationSpaceId, "small", props);
+        expectLastCall().andThrow(new ContentStoreException("test"));
+        String manifestId = "small" + ChunksManifest.manifestSuffix;
+        expect(contentStore.getContentProperties(destinationSpaceId, manifestId)).andReturn(manifestProps);
+        contentStore.setContentProperties(destinationSpaceId, manifestId, combinedProps);
+        expectLastCall();
+
+        expect(contentStore.getContentProperties(destinationSpaceId, "large" + ChunksManifest.manifestSuffix))
+            .andThrow(new ContentStoreException("test"));
+        contentStore.setContentProperties(destinationSpaceId, "large", props);
+        expectLastCall();
+        replayAll();
+
+        ContentPropertiesWriter writer = new ContentPropertiesWriter(contentStore, destinationSpaceId);
+        writer.setStagedContent(contentDir, 5);
+        writer.write(Arrays.asList(new ContentProperties("small", props),
+                                   new ContentProperties("large", props)));
+    }
+
+    @Test
+    public void testWriteSkipsPropertiesAppliedOnUpload() throws Exception {
+        String destinationSpaceId = "space-id";
+        dir.mkdirs();
+        File md5Manifest = new File(dir, ManifestFileHelper.MANIFEST_MD5_TEXT_FILE_NAME);
+        Files.write(md5Manifest.toPath(),
+                    (ManifestFileHelper.formatManifestEntry("a", "md5-a") +
+                     ManifestFileHelper.formatManifestEntry("b", "md5-b")).getBytes(StandardCharsets.UTF_8));
+        File propertiesFile = new File(dir, "content-properties.json");
+        Files.write(propertiesFile.toPath(), "[]".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, String> props = new HashMap<>();
+        props.put("non-system-prop", "value");
+
+        expect(contentStore.getStoreId()).andReturn("store-id");
+        expect(contentStore.getStorageProviderType()).andReturn("store-type");
+        contentStore.setContentProperties(destinationSpaceId, "b", props);
+        expectLastCall();
+        replayAll();
+
+        RestoreContentIndex index = new RestoreContentIndex(new File(dir, "restore-index.db"),
+                                                            md5Manifest,
+                                                            propertiesFile);
+        index.open(1, 1000);
+        try {
+            index.recordApplied("a");
+
+            ContentPropertiesWriter writer = new ContentPropertiesWriter(contentStore, destinationSpaceId);
+            writer.setContentIndex(index);
+            writer.write(Arrays.asList(new ContentProperties("a", props),
+                                       new ContentProperties("b", props)));
+            assertTrue(index.isApplied("b"));
+        } finally {
+            index.close();
+        }
+    }
+
 }
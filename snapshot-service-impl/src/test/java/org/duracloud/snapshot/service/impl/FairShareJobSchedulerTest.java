@@ -0,0 +1,197 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.duracloud.snapshot.service.impl.FairShareJobScheduler.Priority;
+import org.junit.After;
+import org.junit.Test;
+
+public class FairShareJobSchedulerTest extends SnapshotTestBase {
+
+    private FairShareJobScheduler scheduler = new FairShareJobScheduler(1);
+    private List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testRestoresFirstThenTenantsTakeTurns() throws Exception {
+        replayAll();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        submit("blocker", "tenant-a", Priority.SNAPSHOT, () -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch done = new CountDownLatch(4);
+        submit("a-1", "tenant-a", Priority.SNAPSHOT, done::countDown);
+        submit("a-2", "tenant-a", Priority.SNAPSHOT, done::countDown);
+        submit("b-1", "tenant-b", Priority.SNAPSHOT, done::countDown);
+        submit("restore-1", "tenant-c", Priority.RESTORE, done::countDown);
+
+        List<JobQueueStatus> statuses = scheduler.getStatuses();
+        assertEquals(5, statuses.size());
+        assertEquals("blocker", statuses.get(0).getName());
+        assertTrue(statuses.get(0).isRunning());
+        assertEquals("restore-1", statuses.get(1).getName());
+        assertEquals(1, statuses.get(1).getPosition());
+        assertEquals("b-1", statuses.get(2).getName());
+        assertEquals("a-1", statuses.get(3).getName());
+        assertEquals("a-2", statuses.get(4).getName());
+        assertEquals(4, scheduler.getStatus("a-2").getPosition());
+        assertNull(scheduler.getStatus("unknown"));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("blocker", "restore-1", "b-1", "a-1", "a-2"), started);
+    }
+
+    @Test
+    public void testEstimatesStartFromAverageDuration() throws Exception {
+        replayAll();
+        CountDownLatch done = new CountDownLatch(1);
+        submit("quick", "tenant-a", Priority.SNAPSHOT, done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        submit("slow", "tenant-a", Priority.SNAPSHOT, () -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        submit("waiting", "tenant-b", Priority.SNAPSHOT, () -> { });
+
+        JobQueueStatus waiting = scheduler.getStatus("waiting");
+        assertEquals(1, waiting.getPosition());
+        assertTrue(waiting.getEstimatedStart() != null);
+        release.countDown();
+    }
+
+    @Test
+    public void testJobsWaitForStagingSpace() throws Exception {
+        replayAll();
+        scheduler.shutdown();
+        StagingCapacityTest.FixedCapacity capacity = new StagingCapacityTest.FixedCapacity(1000, 0, true);
+        scheduler = new FairShareJobScheduler(2, capacity);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        submit("large-1", "tenant-a", Priority.SNAPSHOT, 800, () -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch done = new CountDownLatch(2);
+        submit("large-2", "tenant-b", Priority.SNAPSHOT, 500, done::countDown);
+        CountDownLatch smallDone = new CountDownLatch(1);
+        submit("small", "tenant-c", Priority.SNAPSHOT, 100, () -> {
+            smallDone.countDown();
+            done.countDown();
+        });
+
+        // the small job does not wait behind the job which does not fit
+        assertTrue(smallDone.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("large-1", "small"), started);
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("large-1", "small", "large-2"), started);
+    }
+
+    @Test
+    public void testJobPassedOverTooLongHoldsBackOthers() throws Exception {
+        replayAll();
+        scheduler.shutdown();
+        StagingCapacityTest.FixedCapacity capacity = new StagingCapacityTest.FixedCapacity(1000, 0, true);
+        scheduler = new FairShareJobScheduler(2, capacity, 0);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        submit("large-1", "tenant-a", Priority.SNAPSHOT, 800, () -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch done = new CountDownLatch(2);
+        submit("large-2", "tenant-b", Priority.SNAPSHOT, 500, done::countDown);
+        // let the free slot pass over the large job
+        Thread.sleep(200);
+        submit("small", "tenant-c", Priority.SNAPSHOT, 100, done::countDown);
+
+        Thread.sleep(200);
+        assertEquals(Arrays.asList("large-1"), started);
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, started.size());
+    }
+
+    @Test
+    public void testSlotSurvivesSchedulingError() throws Exception {
+        replayAll();
+        scheduler.shutdown();
+        StagingCapacityTest.FixedCapacity capacity = new StagingCapacityTest.FixedCapacity(1000, 0, true) {
+            private boolean failed = false;
+
+            @Override
+            public synchronized boolean reserve(String jobName, long bytes, File stagingDir) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("reservation failed");
+                }
+                return super.reserve(jobName, bytes, stagingDir);
+            }
+        };
+        scheduler = new FairShareJobScheduler(1, capacity);
+
+        CountDownLatch done = new CountDownLatch(1);
+        submit("job", "tenant-a", Priority.SNAPSHOT, 100, done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("job"), started);
+    }
+
+    private void submit(String name, String tenant, Priority priority, Runnable task) {
+        submit(name, tenant, priority, 0, task);
+    }
+
+    private void submit(String name, String tenant, Priority priority, long requiredBytes, Runnable task) {
+        FairShareJobScheduler.setNextJob(name, tenant, priority, requiredBytes);
+        scheduler.execute(() -> {
+            started.add(name);
+            task.run();
+        });
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
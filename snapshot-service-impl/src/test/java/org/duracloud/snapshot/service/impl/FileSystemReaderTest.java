@@ -7,19 +7,20 @@
  */
 package org.duracloud.snapshot.service.impl;
 
-import static org.easymock.EasyMock.anyLong;
 import static org.easymock.EasyMock.expect;
-import static org.easymock.EasyMock.isA;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.apache.commons.io.FileUtils;
 import org.duracloud.snapshot.common.test.SnapshotTestBase;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.item.ExecutionContext;
 
@@ -47,7 +48,7 @@ public class FileSystemReaderTest extends SnapshotTestBase {
         StepExecution stepExecution = createMock(StepExecution.class);
         ExecutionContext context = createMock(ExecutionContext.class);
         expect(stepExecution.getExecutionContext()).andReturn(context);
-        expect(context.getLong(isA(String.class), anyLong())).andReturn(0l);
+        expect(context.get(StepExecutionSupport.CHECKPOINT_KEY)).andReturn(null);
 
         File rootDirectory =
             new File(System.getProperty("java.io.tmpdir")
@@ -82,4 +83,41 @@ public class FileSystemReaderTest extends SnapshotTestBase {
 
     }
 
+    @Test
+    public void testResumesAfterCheckpoint() throws Exception {
+        StepExecution stepExecution = createMock(StepExecution.class);
+        ExecutionContext context = new ExecutionContext();
+        expect(stepExecution.getExecutionContext()).andReturn(context).anyTimes();
+        expect(stepExecution.getExitStatus()).andReturn(ExitStatus.COMPLETED);
+
+        File rootDirectory = getTempDir();
+        for (String name : new String[] {"a", "b/c", "b/d", "e"}) {
+            File file = new File(rootDirectory, name);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+
+        replayAll();
+
+        FileSystemReader reader = new FileSystemReader(rootDirectory, 2, 2);
+        reader.beforeStep(stepExecution);
+        File a = reader.read();
+        File c = reader.read();
+        File d = reader.read();
+
+        // files written out of order only advance the checkpoint once every earlier file is written
+        reader.afterWrite(Arrays.asList(a, d));
+        Assert.assertEquals("a", context.getString(StepExecutionSupport.CHECKPOINT_KEY));
+        reader.afterWrite(Arrays.asList(c));
+        Assert.assertEquals(new File("b", "d").getPath(),
+                            context.getString(StepExecutionSupport.CHECKPOINT_KEY));
+        reader.afterStep(stepExecution);
+
+        FileSystemReader resumed = new FileSystemReader(rootDirectory, 2, 2);
+        resumed.beforeStep(stepExecution);
+        Assert.assertEquals(new File(rootDirectory, "e"), resumed.read());
+        Assert.assertNull(resumed.read());
+        FileUtils.deleteDirectory(rootDirectory);
+    }
+
 }
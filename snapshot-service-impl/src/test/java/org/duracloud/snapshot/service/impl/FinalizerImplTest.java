@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.duracloud.snapshot.service.RestoreManager;
+import org.duracloud.snapshot.service.SnapshotManager;
+import org.easymock.Mock;
+import org.junit.After;
+import org.junit.Test;
+
+public class FinalizerImplTest extends SnapshotTestBase {
+
+    @Mock
+    private SnapshotManager snapshotManager;
+
+    @Mock
+    private RestoreManager restoreManager;
+
+    private FinalizerImpl finalizer;
+
+    @After
+    public void cleanup() {
+        if (finalizer != null) {
+            finalizer.destroy();
+        }
+    }
+
+    @Test
+    public void testBacksOffEntitiesNotYetFinalized() throws Exception {
+        expect(snapshotManager.getSnapshotsToFinalize()).andReturn(Arrays.asList("pending", "done"));
+        expect(restoreManager.getRestoresToFinalize()).andReturn(Collections.singletonList("restore"));
+        expect(snapshotManager.finalizeSnapshot("pending")).andReturn(false);
+        expect(snapshotManager.finalizeSnapshot("done")).andReturn(true);
+        expect(restoreManager.finalizeRestore("restore")).andThrow(new RuntimeException("unreachable host"));
+
+        // the second cycle finds the same entities waiting, but none is due to be checked again
+        expect(snapshotManager.getSnapshotsToFinalize()).andReturn(Collections.singletonList("pending"));
+        expect(restoreManager.getRestoresToFinalize()).andReturn(Collections.singletonList("restore"));
+        replayAll();
+
+        finalizer = createFinalizer();
+        finalizer.runCycle();
+        assertEquals(3, finalizer.getBacklog());
+        awaitIdle();
+
+        finalizer.runCycle();
+        assertEquals(2, finalizer.getBacklog());
+        assertEquals(0, finalizer.getInFlight());
+        assertTrue(finalizer.getLastCycleDurationMs() >= 0);
+    }
+
+    @Test
+    public void testChecksAgainOnceFinalizedEntityReturns() throws Exception {
+        expect(snapshotManager.getSnapshotsToFinalize()).andReturn(Collections.singletonList("snapshot"));
+        expect(restoreManager.getRestoresToFinalize()).andReturn(Collections.emptyList());
+        expect(snapshotManager.finalizeSnapshot("snapshot")).andReturn(false);
+
+        // once no longer listed its backoff is forgotten
+        expect(snapshotManager.getSnapshotsToFinalize()).andReturn(Collections.emptyList());
+        expect(restoreManager.getRestoresToFinalize()).andReturn(Collections.emptyList());
+
+        expect(snapshotManager.getSnapshotsToFinalize()).andReturn(Collections.singletonList("snapshot"));
+        expect(restoreManager.getRestoresToFinalize()).andReturn(Collections.emptyList());
+        expect(snapshotManager.finalizeSnapshot("snapshot")).andReturn(true);
+        replayAll();
+
+        finalizer = createFinalizer();
+        finalizer.runCycle();
+        awaitIdle();
+        finalizer.runCycle();
+        assertEquals(0, finalizer.getBacklog());
+        finalizer.runCycle();
+        awaitIdle();
+    }
+
+    private FinalizerImpl createFinalizer() {
+        FinalizerImpl finalizer = new FinalizerImpl(2, 60000);
+        finalizer.setSnapshotManager(snapshotManager);
+        finalizer.setRestoreManager(restoreManager);
+        return finalizer;
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (finalizer.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, finalizer.getInFlight());
+    }
+}
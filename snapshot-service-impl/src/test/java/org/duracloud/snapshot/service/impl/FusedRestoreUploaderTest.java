@@ -0,0 +1,163 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.util.ChecksumUtil;
+import org.duracloud.common.util.ChecksumUtil.Algorithm;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.easymock.Mock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FusedRestoreUploaderTest extends SnapshotTestBase {
+
+    private String spaceId = "space-id";
+    private File dir = getTempDir();
+    private File dataDir;
+    private File md5Manifest;
+    private File propertiesFile;
+    private String md5;
+    private RestoreContentIndex index;
+    private FusedRestoreUploader uploader;
+
+    @Mock
+    private ContentStore contentStore;
+
+    @Before
+    public void setUp() throws Exception {
+        dataDir = new File(dir, "data");
+        dataDir.mkdirs();
+        File file = new File(dataDir, "file");
+        FileUtils.writeStringToFile(file, "restored content", StandardCharsets.UTF_8);
+        md5 = new ChecksumUtil(Algorithm.MD5).generateChecksum(file);
+
+        md5Manifest = new File(dir, ManifestFileHelper.MANIFEST_MD5_TEXT_FILE_NAME);
+        Files.write(md5Manifest.toPath(),
+                    (ManifestFileHelper.formatManifestEntry("file", md5) +
+                     ManifestFileHelper.formatManifestEntry("other", "md5-other"))
+                        .getBytes(StandardCharsets.UTF_8));
+
+        propertiesFile = new File(dir, "content-properties.json");
+        Files.write(propertiesFile.toPath(),
+                    ("[\n{\"file\":{\"content-mimetype\":\"text/plain\",\"color\":\"blue\"}},\n" +
+                     "{\"other\":{\"color\":\"red\"}}\n]").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        if (uploader != null) {
+            uploader.close();
+        }
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testUploadWithProperties() throws Exception {
+        Capture<Map<String, String>> props = new Capture<>();
+        Capture<InputStream> stream = new Capture<>();
+        expect(contentStore.addContent(eq(spaceId),
+                                       eq("file"),
+                                       capture(stream),
+                                       eq(16L),
+                                       eq("text/plain"),
+                                       eq(md5),
+                                       capture(props)))
+            .andAnswer(() -> {
+                IOUtils.toByteArray(stream.getValue());
+                return md5;
+            });
+        replayAll();
+
+        uploader = createUploader();
+        uploader.open(1, 1000);
+        uploader.upload("file", new File(dataDir, "file"));
+        uploader.close();
+
+        assertEquals("blue", props.getValue().get("color"));
+
+        // the index is kept, so reopening does not depend on the source files
+        propertiesFile.delete();
+        uploader = createUploader();
+        uploader.open(1, 1000);
+        assertTrue(index.isApplied("file"));
+        assertFalse(index.isApplied("other"));
+        assertEquals("red", index.getProperties("other").get("color"));
+    }
+
+    @Test
+    public void testFailsVerification() throws Exception {
+        File other = new File(dataDir, "other");
+        FileUtils.writeStringToFile(other, "changed content", StandardCharsets.UTF_8);
+        expect(contentStore.addContent(eq(spaceId),
+                                       eq("other"),
+                                       isA(InputStream.class),
+                                       eq(15L),
+                                       eq("application/octet-stream"),
+                                       eq("md5-other"),
+                                       anyObject()))
+            .andAnswer(() -> {
+                IOUtils.toByteArray((InputStream) EasyMock.getCurrentArguments()[2]);
+                return "md5-other";
+            });
+        replayAll();
+
+        uploader = createUploader();
+        uploader.open(1, 1000);
+        try {
+            uploader.upload("other", other);
+            fail("upload should fail verification");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("failed verification"));
+        }
+        assertFalse(index.isApplied("other"));
+    }
+
+    @Test
+    public void testFailsIfNotInManifest() throws Exception {
+        File extra = new File(dataDir, "extra");
+        FileUtils.writeStringToFile(extra, "extra", StandardCharsets.UTF_8);
+        replayAll();
+
+        uploader = createUploader();
+        uploader.open(1, 1000);
+        try {
+            uploader.upload("extra", extra);
+            fail("upload should fail for a file not in the manifest");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("not listed in the manifest"));
+        }
+    }
+
+    private FusedRestoreUploader createUploader() {
+        index = new RestoreContentIndex(new File(dir, "restore-index.db"), md5Manifest, propertiesFile);
+        return new FusedRestoreUploader(contentStore, spaceId, index, null);
+    }
+}
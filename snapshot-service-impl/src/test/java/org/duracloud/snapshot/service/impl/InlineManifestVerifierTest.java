@@ -0,0 +1,111 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.duracloud.common.constant.Constants;
+import org.duracloud.common.constant.ManifestFormat;
+import org.duracloud.manifest.impl.TsvManifestFormatter;
+import org.duracloud.manifeststitch.StitchedManifestGenerator;
+import org.duracloud.mill.db.model.ManifestItem;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.easymock.Mock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InlineManifestVerifierTest extends SnapshotTestBase {
+
+    private String spaceId = "space-id";
+    private File dbFile;
+    private InlineManifestVerifier verifier;
+
+    @Mock
+    private StitchedManifestGenerator generator;
+
+    @Before
+    public void setUp() throws Exception {
+        dbFile = File.createTempFile("space-manifest", ".db");
+        dbFile.deleteOnExit();
+    }
+
+    @After
+    public void cleanup() {
+        if (verifier != null) {
+            verifier.close();
+        }
+    }
+
+    @Test
+    public void testSuccess() throws Exception {
+        startVerifier("a", "md5-a", "b", "md5-b", Constants.SNAPSHOT_PROPS_FILENAME, "md5-p");
+        verifier.check("a", "md5-a");
+        verifier.check("b", "md5-b");
+        verifier.check("b", "md5-b");
+        assertTrue(verifier.finish());
+    }
+
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        startVerifier("a", "md5-a", "b", "md5-b");
+        verifier.check("a", "md5-a");
+        verifier.check("b", "other");
+        assertFalse(verifier.finish());
+    }
+
+    @Test
+    public void testItemNotWritten() throws Exception {
+        startVerifier("a", "md5-a", "b", "md5-b");
+        verifier.check("a", "md5-a");
+        assertFalse(verifier.finish());
+    }
+
+    @Test
+    public void testItemNotInManifest() throws Exception {
+        startVerifier("a", "md5-a");
+        verifier.check("a", "md5-a");
+        verifier.check("c", "md5-c");
+        assertFalse(verifier.finish());
+    }
+
+    @Test
+    public void testIndexFailure() throws Exception {
+        expect(generator.generate(spaceId, ManifestFormat.TSV)).andThrow(new RuntimeException("unavailable"));
+        replayAll();
+        verifier = new InlineManifestVerifier(generator, spaceId, dbFile);
+        verifier.start();
+        assertFalse(verifier.finish());
+    }
+
+    private void startVerifier(String... entries) throws Exception {
+        expect(generator.generate(spaceId, ManifestFormat.TSV)).andReturn(createManifest(entries));
+        replayAll();
+        verifier = new InlineManifestVerifier(generator, spaceId, dbFile);
+        verifier.start();
+    }
+
+    private InputStream createManifest(String... entries) {
+        TsvManifestFormatter formatter = new TsvManifestFormatter();
+        StringBuilder manifest = new StringBuilder(formatter.getHeader() + "\n");
+        for (int i = 0; i < entries.length; i += 2) {
+            ManifestItem item = new ManifestItem();
+            item.setContentId(entries[i]);
+            item.setContentChecksum(entries[i + 1]);
+            manifest.append(formatter.formatLine(item)).append("\n");
+        }
+        return new ByteArrayInputStream(manifest.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.junit.After;
+import org.junit.Test;
+
+public class ManifestAppenderTest extends SnapshotTestBase {
+
+    private File dir = getTempDir();
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testConcurrentAppends() throws Exception {
+        replayAll();
+        dir.mkdirs();
+        final ManifestAppender appender = new ManifestAppender(4, 10, 60000, true);
+        final BufferedWriter md5Writer = appender.open(new File(dir, "manifest-md5.txt"));
+        final BufferedWriter sha256Writer = appender.open(new File(dir, "manifest-sha256.txt"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            executor.execute(() -> {
+                try {
+                    for (int i = 0; i < 250; i++) {
+                        String contentId = "item-" + thread + "-" + i;
+                        appender.append(md5Writer, ManifestFileHelper.formatManifestEntry(contentId, "md5"));
+                        appender.append(sha256Writer, ManifestFileHelper.formatManifestEntry(contentId, "sha"));
+                    }
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        appender.close();
+        md5Writer.close();
+        sha256Writer.close();
+
+        List<String> md5Lines = Files.readAllLines(new File(dir, "manifest-md5.txt").toPath(),
+                                                   StandardCharsets.UTF_8);
+        List<String> sha256Lines = Files.readAllLines(new File(dir, "manifest-sha256.txt").toPath(),
+                                                      StandardCharsets.UTF_8);
+        assertEquals(1000, md5Lines.size());
+        assertEquals(1000, sha256Lines.size());
+
+        List<String> expected = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < 250; i++) {
+                expected.add("md5  data/item-" + t + "-" + i);
+            }
+        }
+        assertTrue(md5Lines.containsAll(expected));
+    }
+
+    @Test
+    public void testDrainFlushesEntries() throws Exception {
+        replayAll();
+        dir.mkdirs();
+        File file = new File(dir, "content-properties.json");
+        ManifestAppender appender = new ManifestAppender(10, 1000, 60000, false);
+        BufferedWriter writer = appender.open(file);
+
+        appender.append(writer, "[\n");
+        appender.append(writer, "]\n");
+        appender.drain();
+
+        assertEquals("[\n]\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        appender.close();
+        writer.close();
+    }
+
+    @Test
+    public void testAppendFailsOnceClosed() throws Exception {
+        replayAll();
+        dir.mkdirs();
+        ManifestAppender appender = new ManifestAppender(1, 1000, 60000, false);
+        BufferedWriter writer = appender.open(new File(dir, "manifest-md5.txt"));
+        appender.append(writer, "entry\n");
+        appender.close();
+
+        try {
+            appender.append(writer, "entry\n");
+            fail("append should fail once the appender is closed");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("closed"));
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.duracloud.common.util.ChecksumUtil;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetadataZipPackagerTest extends SnapshotTestBase {
+
+    private File dir = getTempDir();
+    private MetadataZipPackager packager;
+
+    @Before
+    public void setUp() throws Exception {
+        dir.mkdirs();
+        File manifest = new File(dir, "manifest-md5.txt");
+        FileUtils.writeStringToFile(manifest, "abc  content-1\ndef  content-2\n", StandardCharsets.UTF_8);
+        File properties = new File(dir, "content-properties.json");
+        FileUtils.writeStringToFile(properties, "[\n{\"content-1\":{}}\n]", StandardCharsets.UTF_8);
+        packager = new MetadataZipPackager(Arrays.asList(manifest, properties));
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testStreamMatchesMeasure() throws Exception {
+        replayAll();
+        MetadataZipPackager.Packaged measured = packager.measure();
+
+        byte[] streamed;
+        try (MetadataZipPackager.PackagingStream in = packager.stream()) {
+            assertNull(in.getPackaged());
+            streamed = IOUtils.toByteArray(in);
+            assertEquals(measured.getChecksum(), in.getPackaged().getChecksum());
+            assertEquals(measured.getLength(), in.getPackaged().getLength());
+        }
+        assertEquals(measured.getLength(), streamed.length);
+        assertEquals(measured.getChecksum(),
+                     new ChecksumUtil(ChecksumUtil.Algorithm.MD5).generateChecksum(new ByteArrayInputStream(streamed)));
+
+        File zipFile = new File(dir, "metadata.zip");
+        MetadataZipPackager.Packaged written = packager.writeTo(zipFile);
+        assertEquals(measured.getChecksum(), written.getChecksum());
+        assertEquals(zipFile.length(), written.getLength());
+    }
+
+    @Test
+    public void testContents() throws Exception {
+        replayAll();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packager.write(out);
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry = zip.getNextEntry();
+            assertEquals("manifest-md5.txt", entry.getName());
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertEquals("abc  content-1\ndef  content-2\n", IOUtils.toString(zip, StandardCharsets.UTF_8));
+
+            entry = zip.getNextEntry();
+            assertEquals("content-properties.json", entry.getName());
+            assertEquals("[\n{\"content-1\":{}}\n]", IOUtils.toString(zip, StandardCharsets.UTF_8));
+
+            assertNull(zip.getNextEntry());
+        }
+    }
+}
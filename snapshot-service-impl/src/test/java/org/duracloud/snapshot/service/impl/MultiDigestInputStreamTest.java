@@ -0,0 +1,47 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.duracloud.common.util.ChecksumUtil;
+import org.duracloud.common.util.ChecksumUtil.Algorithm;
+import org.junit.Test;
+
+public class MultiDigestInputStreamTest {
+
+    @Test
+    public void testChecksumsMatchSeparatePasses() throws Exception {
+        byte[] data = "the quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+
+        MultiDigestInputStream stream =
+            new MultiDigestInputStream(new ByteArrayInputStream(data), Algorithm.MD5, Algorithm.SHA_256);
+        assertFalse(stream.isEndOfStream());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOUtils.copy(stream, out);
+
+        assertTrue(stream.isEndOfStream());
+        assertEquals(data.length, stream.getBytesRead());
+        assertEquals(new ChecksumUtil(Algorithm.MD5).generateChecksum(new ByteArrayInputStream(data)),
+                     stream.getChecksum(Algorithm.MD5));
+        assertEquals(new ChecksumUtil(Algorithm.SHA_256).generateChecksum(new ByteArrayInputStream(data)),
+                     stream.getChecksum(Algorithm.SHA_256));
+
+        //checksums are stable once completed
+        assertEquals(stream.getChecksum(Algorithm.MD5), stream.getChecksum(Algorithm.MD5));
+    }
+
+}
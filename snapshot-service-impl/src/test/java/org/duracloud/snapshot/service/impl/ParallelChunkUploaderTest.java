@@ -0,0 +1,160 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.isNull;
+import static org.easymock.EasyMock.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.duracloud.chunk.manifest.ChunksManifest;
+import org.duracloud.chunk.manifest.ChunksManifestBean;
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.util.ChecksumUtil;
+import org.duracloud.common.util.ChecksumUtil.Algorithm;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.easymock.Mock;
+import org.junit.After;
+import org.junit.Test;
+
+public class ParallelChunkUploaderTest extends SnapshotTestBase {
+
+    private File dir = getTempDir();
+
+    private String spaceId = "space-id";
+
+    @Mock
+    private ContentStore contentStore;
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testUpload() throws Exception {
+        byte[] content = new byte[25];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        File file = new File(dir, "file");
+        FileUtils.writeByteArrayToFile(file, content);
+
+        String contentId = "dir/file";
+        ChecksumUtil checksumUtil = new ChecksumUtil(Algorithm.MD5);
+        Map<String, String> props = new HashMap<>();
+        props.put(ContentStore.CONTENT_MIMETYPE, "text/plain");
+        props.put("color", "blue");
+        Capture<Map<String, String>> manifestProps = new Capture<>();
+        expect(contentStore.addContent(eq(spaceId),
+                                       startsWith(contentId + ChunksManifest.chunkSuffix),
+                                       isA(InputStream.class),
+                                       anyLong(),
+                                       isA(String.class),
+                                       isNull(String.class),
+                                       isNull(Map.class)))
+            .andAnswer(() -> storedChecksum((InputStream) EasyMock.getCurrentArguments()[2]))
+            .times(3);
+        expect(contentStore.addContent(eq(spaceId),
+                                       eq(contentId + ChunksManifest.manifestSuffix),
+                                       isA(InputStream.class),
+                                       anyLong(),
+                                       eq("application/xml"),
+                                       isA(String.class),
+                                       capture(manifestProps)))
+            .andReturn("manifest-checksum");
+        replayAll();
+
+        ParallelChunkUploader uploader = new ParallelChunkUploader(contentStore, 10, 2, 4);
+        try {
+            assertTrue(uploader.isChunked(file));
+            ChunksManifest manifest = uploader.upload(spaceId, contentId, file, props);
+
+            assertEquals(checksumUtil.generateChecksum(file), manifest.getHeader().getSourceMD5());
+            assertEquals("text/plain", manifest.getHeader().getSourceMimetype());
+            assertEquals("blue", manifestProps.getValue().get("color"));
+            assertFalse(manifestProps.getValue().containsKey(ContentStore.CONTENT_MIMETYPE));
+            assertEquals(content.length, manifest.getHeader().getSourceByteSize());
+            List<ChunksManifestBean.ManifestEntry> entries = new ArrayList<>(manifest.getEntries());
+            assertEquals(3, entries.size());
+            long total = 0;
+            for (ChunksManifestBean.ManifestEntry entry : entries) {
+                total += entry.getByteSize();
+            }
+            assertEquals(content.length, total);
+        } finally {
+            uploader.shutdown();
+        }
+    }
+
+    @Test
+    public void testMismatchRemovesChunksWithoutManifest() throws Exception {
+        File file = new File(dir, "file");
+        FileUtils.writeByteArrayToFile(file, new byte[25]);
+
+        String contentId = "dir/file";
+        expect(contentStore.addContent(eq(spaceId),
+                                       startsWith(contentId + ChunksManifest.chunkSuffix),
+                                       isA(InputStream.class),
+                                       anyLong(),
+                                       isA(String.class),
+                                       isNull(String.class),
+                                       isNull(Map.class)))
+            .andAnswer(() -> storedChecksum((InputStream) EasyMock.getCurrentArguments()[2]))
+            .times(3);
+        contentStore.deleteContent(eq(spaceId), startsWith(contentId + ChunksManifest.chunkSuffix));
+        expectLastCall().times(3);
+        replayAll();
+
+        ParallelChunkUploader uploader = new ParallelChunkUploader(contentStore, 10, 2, 4);
+        try {
+            uploader.upload(spaceId, contentId, file, null, "manifest-md5");
+            fail("upload should fail verification");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("failed verification"));
+        } finally {
+            uploader.shutdown();
+        }
+    }
+
+    @Test
+    public void testSmallFileNotChunked() throws Exception {
+        replayAll();
+        File file = new File(dir, "small");
+        FileUtils.writeByteArrayToFile(file, new byte[10]);
+        ParallelChunkUploader uploader = new ParallelChunkUploader(contentStore, 10, 2, 4);
+        assertFalse(uploader.isChunked(file));
+        uploader.shutdown();
+    }
+
+    private String storedChecksum(InputStream stream) throws Exception {
+        byte[] bytes = IOUtils.toByteArray(stream);
+        return new ChecksumUtil(Algorithm.MD5).generateChecksum(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.junit.After;
+import org.junit.Test;
+
+public class ParallelFileScannerTest extends SnapshotTestBase {
+
+    private File dir = getTempDir();
+
+    private List<String> names = Arrays.asList("a", "a-b", "b/c/d", "b/c/e", "b/f", "c/g", "c/h/i", "d");
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testScansInOrder() throws Exception {
+        replayAll();
+        createFiles();
+        new File(dir, "empty").mkdirs();
+
+        // a buffer smaller than the tree makes the scan wait for files to be taken
+        assertEquals(names, scan(null, 4, 1));
+    }
+
+    @Test
+    public void testResumesAfterCheckpoint() throws Exception {
+        replayAll();
+        createFiles();
+        for (int i = 0; i < names.size(); i++) {
+            assertEquals(names.subList(i + 1, names.size()), scan(names.get(i), 2, 10));
+        }
+
+        // a checkpoint naming a file which has since been removed
+        assertEquals(names.subList(4, names.size()), scan("b/c/z", 2, 10));
+    }
+
+    @Test
+    public void testCompare() throws Exception {
+        replayAll();
+        assertTrue(ParallelFileScanner.compare(Paths.get("a"), Paths.get("a-b")) < 0);
+        assertTrue(ParallelFileScanner.compare(Paths.get("a/z"), Paths.get("a-b")) < 0);
+        assertTrue(ParallelFileScanner.compare(Paths.get("a"), Paths.get("a/b")) < 0);
+        assertEquals(0, ParallelFileScanner.compare(Paths.get("a/b"), Paths.get("a/b")));
+    }
+
+    private void createFiles() throws Exception {
+        for (String name : names) {
+            File file = new File(dir, name);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+    }
+
+    private List<String> scan(String checkpoint, int threads, int bufferSize) throws Exception {
+        List<String> scanned = new ArrayList<>();
+        try (ParallelFileScanner scanner = new ParallelFileScanner(dir, checkpoint, threads, bufferSize)) {
+            scanner.start();
+            File file;
+            while ((file = scanner.next()) != null) {
+                scanned.add(scanner.relativize(file).replace(File.separatorChar, '/'));
+            }
+        }
+        return scanned;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.duracloud.common.model.ContentItem;
+import org.duracloud.retrieval.source.RetrievalSource;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.easymock.Mock;
+import org.junit.Test;
+
+public class PrefetchingSpaceItemReaderTest extends SnapshotTestBase {
+
+    @Mock
+    private RetrievalSource retrievalSource;
+
+    @Test
+    public void testReadsAllItemsInOrder() throws Exception {
+        expect(retrievalSource.getNextContentItem()).andReturn(new ContentItem("space", "a"));
+        expect(retrievalSource.getNextContentItem()).andReturn(new ContentItem("space", "b"));
+        expect(retrievalSource.getNextContentItem()).andReturn(new ContentItem("space", "c"));
+        expect(retrievalSource.getNextContentItem()).andReturn(null);
+        replayAll();
+
+        PrefetchingSpaceItemReader reader = new PrefetchingSpaceItemReader(retrievalSource, 1);
+        assertEquals("a", reader.read().getContentId());
+        assertEquals("b", reader.read().getContentId());
+        assertEquals("c", reader.read().getContentId());
+        assertNull(reader.read());
+        // the end of the listing is seen by every subsequent read
+        assertNull(reader.read());
+        reader.afterStep(null);
+    }
+
+    @Test
+    public void testListingErrorIsRethrown() throws Exception {
+        expect(retrievalSource.getNextContentItem()).andReturn(new ContentItem("space", "a"));
+        expect(retrievalSource.getNextContentItem()).andThrow(new RuntimeException("listing failed"));
+        replayAll();
+
+        PrefetchingSpaceItemReader reader = new PrefetchingSpaceItemReader(retrievalSource, 10);
+        assertEquals("a", reader.read().getContentId());
+        try {
+            reader.read();
+            fail("listing error should be rethrown");
+        } catch (RuntimeException ex) {
+            assertEquals("listing failed", ex.getMessage());
+        }
+        reader.afterStep(null);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.model.ContentItem;
+import org.duracloud.common.util.ChecksumUtil;
+import org.duracloud.common.util.ChecksumUtil.Algorithm;
+import org.duracloud.common.util.DateUtil;
+import org.duracloud.common.util.DateUtil.DateFormat;
+import org.duracloud.domain.Content;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.easymock.Mock;
+import org.junit.After;
+import org.junit.Test;
+
+public class RangedContentRetrieverTest extends SnapshotTestBase {
+
+    @Mock
+    private ContentStore contentStore;
+
+    private File dir = getTempDir();
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testResumesFromPartialFile() throws Exception {
+        byte[] data = "0123456789abcdefghij".getBytes(StandardCharsets.UTF_8);
+        File localFile = new File(dir, "data/item.txt");
+        PartialFileDirectory partialFiles = new PartialFileDirectory(dir, new File(dir, "partial"));
+        File partialFile = partialFiles.getPartialFile(localFile);
+        assertEquals(new File(dir, "partial/data/item.txt.partial"), partialFile);
+        partialFile.getParentFile().mkdirs();
+        Files.write(partialFile.toPath(), Arrays.copyOfRange(data, 0, 8));
+
+        Map<String, String> props = new HashMap<>();
+        props.put(ContentStore.CONTENT_SIZE, String.valueOf(data.length));
+        props.put(ContentStore.CONTENT_CHECKSUM,
+                  new ChecksumUtil(Algorithm.MD5).generateChecksum(new ByteArrayInputStream(data)));
+        expect(contentStore.getContentProperties("space", "item.txt")).andReturn(props);
+
+        Content content = new Content();
+        content.setStream(new ByteArrayInputStream(Arrays.copyOfRange(data, 8, data.length)));
+        expect(contentStore.getContent("space", "item.txt", 8L, null)).andReturn(content);
+        replayAll();
+
+        RangedContentRetriever retriever = new RangedContentRetriever(contentStore, partialFiles);
+        ContentItem contentItem = new ContentItem("space", "item.txt");
+        Map<String, String> result = retriever.retrieve(contentItem, localFile);
+
+        assertEquals(props, result);
+        assertEquals("0123456789abcdefghij",
+                     new String(Files.readAllBytes(localFile.toPath()), StandardCharsets.UTF_8));
+        assertFalse(partialFile.exists());
+        assertEquals(new ChecksumUtil(Algorithm.SHA_256).generateChecksum(localFile),
+                     retriever.getSha256(contentItem));
+    }
+
+    @Test
+    public void testKeepsCurrentLocalFile() throws Exception {
+        byte[] data = "0123456789abcdefghij".getBytes(StandardCharsets.UTF_8);
+        File localFile = new File(dir, "data/item.txt");
+        localFile.getParentFile().mkdirs();
+        Files.write(localFile.toPath(), data);
+        PartialFileDirectory partialFiles = new PartialFileDirectory(dir, new File(dir, "partial"));
+
+        long modified = 1500000000000L;
+        Map<String, String> props = new HashMap<>();
+        props.put(ContentStore.CONTENT_SIZE, String.valueOf(data.length));
+        props.put(ContentStore.CONTENT_CHECKSUM,
+                  new ChecksumUtil(Algorithm.MD5).generateChecksum(new ByteArrayInputStream(data)));
+        props.put(ContentStore.CONTENT_FILE_MODIFIED, DateUtil.convertToString(modified, DateFormat.LONG_FORMAT));
+        replayAll();
+
+        // the properties read for the content-addressed lookup are used, and
+        // no content is retrieved
+        RangedContentRetriever retriever = new RangedContentRetriever(contentStore, partialFiles);
+        ContentItem contentItem = new ContentItem("space", "item.txt");
+        Map<String, String> result = retriever.retrieve(contentItem, localFile, props, new AtomicInteger());
+
+        assertEquals(props, result);
+        assertEquals(modified, localFile.lastModified());
+        assertEquals(new ChecksumUtil(Algorithm.SHA_256).generateChecksum(localFile),
+                     retriever.getSha256(contentItem));
+    }
+}
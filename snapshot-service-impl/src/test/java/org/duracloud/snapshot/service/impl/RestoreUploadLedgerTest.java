@@ -0,0 +1,174 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.duracloud.client.ContentStore;
+import org.duracloud.common.constant.ManifestFormat;
+import org.duracloud.error.NotFoundException;
+import org.duracloud.manifest.impl.TsvManifestFormatter;
+import org.duracloud.manifeststitch.StitchedManifestGenerator;
+import org.duracloud.mill.db.model.ManifestItem;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.easymock.Mock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RestoreUploadLedgerTest extends SnapshotTestBase {
+
+    private String spaceId = "space-id";
+    private File dir = getTempDir();
+    private File dbFile;
+    private File md5Manifest;
+    private RestoreUploadLedger ledger;
+
+    @Mock
+    private StitchedManifestGenerator generator;
+
+    @Mock
+    private ContentStore contentStore;
+
+    @Before
+    public void setUp() throws Exception {
+        dir.mkdirs();
+        dbFile = new File(dir, "upload-ledger.db");
+        md5Manifest = new File(dir, ManifestFileHelper.MANIFEST_MD5_TEXT_FILE_NAME);
+        Files.write(md5Manifest.toPath(),
+                    (ManifestFileHelper.formatManifestEntry("a", "md5-a") +
+                     ManifestFileHelper.formatManifestEntry("dir/b", "md5-b") +
+                     ManifestFileHelper.formatManifestEntry("c", "md5-c")).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        if (ledger != null) {
+            ledger.close();
+        }
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testRecordsSurviveRestart() throws Exception {
+        expect(contentStore.getContentProperties(spaceId, "a"))
+            .andReturn(Collections.singletonMap(ContentStore.CONTENT_CHECKSUM, "md5-a"));
+        replayAll();
+        ledger = new RestoreUploadLedger(dbFile, md5Manifest, contentStore, null, spaceId);
+        ledger.open(1, 1000);
+        assertFalse(ledger.isUploaded("a"));
+        ledger.recordUploaded("a", "md5-a");
+        ledger.recordUploaded("not-in-manifest", "md5-x");
+        ledger.close();
+
+        ledger = new RestoreUploadLedger(dbFile, md5Manifest, contentStore, null, spaceId);
+        ledger.open(1, 1000);
+        ledger.reconcile();
+        assertTrue(ledger.isUploaded("a"));
+        assertFalse(ledger.isUploaded("dir/b"));
+        assertFalse(ledger.isUploaded("not-in-manifest"));
+        assertEquals(1, ledger.getUploadedCount());
+    }
+
+    @Test
+    public void testStoredChecksumIsRecorded() throws Exception {
+        replayAll();
+        ledger = new RestoreUploadLedger(dbFile, md5Manifest, contentStore, null, spaceId);
+        ledger.open(1, 1000);
+        ledger.recordUploaded("a", "md5-a");
+        ledger.recordUploaded("dir/b", "corrupted");
+        ledger.recordUploaded("c", null);
+
+        assertTrue(ledger.isUploaded("a"));
+        assertFalse(ledger.isUploaded("dir/b"));
+        assertFalse(ledger.isUploaded("c"));
+
+        // recorded with the expected checksum
+        ledger.recordUploaded("c");
+        ledger.recordUploaded("not-in-manifest");
+        assertTrue(ledger.isUploaded("c"));
+        assertEquals(3, ledger.getUploadedCount());
+    }
+
+    @Test
+    public void testReconcileChecksEachRecordWithStore() throws Exception {
+        // c has changed in the space since it was recorded, dir/b is gone
+        expect(contentStore.getContentProperties(spaceId, "a"))
+            .andReturn(Collections.singletonMap(ContentStore.CONTENT_CHECKSUM, "md5-a"));
+        expect(contentStore.getContentProperties(spaceId, "dir/b"))
+            .andThrow(new NotFoundException("not found"));
+        expect(contentStore.getContentProperties(spaceId, "c"))
+            .andReturn(Collections.singletonMap(ContentStore.CONTENT_CHECKSUM, "other"));
+        replayAll();
+
+        ledger = new RestoreUploadLedger(dbFile, md5Manifest, contentStore, null, spaceId);
+        ledger.open(1, 1000);
+        ledger.recordUploaded("a", "md5-a");
+        ledger.recordUploaded("dir/b", "md5-b");
+        ledger.recordUploaded("c", "md5-c");
+        ledger.reconcile();
+
+        assertTrue(ledger.isUploaded("a"));
+        assertFalse(ledger.isUploaded("dir/b"));
+        assertFalse(ledger.isUploaded("c"));
+        assertEquals(1, ledger.getUploadedCount());
+    }
+
+    @Test
+    public void testReconcileWithDestinationManifest() throws Exception {
+        // b was uploaded but not recorded, c was recorded but has since changed
+        expect(generator.generate(spaceId, ManifestFormat.TSV))
+            .andReturn(createManifest("a", "md5-a", "dir/b", "md5-b", "c", "other", "extra", "md5-x"));
+        replayAll();
+
+        ledger = new RestoreUploadLedger(dbFile, md5Manifest, contentStore, generator, spaceId);
+        ledger.open(1, 1000);
+        ledger.recordUploaded("a", "md5-a");
+        ledger.recordUploaded("c", "md5-c");
+        ledger.reconcile();
+
+        assertTrue(ledger.isUploaded("a"));
+        assertTrue(ledger.isUploaded("dir/b"));
+        assertFalse(ledger.isUploaded("c"));
+        assertFalse(ledger.isUploaded("extra"));
+        assertEquals(2, ledger.getUploadedCount());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        replayAll();
+        ledger = new RestoreUploadLedger(dbFile, md5Manifest, contentStore, null, spaceId);
+        ledger.open(1, 1000);
+        ledger.recordUploaded("a", "md5-a");
+        ledger.clear();
+        assertFalse(ledger.isUploaded("a"));
+    }
+
+    private InputStream createManifest(String... entries) {
+        TsvManifestFormatter formatter = new TsvManifestFormatter();
+        StringBuilder manifest = new StringBuilder(formatter.getHeader() + "\n");
+        for (int i = 0; i < entries.length; i += 2) {
+            ManifestItem item = new ManifestItem();
+            item.setContentId(entries[i]);
+            item.setContentChecksum(entries[i + 1]);
+            manifest.append(formatter.formatLine(item)).append("\n");
+        }
+        return new ByteArrayInputStream(manifest.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.duracloud.snapshot.common.SnapshotServiceConstants;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.duracloud.snapshot.db.model.DuracloudEndPointConfig;
+import org.junit.After;
+import org.junit.Test;
+
+public class RetainedContentTest extends SnapshotTestBase {
+
+    private File rootDir = getTempDir();
+
+    @After
+    public void cleanup() throws Exception {
+        FileUtils.deleteDirectory(rootDir);
+    }
+
+    @Test
+    public void testRetainReplacesPreviousContent() throws Exception {
+        DuracloudEndPointConfig source = new DuracloudEndPointConfig();
+        source.setHost("host");
+        source.setStoreId("0");
+        source.setSpaceId("space");
+        RetainedContent retained = new RetainedContent(rootDir, source);
+        replayAll();
+
+        assertNull(retained.getSnapshotName());
+
+        retained.retain("snapshot-1", stage("snapshot-1", "dir/a.txt"));
+        assertEquals("snapshot-1", retained.getSnapshotName());
+        assertTrue(new File(retained.getDataDir(), "dir/a.txt").exists());
+
+        retained.retain("snapshot-2", stage("snapshot-2", "b.txt"));
+        assertEquals("snapshot-2", retained.getSnapshotName());
+        assertTrue(new File(retained.getDataDir(), "b.txt").exists());
+        assertFalse(new File(retained.getDataDir(), "dir/a.txt").exists());
+        assertTrue(retained.getSha256Manifest().exists());
+    }
+
+    private File stage(String snapshotName, String contentId) throws Exception {
+        File snapshotDir = new File(rootDir, "snapshots/" + snapshotName);
+        File file = new File(snapshotDir, "data/" + contentId);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), contentId.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(snapshotDir, SnapshotServiceConstants.MANIFEST_SHA256_TXT_FILE_NAME).toPath(),
+                    new byte[0]);
+        return snapshotDir;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.duracloud.common.model.ContentItem;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.easymock.Mock;
+import org.junit.Test;
+import org.springframework.batch.item.ItemReader;
+
+public class SizeClassLaneReaderTest extends SnapshotTestBase {
+
+    @Mock
+    private ItemReader<ContentItem> delegate;
+
+    @Test
+    public void testSmallItemsPassWaitingLargeItems() throws Exception {
+        ContentItem large1 = new ContentItem("space", "large1.dura-manifest");
+        ContentItem large2 = new ContentItem("space", "large2.dura-manifest");
+        ContentItem small1 = new ContentItem("space", "small1");
+        ContentItem small2 = new ContentItem("space", "small2");
+        expect(delegate.read()).andReturn(large1);
+        expect(delegate.read()).andReturn(large2);
+        expect(delegate.read()).andReturn(small1);
+        expect(delegate.read()).andReturn(small2);
+        expect(delegate.read()).andReturn(null);
+        replayAll();
+
+        SizeClassLaneReader reader = new SizeClassLaneReader(delegate, 2, 1, 10);
+        // items are listed on a thread of their own, so large1 may be handed out
+        // before or after the small items; large2 waits for the large lane
+        Set<ContentItem> read = new HashSet<>();
+        read.add(reader.read());
+        read.add(reader.read());
+        read.add(reader.read());
+        assertEquals(new HashSet<>(Arrays.asList(large1, small1, small2)), read);
+
+        reader.release(large1);
+        assertEquals(large2, reader.read());
+
+        reader.release(small1);
+        reader.release(small2);
+        reader.release(large2);
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void testClassify() {
+        assertEquals(SizeClassLaneReader.Lane.LARGE,
+                     SizeClassLaneReader.classify(new ContentItem("space", "a.dura-manifest")));
+        assertEquals(SizeClassLaneReader.Lane.SMALL,
+                     SizeClassLaneReader.classify(new ContentItem("space", "a.txt")));
+        replayAll();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.duracloud.snapshot.db.model.Snapshot;
+import org.duracloud.snapshot.service.SnapshotManager;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.Mock;
+import org.junit.Test;
+
+public class SnapshotContentItemBatcherTest extends SnapshotTestBase {
+
+    @Mock
+    private SnapshotManager snapshotManager;
+
+    @Mock
+    private Snapshot snapshot;
+
+    @Test
+    public void testBatchesBySizeAndFlush() throws Exception {
+        Capture<Map<String, Map<String, String>>> batches = new Capture<>(CaptureType.ALL);
+        snapshotManager.addContentItems(eq(snapshot), capture(batches));
+        expectLastCall().times(3);
+        expect(snapshot.getName()).andReturn("snapshot").anyTimes();
+        replayAll();
+
+        SnapshotContentItemBatcher batcher =
+            new SnapshotContentItemBatcher(snapshotManager, snapshot, 2, Long.MAX_VALUE);
+        Map<String, String> props = Collections.singletonMap("key", "value");
+        for (String contentId : Arrays.asList("a", "b", "c", "d", "e")) {
+            batcher.add(contentId, props);
+        }
+        batcher.flush();
+        // nothing remains to be written
+        batcher.flush();
+
+        assertEquals(3, batches.getValues().size());
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(batches.getValues().get(0).keySet().toArray()));
+        assertEquals(Arrays.asList("c", "d"), Arrays.asList(batches.getValues().get(1).keySet().toArray()));
+        assertEquals(Arrays.asList("e"), Arrays.asList(batches.getValues().get(2).keySet().toArray()));
+    }
+
+    @Test
+    public void testFlushesWhenIntervalElapsed() throws Exception {
+        Capture<Map<String, Map<String, String>>> batches = new Capture<>(CaptureType.ALL);
+        snapshotManager.addContentItems(eq(snapshot), capture(batches));
+        expectLastCall().times(2);
+        expect(snapshot.getName()).andReturn("snapshot").anyTimes();
+        replayAll();
+
+        SnapshotContentItemBatcher batcher =
+            new SnapshotContentItemBatcher(snapshotManager, snapshot, 1000, 0);
+        Map<String, String> props = Collections.singletonMap("key", "value");
+        batcher.add("a", props);
+        batcher.add("b", props);
+
+        assertEquals(2, batches.getValues().size());
+    }
+}
@@ -150,6 +150,9 @@ public class SnapshotJobManagerImplTest extends SnapshotTestBase {
         EasyMock.expect(jobExecution.getStatus())
                 .andReturn(BatchStatus.COMPLETED);
 
+        EasyMock.expect(snapshot.getName()).andReturn(snapshotName);
+        EasyMock.expect(snapshot.getMemberId()).andReturn("member-id");
+
         setupSnapshotRepo();
 
         setupBuilderManager();
@@ -179,6 +182,11 @@ public class SnapshotJobManagerImplTest extends SnapshotTestBase {
         String restorationId = "restoration-id";
         expect(restoreRepo.findByRestorationId(restorationId)).andReturn(restoration);
 
+        EasyMock.expect(restoration.getRestorationId()).andReturn(restorationId);
+        EasyMock.expect(restoration.getSnapshot()).andReturn(snapshot);
+        EasyMock.expect(restoration.getDestination()).andReturn(null);
+        EasyMock.expect(snapshot.getMemberId()).andReturn(null);
+
         replayAll();
 
         manager.executeRestoration(restorationId);
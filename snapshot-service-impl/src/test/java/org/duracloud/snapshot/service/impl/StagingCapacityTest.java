@@ -0,0 +1,120 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.junit.Test;
+
+public class StagingCapacityTest extends SnapshotTestBase {
+
+    @Test
+    public void testReserveAndRelease() throws Exception {
+        replayAll();
+        StagingCapacity capacity = new FixedCapacity(1000, 100, true);
+
+        assertTrue(capacity.reserve("job-1", 600));
+        assertEquals(300, capacity.getAvailable());
+        assertFalse(capacity.fits(400));
+        assertFalse(capacity.reserve("job-2", 400));
+        assertTrue(capacity.couldFit(900));
+        assertFalse(capacity.couldFit(901));
+
+        capacity.release("job-1");
+        assertTrue(capacity.reserve("job-2", 400));
+        assertEquals(1, capacity.getReservations().size());
+    }
+
+    @Test
+    public void testStagedBytesAreNotCountedTwice() throws Exception {
+        replayAll();
+        File stagingDir = getTempDir();
+        stagingDir.mkdirs();
+        try {
+            FileUtils.writeStringToFile(new File(stagingDir, "before"), "staged earlier", StandardCharsets.UTF_8);
+            StagingCapacity capacity = new FixedCapacity(1000, 100, true);
+            assertTrue(capacity.reserve("job-1", 600, stagingDir));
+            capacity.recordStart("job-1");
+            assertEquals(300, capacity.getAvailable());
+
+            // what the job stages is already gone from the free space on the volume
+            FileUtils.writeByteArrayToFile(new File(stagingDir, "staged"), new byte[200]);
+            assertEquals(300, capacity.getAvailable());
+            capacity.measure();
+            assertEquals(500, capacity.getAvailable());
+
+            FileUtils.writeByteArrayToFile(new File(stagingDir, "more"), new byte[500]);
+            capacity.measure();
+            assertEquals(900, capacity.getAvailable());
+        } finally {
+            FileUtils.deleteDirectory(stagingDir);
+        }
+    }
+
+    @Test
+    public void testUnknownSizeAlwaysFits() throws Exception {
+        replayAll();
+        StagingCapacity capacity = new FixedCapacity(0, 100, true);
+        assertTrue(capacity.reserve("job-1", 0));
+        assertEquals(0, capacity.getReservations().size());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        replayAll();
+        StagingCapacity capacity = new FixedCapacity(0, 100, false);
+        assertTrue(capacity.couldFit(Long.MAX_VALUE));
+        assertTrue(capacity.reserve("job-1", 1000));
+        assertEquals(0, capacity.getReservations().size());
+    }
+
+    @Test
+    public void testFailedMeasurementKeepsLastValue() throws Exception {
+        replayAll();
+        File stagingDir = getTempDir();
+        StagingCapacity capacity = new FixedCapacity(1000, 100, true) {
+            private int measurements = 0;
+
+            @Override
+            protected long getSize(File dir) {
+                if (++measurements > 2) {
+                    throw new IllegalArgumentException("file removed during walk");
+                }
+                return measurements == 1 ? 0 : 200;
+            }
+        };
+        assertTrue(capacity.reserve("job-1", 600, stagingDir));
+        capacity.recordStart("job-1");
+        capacity.measure();
+        assertEquals(500, capacity.getAvailable());
+
+        capacity.measure();
+        assertEquals(500, capacity.getAvailable());
+    }
+
+    static class FixedCapacity extends StagingCapacity {
+        private long usable;
+
+        FixedCapacity(long usable, long headroomBytes, boolean enabled) {
+            super(null, headroomBytes, enabled);
+            this.usable = usable;
+        }
+
+        @Override
+        protected long getUsableSpace() {
+            return usable;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ *     http://duracloud.org/license/
+ */
+package org.duracloud.snapshot.service.impl;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.duracloud.client.ContentStore;
+import org.duracloud.client.util.StoreClientUtil;
+import org.duracloud.snapshot.common.SnapshotServiceConstants;
+import org.duracloud.snapshot.common.test.SnapshotTestBase;
+import org.duracloud.snapshot.db.model.DuracloudEndPointConfig;
+import org.easymock.Mock;
+import org.junit.Test;
+
+public class StoreClientHelperTest extends SnapshotTestBase {
+
+    @Mock
+    private StoreClientUtil storeClientUtil;
+
+    @Mock
+    private ContentStore store1;
+
+    @Mock
+    private ContentStore store2;
+
+    @Test
+    public void testReusesClients() throws Exception {
+        DuracloudEndPointConfig config = endpoint("host", "0");
+        expectCreate(config, "user", "pass", store1);
+        expectCreate(config, "user", "other", store2);
+        replayAll();
+
+        StoreClientHelper helper = new StoreClientHelper(storeClientUtil, 4, 60000);
+        assertSame(store1, helper.create(config, "user", "pass"));
+        assertSame(store1, helper.create(endpoint("host", "0"), "user", "pass"));
+        assertSame(store2, helper.create(config, "user", "other"));
+
+        assertEquals(1, helper.getHits());
+        assertEquals(2, helper.getMisses());
+        assertEquals(2, helper.getSize());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        DuracloudEndPointConfig config1 = endpoint("host", "1");
+        DuracloudEndPointConfig config2 = endpoint("host", "2");
+        expectCreate(config1, "user", "pass", store1);
+        expectCreate(config2, "user", "pass", store2);
+        expectCreate(config1, "user", "pass", store1);
+        replayAll();
+
+        StoreClientHelper helper = new StoreClientHelper(storeClientUtil, 1, 60000);
+        helper.create(config1, "user", "pass");
+        helper.create(config2, "user", "pass");
+        helper.create(config1, "user", "pass");
+
+        assertEquals(2, helper.getEvictions());
+        assertEquals(1, helper.getSize());
+    }
+
+    @Test
+    public void testEvictsIdleClients() throws Exception {
+        DuracloudEndPointConfig config = endpoint("host", "0");
+        expectCreate(config, "user", "pass", store1);
+        expectCreate(config, "user", "pass", store2);
+        replayAll();
+
+        StoreClientHelper helper = new StoreClientHelper(storeClientUtil, 4, 0);
+        assertSame(store1, helper.create(config, "user", "pass"));
+        assertSame(store2, helper.create(config, "user", "pass"));
+        assertEquals(1, helper.getEvictions());
+    }
+
+    @Test
+    public void testCacheDisabled() throws Exception {
+        DuracloudEndPointConfig config = endpoint("host", "0");
+        expectCreate(config, "user", "pass", store1);
+        expectCreate(config, "user", "pass", store2);
+        replayAll();
+
+        StoreClientHelper helper = new StoreClientHelper(storeClientUtil, 0, 60000);
+        assertSame(store1, helper.create(config, "user", "pass"));
+        assertSame(store2, helper.create(config, "user", "pass"));
+        assertEquals(0, helper.getSize());
+    }
+
+    private DuracloudEndPointConfig endpoint(String host, String storeId) {
+        DuracloudEndPointConfig config = new DuracloudEndPointConfig();
+        config.setHost(host);
+        config.setPort(443);
+        config.setStoreId(storeId);
+        return config;
+    }
+
+    private void expectCreate(DuracloudEndPointConfig config, String username, String password,
+                              ContentStore store) {
+        expect(storeClientUtil.createContentStore(config.getHost(),
+                                                  config.getPort(),
+                                                  SnapshotServiceConstants.DURASTORE_CONTEXT,
+                                                  username,
+                                                  password,
+                                                  config.getStoreId())).andReturn(store);
+    }
+}
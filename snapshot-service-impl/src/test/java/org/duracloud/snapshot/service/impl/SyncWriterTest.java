@@ -15,11 +15,15 @@ import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.isNull;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.duracloud.client.ContentStore;
 import org.duracloud.domain.Space;
 import org.duracloud.error.NotFoundException;
@@ -34,6 +38,7 @@ import org.duracloud.sync.endpoint.SyncEndpoint;
 import org.duracloud.sync.endpoint.SyncResultType;
 import org.easymock.Mock;
 import org.easymock.TestSubject;
+import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.StepExecution;
@@ -203,4 +208,74 @@ public class SyncWriterTest extends SnapshotTestBase {
 
     }
 
+    @Test
+    public void testWriteSkipsUploadedFiles() throws Exception {
+        File uploaded = new File(watchDir, "uploaded");
+        File pending = new File(watchDir, "pending");
+        uploaded.createNewFile();
+        pending.createNewFile();
+
+        expect(endpoint.syncFileAndReturnDetailedResult(isA(MonitoredFile.class), eq(watchDir)))
+            .andReturn(SyncResultType.ADDED);
+        replayAll();
+
+        File ledgerDir = new File(watchDir.getParentFile(), watchDir.getName() + "-ledger");
+        RestoreUploadLedger ledger = createLedger(ledgerDir, "uploaded", "pending");
+        try {
+            ledger.open(1, 1000);
+            ledger.recordUploaded("uploaded", "md5-uploaded");
+            this.writer.setUploadLedger(ledger);
+
+            this.writer.write(Arrays.asList(uploaded, pending));
+            Assert.assertTrue(ledger.isUploaded("pending"));
+        } finally {
+            ledger.close();
+            FileUtils.deleteDirectory(ledgerDir);
+        }
+    }
+
+    @Test
+    public void testBeforeStepResumesIntoNotEmptySpace() throws Exception {
+        setupBeforeTransition();
+
+        Space space = new Space();
+        space.setContentIds(new ArrayList<String>(Arrays.asList(new String[] {"test"})));
+
+        expect(contentStore.getSpace(isA(String.class),
+                                     isNull(String.class),
+                                     anyInt(),
+                                     isNull(String.class)))
+            .andReturn(space);
+        // the record is confirmed with the store before the transfer resumes
+        expect(contentStore.getContentProperties("spaceId", "test"))
+            .andReturn(Collections.singletonMap(ContentStore.CONTENT_CHECKSUM, "md5-test"));
+
+        replayAll();
+
+        File ledgerDir = new File(watchDir.getParentFile(), watchDir.getName() + "-ledger");
+        RestoreUploadLedger ledger = createLedger(ledgerDir, "test");
+        try {
+            ledger.open(1, 1000);
+            ledger.recordUploaded("test", "md5-test");
+            ledger.close();
+            this.writer.setUploadLedger(ledger);
+
+            this.writer.beforeStep(stepExecution);
+        } finally {
+            ledger.close();
+            FileUtils.deleteDirectory(ledgerDir);
+        }
+    }
+
+    private RestoreUploadLedger createLedger(File dir, String... contentIds) throws Exception {
+        dir.mkdirs();
+        File md5Manifest = new File(dir, ManifestFileHelper.MANIFEST_MD5_TEXT_FILE_NAME);
+        StringBuilder manifest = new StringBuilder();
+        for (String contentId : contentIds) {
+            manifest.append(ManifestFileHelper.formatManifestEntry(contentId, "md5-" + contentId));
+        }
+        Files.write(md5Manifest.toPath(), manifest.toString().getBytes(StandardCharsets.UTF_8));
+        return new RestoreUploadLedger(new File(dir, "upload-ledger.db"), md5Manifest, contentStore, null, "spaceId");
+    }
+
 }
@@ -7,6 +7,8 @@
  */
 package org.duracloud.snapshot.service;
 
+import java.util.List;
+
 import org.duracloud.snapshot.SnapshotException;
 import org.duracloud.snapshot.SnapshotInProcessException;
 import org.duracloud.snapshot.SnapshotNotFoundException;
@@ -105,6 +107,20 @@ public interface RestoreManager {
      */
     public void finalizeRestores();
 
+    /**
+     * @return the ids of the completed restorations which have expired
+     */
+    public List<String> getRestoresToFinalize();
+
+    /**
+     * Performs final cleanup actions for an expired restoration.
+     *
+     * @param restorationId
+     * @return true if the restoration was moved to the expired state, false if
+     * its space is not yet empty or the cleanup failed
+     */
+    public boolean finalizeRestore(String restorationId);
+
     /**
      * Cancels a restore.
      *
@@ -28,6 +28,17 @@ public interface SnapshotManager {
                                String contentId,
                                Map<String, String> props) throws SnapshotException;
 
+    /**
+     * Adds a batch of content items to a snapshot using multi-row inserts.
+     * Items which have already been added to the snapshot are ignored.
+     *
+     * @param snapshot
+     * @param contentItems content item properties keyed by content id
+     * @throws SnapshotException
+     */
+    public void addContentItems(Snapshot snapshot,
+                                Map<String, Map<String, String>> contentItems) throws SnapshotException;
+
     /**
      * Adds a list of snapshot alternate Id's to a snapshot. To map Bag Id's
      * to Duracloud Snapshot Id's
@@ -70,6 +81,21 @@ public interface SnapshotManager {
      */
     public void finalizeSnapshots();
 
+    /**
+     * @return the names of the snapshots with a status of CLEANING_UP, oldest first
+     */
+    public List<String> getSnapshotsToFinalize();
+
+    /**
+     * Checks if the space of a snapshot with a status of CLEANING_UP is empty. If so,
+     * the state is updated to complete and notification is sent out to the user.
+     *
+     * @param snapshotId
+     * @return true if the snapshot was finalized, false if its space is not yet
+     * empty or the check failed
+     */
+    public boolean finalizeSnapshot(String snapshotId);
+
     /**
      * Updates a snapshot's history
      *